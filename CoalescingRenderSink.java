@@ -0,0 +1,147 @@
+/**
+ *	CoalescingRenderSink
+ *	Sits in front of another sink and joins text printed in the same
+ *	style into one run, so the sink behind it gets one call per run
+ *	instead of one per word. A run is passed on when the style changes,
+ *	at a line break, horizontal rule or new line, and when the sink is
+ *	flushed. It keeps count of how many calls it saved.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class CoalescingRenderSink implements RenderSink {
+
+	private RenderSink sink;		// where the runs are sent
+	private StringBuilder run;		// text of the current run
+	private int runOperation;		// operation of the current run, -1 if none
+	private long callsIn;			// calls made to this sink
+	private long callsOut;			// calls passed on to the sink behind it
+
+	/**
+	 *	@param sinkIn		the sink to send the runs to
+	 */
+	public CoalescingRenderSink(RenderSink sinkIn)
+	{
+		sink = sinkIn;
+		run = new StringBuilder();
+		runOperation = -1;
+		callsIn = 0;
+		callsOut = 0;
+	}
+
+	public void print(String text) { printText(PRINT, text, 0, text.length()); }
+
+	public void printBold(String text) { printText(PRINT_BOLD, text, 0, text.length()); }
+
+	public void printItalic(String text) { printText(PRINT_ITALIC, text, 0, text.length()); }
+
+	public void printHeading1(String text) { printText(PRINT_HEADING1, text, 0, text.length()); }
+
+	public void printHeading2(String text) { printText(PRINT_HEADING2, text, 0, text.length()); }
+
+	public void printHeading3(String text) { printText(PRINT_HEADING3, text, 0, text.length()); }
+
+	public void printHeading4(String text) { printText(PRINT_HEADING4, text, 0, text.length()); }
+
+	public void printHeading5(String text) { printText(PRINT_HEADING5, text, 0, text.length()); }
+
+	public void printHeading6(String text) { printText(PRINT_HEADING6, text, 0, text.length()); }
+
+	public void printPreformattedText(String text) { printText(PRINT_PREFORMATTED, text, 0, text.length()); }
+
+	/**
+	 *	Adds the text to the current run, first passing the run on if
+	 *	it is in a different style.
+	 *	@param operation	the number of the operation
+	 *	@param text			the text the part is in
+	 *	@param start		index of the first character to print
+	 *	@param end			index after the last character to print
+	 */
+	public void printText(int operation, CharSequence text, int start, int end)
+	{
+		callsIn++;
+		if(operation != runOperation)
+		{
+			endRun();
+			runOperation = operation;
+		}
+		run.append(text, start, end);
+	}
+
+	public void printBreak()
+	{
+		callsIn++;
+		endRun();
+		callsOut++;
+		sink.printBreak();
+	}
+
+	public void printHorizontalRule()
+	{
+		callsIn++;
+		endRun();
+		callsOut++;
+		sink.printHorizontalRule();
+	}
+
+	public void println()
+	{
+		callsIn++;
+		endRun();
+		callsOut++;
+		sink.println();
+	}
+
+	/**
+	 *	Passes on the current run and flushes the sink behind it.
+	 */
+	public void flush()
+	{
+		endRun();
+		sink.flush();
+	}
+
+	/**
+	 *	Sends the current run to the sink as one call.
+	 */
+	private void endRun()
+	{
+		if(runOperation != -1 && run.length() > 0)
+		{
+			callsOut++;
+			sink.printText(runOperation, run, 0, run.length());
+		}
+		run.setLength(0);
+		runOperation = -1;
+	}
+
+	/**
+	 *	@return				the number of calls made to this sink
+	 */
+	public long getCallsIn()
+	{
+		return callsIn;
+	}
+
+	/**
+	 *	@return				the number of calls passed on to the sink behind it
+	 */
+	public long getCallsOut()
+	{
+		return callsOut;
+	}
+
+	/**
+	 *	@return				the number of calls saved by joining runs
+	 */
+	public long getCallsSaved()
+	{
+		return callsIn - callsOut;
+	}
+
+	public String toString()
+	{
+		return "coalesced " + callsIn + " calls into " + callsOut 
+			   + " (" + getCallsSaved() + " saved)";
+	}
+}
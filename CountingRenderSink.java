@@ -0,0 +1,99 @@
+/**
+ *	CountingRenderSink
+ *	A sink that prints nothing and only counts the operations it is
+ *	given and the characters of text in them. Rendering into it
+ *	measures the renderer on its own, without any drawing or output.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class CountingRenderSink implements RenderSink {
+
+	private long [] counts;		// number of calls of each operation
+	private long characters;	// number of characters of text printed
+
+	public CountingRenderSink()
+	{
+		counts = new long[OPERATION_COUNT];
+		characters = 0;
+	}
+
+	public void print(String text) { count(PRINT, text); }
+
+	public void printBold(String text) { count(PRINT_BOLD, text); }
+
+	public void printItalic(String text) { count(PRINT_ITALIC, text); }
+
+	public void printHeading1(String text) { count(PRINT_HEADING1, text); }
+
+	public void printHeading2(String text) { count(PRINT_HEADING2, text); }
+
+	public void printHeading3(String text) { count(PRINT_HEADING3, text); }
+
+	public void printHeading4(String text) { count(PRINT_HEADING4, text); }
+
+	public void printHeading5(String text) { count(PRINT_HEADING5, text); }
+
+	public void printHeading6(String text) { count(PRINT_HEADING6, text); }
+
+	public void printPreformattedText(String text) { count(PRINT_PREFORMATTED, text); }
+
+	public void printBreak() { counts[PRINT_BREAK]++; }
+
+	public void printHorizontalRule() { counts[PRINT_HORIZONTAL_RULE]++; }
+
+	public void println() { counts[PRINTLN]++; }
+
+	/**
+	 *	Counts one call of an operation that prints text.
+	 *	@param operation	the number of the operation
+	 *	@param text			the text that would have been printed
+	 */
+	private void count(int operation, String text)
+	{
+		counts[operation]++;
+		characters += text.length();
+	}
+
+	/**
+	 *	@param operation	the number of an operation
+	 *	@return				how many times it was called
+	 */
+	public long getCount(int operation)
+	{
+		return counts[operation];
+	}
+
+	/**
+	 *	@return				how many operations were called in total
+	 */
+	public long getCalls()
+	{
+		long total = 0;
+		for(int op = 0; op < counts.length; op++)
+			total += counts[op];
+		return total;
+	}
+
+	/**
+	 *	@return				how many characters of text were printed
+	 */
+	public long getCharacters()
+	{
+		return characters;
+	}
+
+	/**
+	 *	Sets every count back to zero.
+	 */
+	public void reset()
+	{
+		java.util.Arrays.fill(counts, 0);
+		characters = 0;
+	}
+
+	public String toString()
+	{
+		return "sink calls: " + getCalls() + ", characters: " + characters;
+	}
+}
@@ -0,0 +1,403 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ *	DisplayList
+ *	A sink that records what is printed into it, so it can be printed
+ *	again into any other sink without tokenizing or laying out the
+ *	document. Each operation is one byte of its number, and an operation
+ *	that prints text is followed by the number of characters it prints,
+ *	in 7 bit groups. The text of every operation is kept one after the
+ *	other in a single array of characters, so replaying is one pass over
+ *	the bytes and no Strings are made unless the sink needs them.
+ *
+ *	Text printed in the same style is joined into one run as it is
+ *	recorded, the same as CoalescingRenderSink, so a replay makes the
+ *	same calls a CoalescingRenderSink would have. A list can be written
+ *	to a file and read back with writeTo and readFrom.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class DisplayList implements RenderSink {
+
+	// the start of a display list written to a file, "HDL1"
+	private static final int MAGIC = 0x48444C31;
+
+	// changed whenever the format of the bytes changes
+	private static final int VERSION = 2;
+
+	// How the text is written
+	private static final int TEXT_UTF8 = 0;		// as UTF-8, if it is valid UTF-16
+	private static final int TEXT_UTF16 = 1;	// as two bytes a character, if it is not
+
+	// the size of the arrays of a new list
+	private static final int DEFAULT_CAPACITY = 1 << 10;
+
+	private byte [] operations;		// the operations and the lengths of their text
+	private int operationBytes;		// number of bytes used in operations
+	private char [] text;			// the text of every operation, in order
+	private int textLength;			// number of characters used in text
+	private int runOperation;		// operation of the run being joined, -1 if none
+	private int runStart;			// index in text of the start of that run
+	private int count;				// number of operations recorded
+
+	public DisplayList()
+	{
+		operations = new byte[DEFAULT_CAPACITY];
+		operationBytes = 0;
+		text = new char[DEFAULT_CAPACITY];
+		textLength = 0;
+		runOperation = -1;
+		runStart = 0;
+		count = 0;
+	}
+
+	public void print(String textIn) { printText(PRINT, textIn, 0, textIn.length()); }
+
+	public void printBold(String textIn) { printText(PRINT_BOLD, textIn, 0, textIn.length()); }
+
+	public void printItalic(String textIn) { printText(PRINT_ITALIC, textIn, 0, textIn.length()); }
+
+	public void printHeading1(String textIn) { printText(PRINT_HEADING1, textIn, 0, textIn.length()); }
+
+	public void printHeading2(String textIn) { printText(PRINT_HEADING2, textIn, 0, textIn.length()); }
+
+	public void printHeading3(String textIn) { printText(PRINT_HEADING3, textIn, 0, textIn.length()); }
+
+	public void printHeading4(String textIn) { printText(PRINT_HEADING4, textIn, 0, textIn.length()); }
+
+	public void printHeading5(String textIn) { printText(PRINT_HEADING5, textIn, 0, textIn.length()); }
+
+	public void printHeading6(String textIn) { printText(PRINT_HEADING6, textIn, 0, textIn.length()); }
+
+	public void printPreformattedText(String textIn) { printText(PRINT_PREFORMATTED, textIn, 0, textIn.length()); }
+
+	/**
+	 *	Adds the text to the run being joined, first recording the run if
+	 *	it is in a different style.
+	 *	@param operation	the number of the operation
+	 *	@param textIn		the text the part is in
+	 *	@param start		index of the first character to print
+	 *	@param end			index after the last character to print
+	 */
+	public void printText(int operation, CharSequence textIn, int start, int end)
+	{
+		if(operation < PRINT || operation > PRINT_PREFORMATTED)
+			throw new IllegalArgumentException("not a text operation: " + operation);
+		if(operation != runOperation)
+		{
+			endRun();
+			runOperation = operation;
+			runStart = textLength;
+		}
+		int length = end - start;
+		if(textLength + length > text.length)
+			text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
+		if(textIn instanceof String)
+			((String)textIn).getChars(start, end, text, textLength);
+		else
+		{
+			for(int k = start; k < end; k++)
+				text[textLength + k - start] = textIn.charAt(k);
+		}
+		textLength += length;
+	}
+
+	public void printBreak() { addControl(PRINT_BREAK); }
+
+	public void printHorizontalRule() { addControl(PRINT_HORIZONTAL_RULE); }
+
+	public void println() { addControl(PRINTLN); }
+
+	/**
+	 *	Ends the run being joined, so text printed after a flush starts a
+	 *	new run, as it would in a CoalescingRenderSink.
+	 */
+	public void flush()
+	{
+		endRun();
+	}
+
+	/**
+	 *	Records an operation that prints no text, after the run before it.
+	 *	@param operation	PRINT_BREAK, PRINT_HORIZONTAL_RULE or PRINTLN
+	 */
+	private void addControl(int operation)
+	{
+		endRun();
+		ensureBytes(1);
+		operations[operationBytes++] = (byte)operation;
+		count++;
+	}
+
+	/**
+	 *	Records the run being joined as one operation and its length.
+	 */
+	private void endRun()
+	{
+		if(runOperation != -1 && textLength > runStart)
+		{
+			ensureBytes(6);
+			operations[operationBytes++] = (byte)runOperation;
+			int length = textLength - runStart;
+			while(length >= 0x80)
+			{
+				operations[operationBytes++] = (byte)(length | 0x80);
+				length >>>= 7;
+			}
+			operations[operationBytes++] = (byte)length;
+			count++;
+		}
+		runOperation = -1;
+	}
+
+	/**
+	 *	Makes room for more bytes of operations.
+	 *	@param extra		the number of bytes to be added
+	 */
+	private void ensureBytes(int extra)
+	{
+		if(operationBytes + extra > operations.length)
+			operations = Arrays.copyOf(operations, Math.max(operations.length * 2, operationBytes + extra));
+	}
+
+	/**
+	 *	Prints everything recorded into a sink, in order. Text is handed to
+	 *	the sink as parts of the recorded characters, with printText.
+	 *	A run still being joined is recorded first.
+	 *	@param sink			where to print
+	 */
+	public void replay(RenderSink sink)
+	{
+		endRun();
+		CharBuffer chars = CharBuffer.wrap(text, 0, textLength);
+		int start = 0;
+		int k = 0;
+		while(k < operationBytes)
+		{
+			int operation = operations[k++];
+			switch(operation)
+			{
+				case PRINT_BREAK: sink.printBreak(); break;
+				case PRINT_HORIZONTAL_RULE: sink.printHorizontalRule(); break;
+				case PRINTLN: sink.println(); break;
+				default:
+					int length = 0;
+					int shift = 0;
+					int b;
+					do
+					{
+						b = operations[k++];
+						length |= (b & 0x7f) << shift;
+						shift += 7;
+					}
+					while((b & 0x80) != 0);
+					sink.printText(operation, chars, start, start + length);
+					start += length;
+			}
+		}
+	}
+
+	/**
+	 *	Forgets everything recorded, keeping the arrays for the next time.
+	 */
+	public void clear()
+	{
+		operationBytes = 0;
+		textLength = 0;
+		runOperation = -1;
+		runStart = 0;
+		count = 0;
+	}
+
+	/**
+	 *	Writes the list to a file, replacing it if it is there.
+	 *	@param file			the file
+	 *	@throws IOException	if the file cannot be written
+	 */
+	public void writeTo(Path file) throws IOException
+	{
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file)))
+		{
+			DataOutputStream data = new DataOutputStream(out);
+			data.writeInt(MAGIC);
+			data.writeInt(VERSION);
+			write(data);
+			data.flush();
+		}
+	}
+
+	/**
+	 *	Reads a list written by writeTo.
+	 *	@param file			the file
+	 *	@return				the list
+	 *	@throws IOException	if the file cannot be read or is not a
+	 *						display list
+	 */
+	public static DisplayList readFrom(Path file) throws IOException
+	{
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(file)))
+		{
+			DataInputStream data = new DataInputStream(in);
+			if(data.readInt() != MAGIC || data.readInt() != VERSION)
+				throw new IOException(file + " is not a display list");
+			return read(data);
+		}
+	}
+
+	/**
+	 *	Writes the operations and the text, without a header. The text is
+	 *	written as UTF-8 unless it has a surrogate that is not part of a
+	 *	pair, like one from &#xD800;, which UTF-8 cannot hold; then it is
+	 *	written a character at a time, so it reads back the same.
+	 *	@param out			where to write
+	 *	@throws IOException	if it cannot be written
+	 */
+	void write(DataOutputStream out) throws IOException
+	{
+		endRun();
+		ByteBuffer utf8 = null;
+		try
+		{
+			utf8 = StandardCharsets.UTF_8.newEncoder()
+										.onMalformedInput(CodingErrorAction.REPORT)
+										.onUnmappableCharacter(CodingErrorAction.REPORT)
+										.encode(CharBuffer.wrap(text, 0, textLength));
+		}
+		catch(CharacterCodingException e)
+		{
+			// An unpaired surrogate, written as UTF-16 below
+		}
+		out.writeInt(count);
+		out.writeInt(operationBytes);
+		out.write(operations, 0, operationBytes);
+		out.writeInt(textLength);
+		if(utf8 != null)
+		{
+			out.writeByte(TEXT_UTF8);
+			out.writeInt(utf8.remaining());
+			out.write(utf8.array(), utf8.arrayOffset() + utf8.position(), utf8.remaining());
+		}
+		else
+		{
+			out.writeByte(TEXT_UTF16);
+			out.writeInt(textLength * 2);
+			for(int k = 0; k < textLength; k++)
+				out.writeChar(text[k]);
+		}
+	}
+
+	/**
+	 *	Reads the operations and text written by write, checking that
+	 *	every operation is known and the lengths add up to the text.
+	 *	@param in			where to read
+	 *	@return				the list
+	 *	@throws IOException	if it cannot be read or does not make sense
+	 */
+	static DisplayList read(DataInputStream in) throws IOException
+	{
+		DisplayList list = new DisplayList();
+		int countIn = in.readInt();
+		int bytes = in.readInt();
+		if(countIn < 0 || bytes < 0)
+			throw new IOException("damaged display list");
+		list.operations = new byte[Math.max(bytes, 1)];
+		in.readFully(list.operations, 0, bytes);
+		int length = in.readInt();
+		int format = in.readByte();
+		int textBytes = in.readInt();
+		if(length < 0 || textBytes < 0)
+			throw new IOException("damaged display list");
+		if(format == TEXT_UTF8)
+		{
+			byte [] utf8 = new byte[textBytes];
+			in.readFully(utf8);
+			CharBuffer chars = StandardCharsets.UTF_8.newDecoder()
+									.onMalformedInput(CodingErrorAction.REPORT)
+									.onUnmappableCharacter(CodingErrorAction.REPORT)
+									.decode(ByteBuffer.wrap(utf8));
+			list.text = new char[chars.remaining()];
+			chars.get(list.text);
+		}
+		else if(format == TEXT_UTF16 && textBytes == length * 2L)
+		{
+			list.text = new char[length];
+			for(int k = 0; k < length; k++)
+				list.text[k] = in.readChar();
+		}
+		else
+			throw new IOException("damaged display list");
+		list.operationBytes = bytes;
+		list.textLength = list.text.length;
+		list.count = countIn;
+		if(list.textLength != length || !list.isValid())
+			throw new IOException("damaged display list");
+		return list;
+	}
+
+	/**
+	 *	@return				true if every operation is known, no length
+	 *						runs past the end and the text is all used
+	 */
+	private boolean isValid()
+	{
+		long total = 0;
+		int found = 0;
+		int k = 0;
+		while(k < operationBytes)
+		{
+			int operation = operations[k++];
+			found++;
+			if(operation < 0 || operation >= OPERATION_COUNT)
+				return false;
+			if(operation > PRINT_PREFORMATTED)
+				continue;
+			long length = 0;
+			int shift = 0;
+			int b;
+			do
+			{
+				if(k == operationBytes || shift > 28)
+					return false;
+				b = operations[k++];
+				length |= (long)(b & 0x7f) << shift;
+				shift += 7;
+			}
+			while((b & 0x80) != 0);
+			total += length;
+		}
+		return found == count && total == textLength;
+	}
+
+	/**	@return			the number of operations recorded */
+	public int getOperationCount()
+	{
+		return count + (runOperation != -1 && textLength > runStart ? 1 : 0);
+	}
+
+	/**	@return			the number of characters of text recorded */
+	public int getTextLength() { return textLength; }
+
+	/**	@return			about how many bytes the list takes in memory */
+	public long getBytes() { return operations.length + 2L * text.length; }
+
+	public String toString()
+	{
+		return "display list: " + getOperationCount() + " operations in " + operationBytes
+			   + " bytes, " + textLength + " characters";
+	}
+}
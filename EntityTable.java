@@ -0,0 +1,275 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ *	EntityTable
+ *	The character references the tokenizer knows about: the named
+ *	entities of HTML 4, like "&amp;" and "&eacute;", plus "&apos;", and
+ *	numeric references like "&#8212;" and "&#x2014;". A reference has to
+ *	end with ';' to be one, so "&amp" and "&ampx;" are not.
+ *
+ *	The names are kept in a trie made when the class loads, stored as
+ *	flat arrays: each node has a sorted run of edges, one character and
+ *	the node it leads to each, and the character of a name that ends at
+ *	the node. A lookup walks the trie one character at a time and
+ *	numbers are read as they are walked, so finding a reference and
+ *	what it stands for makes no objects.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class EntityTable {
+
+	// the most characters a reference may take, "&thetasym;" or "&#x10FFFF;"
+	public static final int MAX_LENGTH = 10;
+
+	// the most digits in a numeric reference, in decimal and in hex
+	private static final int MAX_DECIMAL_DIGITS = 7;
+	private static final int MAX_HEX_DIGITS = 6;
+
+	// what a numeric reference to a character that cannot be printed stands for
+	private static final int REPLACEMENT = 0xFFFD;
+
+	// The named entities of Latin-1, from 160 (nbsp) to 255 (yuml) in order
+	private static final String [] LATIN1 = {
+		"nbsp", "iexcl", "cent", "pound", "curren", "yen", "brvbar", "sect",
+		"uml", "copy", "ordf", "laquo", "not", "shy", "reg", "macr",
+		"deg", "plusmn", "sup2", "sup3", "acute", "micro", "para", "middot",
+		"cedil", "sup1", "ordm", "raquo", "frac14", "frac12", "frac34", "iquest",
+		"Agrave", "Aacute", "Acirc", "Atilde", "Auml", "Aring", "AElig", "Ccedil",
+		"Egrave", "Eacute", "Ecirc", "Euml", "Igrave", "Iacute", "Icirc", "Iuml",
+		"ETH", "Ntilde", "Ograve", "Oacute", "Ocirc", "Otilde", "Ouml", "times",
+		"Oslash", "Ugrave", "Uacute", "Ucirc", "Uuml", "Yacute", "THORN", "szlig",
+		"agrave", "aacute", "acirc", "atilde", "auml", "aring", "aelig", "ccedil",
+		"egrave", "eacute", "ecirc", "euml", "igrave", "iacute", "icirc", "iuml",
+		"eth", "ntilde", "ograve", "oacute", "ocirc", "otilde", "ouml", "divide",
+		"oslash", "ugrave", "uacute", "ucirc", "uuml", "yacute", "thorn", "yuml" };
+
+	// The other named entities, each as its name and code point
+	private static final String [] NAMED = {
+		// markup and punctuation
+		"quot 34", "amp 38", "apos 39", "lt 60", "gt 62",
+		"OElig 338", "oelig 339", "Scaron 352", "scaron 353", "Yuml 376",
+		"circ 710", "tilde 732", "ensp 8194", "emsp 8195", "thinsp 8201",
+		"zwnj 8204", "zwj 8205", "lrm 8206", "rlm 8207", "ndash 8211",
+		"mdash 8212", "lsquo 8216", "rsquo 8217", "sbquo 8218", "ldquo 8220",
+		"rdquo 8221", "bdquo 8222", "dagger 8224", "Dagger 8225", "permil 8240",
+		"lsaquo 8249", "rsaquo 8250", "euro 8364",
+		// Greek
+		"fnof 402", "Alpha 913", "Beta 914", "Gamma 915", "Delta 916",
+		"Epsilon 917", "Zeta 918", "Eta 919", "Theta 920", "Iota 921",
+		"Kappa 922", "Lambda 923", "Mu 924", "Nu 925", "Xi 926",
+		"Omicron 927", "Pi 928", "Rho 929", "Sigma 931", "Tau 932",
+		"Upsilon 933", "Phi 934", "Chi 935", "Psi 936", "Omega 937",
+		"alpha 945", "beta 946", "gamma 947", "delta 948", "epsilon 949",
+		"zeta 950", "eta 951", "theta 952", "iota 953", "kappa 954",
+		"lambda 955", "mu 956", "nu 957", "xi 958", "omicron 959",
+		"pi 960", "rho 961", "sigmaf 962", "sigma 963", "tau 964",
+		"upsilon 965", "phi 966", "chi 967", "psi 968", "omega 969",
+		"thetasym 977", "upsih 978", "piv 982",
+		// symbols, arrows and math
+		"bull 8226", "hellip 8230", "prime 8242", "Prime 8243", "oline 8254",
+		"frasl 8260", "weierp 8472", "image 8465", "real 8476", "trade 8482",
+		"alefsym 8501", "larr 8592", "uarr 8593", "rarr 8594", "darr 8595",
+		"harr 8596", "crarr 8629", "lArr 8656", "uArr 8657", "rArr 8658",
+		"dArr 8659", "hArr 8660", "forall 8704", "part 8706", "exist 8707",
+		"empty 8709", "nabla 8711", "isin 8712", "notin 8713", "ni 8715",
+		"prod 8719", "sum 8721", "minus 8722", "lowast 8727", "radic 8730",
+		"prop 8733", "infin 8734", "ang 8736", "and 8743", "or 8744",
+		"cap 8745", "cup 8746", "int 8747", "there4 8756", "sim 8764",
+		"cong 8773", "asymp 8776", "ne 8800", "equiv 8801", "le 8804",
+		"ge 8805", "sub 8834", "sup 8835", "nsub 8836", "sube 8838",
+		"supe 8839", "oplus 8853", "otimes 8855", "perp 8869", "sdot 8901",
+		"lceil 8968", "rceil 8969", "lfloor 8970", "rfloor 8971", "lang 9001",
+		"rang 9002", "loz 9674", "spades 9824", "clubs 9827", "hearts 9829",
+		"diams 9830" };
+
+	// The trie, node 0 is the root. The edges of node n are the indexes
+	// from FIRST_EDGE[n] to FIRST_EDGE[n + 1], sorted by character.
+	private static final int [] FIRST_EDGE;		// index of the first edge of each node
+	private static final char [] EDGE_CHARS;	// the character of each edge
+	private static final int [] EDGE_NODES;		// the node each edge leads to
+	private static final int [] VALUES;			// the code point of a name ending at each node, or -1
+
+	// Puts every name into a trie of nodes with maps of edges, then lays
+	// the nodes out in the flat arrays
+	static
+	{
+		List<TreeMap<Character, Integer>> edges = buildTrie();
+		int edgeCount = 0;
+		for(TreeMap<Character, Integer> map : edges)
+			edgeCount += map.size();
+		FIRST_EDGE = new int[edges.size() + 1];
+		EDGE_CHARS = new char[edgeCount];
+		EDGE_NODES = new int[edgeCount];
+		VALUES = new int[edges.size()];
+		int edge = 0;
+		for(int node = 0; node < edges.size(); node++)
+		{
+			FIRST_EDGE[node] = edge;
+			VALUES[node] = -1;
+			for(Map.Entry<Character, Integer> e : edges.get(node).entrySet())
+			{
+				// The value of a node is kept as the edge for '\0'
+				if(e.getKey() == 0)
+				{
+					VALUES[node] = e.getValue();
+					continue;
+				}
+				EDGE_CHARS[edge] = e.getKey();
+				EDGE_NODES[edge] = e.getValue();
+				edge++;
+			}
+		}
+		FIRST_EDGE[edges.size()] = edge;
+	}
+
+	private EntityTable()
+	{
+	}
+
+	/**
+	 *	Finds the end of a character reference.
+	 *	@param str			the text the reference is in
+	 *	@param start		index of the '&' of the reference
+	 *	@param to			index to stop looking at
+	 *	@return				index after the ';' of the reference, or -1 if
+	 *						there is no reference at start before to
+	 */
+	public static int end(CharSequence str, int start, int to)
+	{
+		long found = walk(str, start, to);
+		return found == -1 ? -1 : (int)(found >>> 32);
+	}
+
+	/**
+	 *	Finds what a character reference stands for.
+	 *	@param str			the text the reference is in
+	 *	@param start		index of the '&' of the reference
+	 *	@param end			index after the ';' of the reference
+	 *	@return				the code point of the character, or -1 if the
+	 *						text is not exactly one reference
+	 */
+	public static int decode(CharSequence str, int start, int end)
+	{
+		long found = walk(str, start, end);
+		if(found == -1 || (int)(found >>> 32) != end)
+			return -1;
+		return (int)found;
+	}
+
+	/**
+	 *	Reads a character reference.
+	 *	@param str			the text the reference is in
+	 *	@param start		index of the '&' of the reference
+	 *	@param to			index to stop reading at
+	 *	@return				the index after the ';' in the high 32 bits and
+	 *						the code point in the low 32 bits, or -1 if
+	 *						there is no reference
+	 */
+	private static long walk(CharSequence str, int start, int to)
+	{
+		to = Math.min(to, start + MAX_LENGTH);
+		if(start + 2 >= to || str.charAt(start) != '&')
+			return -1;
+
+		int value = -1;
+		int k = start + 1;
+		if(str.charAt(k) == '#')
+		{
+			// A number, in hex after an 'x'
+			k++;
+			int radix = 10;
+			int maxDigits = MAX_DECIMAL_DIGITS;
+			if(k < to && (str.charAt(k) == 'x' || str.charAt(k) == 'X'))
+			{
+				k++;
+				radix = 16;
+				maxDigits = MAX_HEX_DIGITS;
+			}
+			int digitStart = k;
+			value = 0;
+			while(k < to && k - digitStart < maxDigits)
+			{
+				// Only ASCII digits, Character.digit also takes others
+				char c = str.charAt(k);
+				int digit = c > 'f' ? -1 : Character.digit(c, radix);
+				if(digit == -1)
+					break;
+				value = value * radix + digit;
+				k++;
+			}
+			if(k == digitStart)
+				return -1;
+			if(value == 0 || value > Character.MAX_CODE_POINT
+			   || (value >= Character.MIN_SURROGATE && value <= Character.MAX_SURROGATE))
+				value = REPLACEMENT;
+		}
+		else
+		{
+			// A name, walked down the trie
+			int node = 0;
+			while(k < to && str.charAt(k) != ';')
+			{
+				int edge = Arrays.binarySearch(EDGE_CHARS, FIRST_EDGE[node],
+											   FIRST_EDGE[node + 1], str.charAt(k));
+				if(edge < 0)
+					return -1;
+				node = EDGE_NODES[edge];
+				k++;
+			}
+			value = VALUES[node];
+		}
+
+		if(value == -1 || k >= to || str.charAt(k) != ';')
+			return -1;
+		return ((long)(k + 1) << 32) | value;
+	}
+
+	/**
+	 *	Puts every name into a trie of nodes, each a map from the
+	 *	characters of its edges to the nodes they lead to. The code point
+	 *	of a name that ends at a node is put in its map under '\0'.
+	 *	@return				the nodes, the root first
+	 */
+	private static List<TreeMap<Character, Integer>> buildTrie()
+	{
+		List<TreeMap<Character, Integer>> edges = new ArrayList<TreeMap<Character, Integer>>();
+		edges.add(new TreeMap<Character, Integer>());
+		for(int k = 0; k < LATIN1.length + NAMED.length; k++)
+		{
+			String name;
+			int value;
+			if(k < LATIN1.length)
+			{
+				name = LATIN1[k];
+				value = 160 + k;
+			}
+			else
+			{
+				String entry = NAMED[k - LATIN1.length];
+				int space = entry.indexOf(' ');
+				name = entry.substring(0, space);
+				value = Integer.parseInt(entry.substring(space + 1));
+			}
+
+			int node = 0;
+			for(int c = 0; c < name.length(); c++)
+			{
+				Integer next = edges.get(node).get(name.charAt(c));
+				if(next == null)
+				{
+					next = edges.size();
+					edges.add(new TreeMap<Character, Integer>());
+					edges.get(node).put(name.charAt(c), next);
+				}
+				node = next;
+			}
+			edges.get(node).put('\0', value);
+		}
+		return edges;
+	}
+}
@@ -1,56 +1,164 @@
-import java.io.PrintWriter;
-import java.io.File;
-import java.io.FileNotFoundException;
-
-
-/**
- *	File Utilities for reading and writing
- *
- *	@author Joshua Cao
- *	@since August 23, 2024
- */
-public class FileUtils 
-{
-	/**
-	 * 	Opens a file to read using the Scanner class.
-	 * 	@param fileName		name of the file to open
-	 * 	@return 			the Scanner object to the file
-	 */
-	public static java.util.Scanner openToRead(String fileName)
-	{
-		java.util.Scanner input = null;
-		
-		try
-		{
-		input = new java.util.Scanner(new java.io.File(fileName));
-		}
-		catch (java.io.FileNotFoundException e)
-		{
-			System.err.println("ERROR: Cannot open " + fileName + 
-							" for reading.");
-			System.exit(72);
-		}
-		return input;
-	}
-	
-	/**
-	 * 	Opens a file to write using the Printwriter class.
-	 * 	@param fileName		name of the file open
-	 * 	@return				the PrintWriter object to the file
-	 */
-	public static PrintWriter openToWrite(String fileName)
-	{
-		PrintWriter output = null;
-		try 
-		{
-			output = new PrintWriter(new File(fileName));
-		}
-		catch (FileNotFoundException e)
-		{
-			System.err.println("ERROR: Cannot open " + fileName + 
-							" for writing.");
-			System.exit(73);
-		}
-		return output;
-	}
-}
+import java.io.PrintWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ *	File Utilities for reading and writing
+ *
+ *	@author Joshua Cao
+ *	@since August 23, 2024
+ */
+public class FileUtils 
+{
+	// the largest file that can be mapped and viewed as one CharSequence
+	public static final long MAX_MAP_SIZE = Integer.MAX_VALUE;
+
+	// the largest file that is decoded whole onto the heap when it is not
+	// one byte a character, larger ones are better streamed
+	public static final long MAX_DECODE_SIZE = 64L * 1024 * 1024;
+
+	// the high bit of each byte of a long, set in any byte that is not ASCII
+	private static final long HIGH_BITS = 0x8080808080808080L;
+
+	/**
+	 * 	Opens a file to read using the Scanner class, in the charset the
+	 * 	file declares (see HTMLReader).
+	 * 	@param fileName		name of the file to open
+	 * 	@return 			the Scanner object to the file
+	 */
+	public static java.util.Scanner openToRead(String fileName)
+	{
+		java.util.Scanner input = null;
+		
+		try
+		{
+			input = new java.util.Scanner(HTMLReader.open(Paths.get(fileName)));
+		}
+		catch (IOException e)
+		{
+			System.err.println("ERROR: Cannot open " + fileName + 
+							" for reading.");
+			System.exit(72);
+		}
+		return input;
+	}
+	
+	/**
+	 * 	Maps a file into memory and views it as characters, in the charset
+	 * 	the file declares with a byte order mark or meta tag, or the
+	 * 	default charset.
+	 * 	@param fileName		name of the file to open
+	 * 	@return 			the text of the file, or null if the file is too
+	 * 						large to map in one go or to decode whole
+	 * 	@throws IOException	if the file cannot be opened or read
+	 */
+	public static CharSequence mapToRead(String fileName) throws IOException
+	{
+		return mapToRead(fileName, null);
+	}
+	
+	/**
+	 * 	Maps a file into memory and views it as characters. If every byte
+	 * 	is a single character (ISO-8859-1, or ASCII text in an ASCII based
+	 * 	charset like UTF-8) the bytes are decoded lazily as they are read
+	 * 	and never copied. Otherwise the file is decoded once into a
+	 * 	CharBuffer, copying the ASCII runs and only decoding the rest.
+	 * 	Files larger than MAX_MAP_SIZE, and files that have to be decoded
+	 * 	and are larger than MAX_DECODE_SIZE, return null; read them with
+	 * 	HTMLReader.open instead, which records the read when it is closed,
+	 * 	so a file that returns null is not recorded here.
+	 * 	@param fileName		name of the file to open
+	 * 	@param charset		the charset of the file, or null to use the one
+	 * 						the file declares
+	 * 	@return 			the text of the file, or null if the file is too
+	 * 						large to map in one go or to decode whole
+	 * 	@throws IOException	if the file cannot be opened or read
+	 */
+	public static CharSequence mapToRead(String fileName, Charset charset) 
+										throws IOException
+	{
+		MappedByteBuffer bytes = null;
+		RenderMetrics.ReadEvent event = RenderMetrics.beginRead();
+		
+		// The mapping stays valid after the channel is closed
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), 
+												StandardOpenOption.READ))
+		{
+			if(channel.size() > MAX_MAP_SIZE)
+				return null;
+			bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if(charset == null)
+			charset = HTMLReader.sniff(bytes, Charset.defaultCharset());
+		
+		// A UTF-8 byte order mark is not part of the text
+		int start = 0;
+		if(charset.equals(StandardCharsets.UTF_8) && bytes.limit() >= 3 
+		   && bytes.get(0) == (byte)0xEF && bytes.get(1) == (byte)0xBB && bytes.get(2) == (byte)0xBF)
+			start = 3;
+		
+		CharSequence text = null;
+		if(charset.equals(StandardCharsets.ISO_8859_1) 
+		   || (HTMLReader.isAsciiCompatible(charset) && isAscii(bytes, start)))
+			text = new MappedCharSequence(bytes.position(start).slice());
+		else if(bytes.limit() > MAX_DECODE_SIZE)
+			return null;
+		else
+			text = HTMLReader.decode(bytes, charset);
+		RenderMetrics.endRead(event, fileName, bytes.limit());
+		return text;
+	}
+	
+	/**
+	 * 	Checks if every byte is an ASCII character, eight at a time.
+	 * 	@param bytes		the bytes to check
+	 * 	@param start		index of the first byte to check
+	 * 	@return				true if no byte has its high bit set
+	 */
+	private static boolean isAscii(ByteBuffer bytes, int start)
+	{
+		int limit = bytes.limit();
+		int i = start;
+		for(; i + 8 <= limit; i += 8)
+		{
+			if((bytes.getLong(i) & HIGH_BITS) != 0)
+				return false;
+		}
+		for(; i < limit; i++)
+		{
+			if(bytes.get(i) < 0)
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * 	Opens a file to write using the Printwriter class.
+	 * 	@param fileName		name of the file open
+	 * 	@return				the PrintWriter object to the file
+	 */
+	public static PrintWriter openToWrite(String fileName)
+	{
+		PrintWriter output = null;
+		try 
+		{
+			output = new PrintWriter(new File(fileName));
+		}
+		catch (FileNotFoundException e)
+		{
+			System.err.println("ERROR: Cannot open " + fileName + 
+							" for writing.");
+			System.exit(73);
+		}
+		return output;
+	}
+}
@@ -0,0 +1,311 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ *	HTMLBatch
+ *	Renders many HTML files to text without opening a window. The files
+ *	are every .html and .htm file under a folder, or the files that match
+ *	a glob such as "pages/*.html". Each file is rendered on its own
+ *	virtual thread into a text file, and a semaphore keeps the number of
+ *	files open at once under a limit. Virtual threads came in Java 21;
+ *	on an older Java the files are rendered on a pool of as many
+ *	platform threads as files may be open.
+ *
+ *	When every file is done it prints how many files were rendered and
+ *	failed, the throughput, and the 50th and 99th percentile of the time
+ *	it took to render one file. A file that fails does not stop the
+ *	others, its error is printed and counted.
+ *
+ *	Usage: java HTMLBatch [-ansi] [-out <folder>] [-open <count>] [-cache <folder>] <folder | glob>
+ *		-ansi		styles the text with ANSI escape codes
+ *		-out		where to write the text files, by default each one is
+ *					written next to its HTML file
+ *		-open		the most files open at once, 64 by default
+ *		-cache		where to keep the rendered lines, so files that have
+ *					not changed since the last batch are not rendered again
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class HTMLBatch {
+
+	// the most files open at once if -open is not given
+	public static final int DEFAULT_OPEN_FILES = 64;
+
+	private static final String USAGE =
+		"Usage: java HTMLBatch [-ansi] [-out <folder>] [-open <count>] [-cache <folder>] <folder | glob>";
+
+	private boolean ansi;			// true to style the text with ANSI codes
+	private Path outFolder;			// where the text files go, or null for next to the input
+	private Path base;				// the folder the input files were found in
+	private Semaphore openFiles;	// a permit for each document being rendered
+	private RenderCache cache;		// the rendered lines of earlier batches, or null
+
+	private long [] latencies;		// nanoseconds to render each file, -1 if it failed
+	private long [] sizes;			// bytes in each file
+
+	public static void main(String[] args)
+	{
+		System.exit(new HTMLBatch().run(args));
+	}
+
+	/**
+	 *	Renders every file the arguments name and prints a summary. The
+	 *	program is not ended here, so it can be run from other code.
+	 *	@param args			the options and the folder or glob
+	 *	@return				0 if every file was rendered, 74 if some failed,
+	 *						64 if the arguments are wrong
+	 */
+	public int run(String [] args)
+	{
+		ansi = false;
+		outFolder = null;
+		cache = null;
+		Path cacheFolder = null;
+		int maxOpen = DEFAULT_OPEN_FILES;
+		String pattern = null;
+		boolean valid = true;
+		try {
+			for (int i = 0; i < args.length && valid; i++) {
+				if (args[i].equals("-ansi"))
+					ansi = true;
+				else if (args[i].equals("-out") && i + 1 < args.length)
+					outFolder = Paths.get(args[++i]);
+				else if (args[i].equals("-open") && i + 1 < args.length)
+					maxOpen = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-cache") && i + 1 < args.length)
+					cacheFolder = Paths.get(args[++i]);
+				else if (!args[i].startsWith("-") && pattern == null)
+					pattern = args[i];
+				else
+					valid = false;
+			}
+		}
+		catch (NumberFormatException e) {
+			valid = false;
+		}
+		if (!valid || pattern == null || maxOpen <= 0) {
+			System.out.println(USAGE);
+			return 64;
+		}
+
+		List<Path> files = null;
+		try {
+			files = findFiles(pattern);
+		}
+		catch (IOException e) {
+			System.err.println("ERROR: Cannot list " + pattern);
+			return 74;
+		}
+		if (cacheFolder != null) {
+			try {
+				cache = new RenderCache(cacheFolder);
+			}
+			catch (IOException e) {
+				System.err.println("ERROR: Cannot make the cache folder " + cacheFolder);
+				return 74;
+			}
+		}
+
+		openFiles = new Semaphore(maxOpen);
+		latencies = new long[files.size()];
+		sizes = new long[files.size()];
+		long start = System.nanoTime();
+		ExecutorService executor = newExecutor(maxOpen);
+		try {
+			for (int i = 0; i < files.size(); i++) {
+				int index = i;
+				Path file = files.get(i);
+				executor.submit(() -> renderFile(file, index));
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+		catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			return 74;
+		}
+		long elapsed = System.nanoTime() - start;
+
+		return printSummary(elapsed) == 0 ? 0 : 74;
+	}
+
+	/**
+	 *	Makes the executor the files are rendered on: a virtual thread per
+	 *	file on Java 21 and later, found by reflection so the class still
+	 *	compiles on older versions, or else a pool of platform threads.
+	 *	@param threads		the number of platform threads if there are no
+	 *						virtual threads
+	 *	@return				the executor
+	 */
+	private static ExecutorService newExecutor(int threads)
+	{
+		try {
+			return (ExecutorService)Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException e) {
+			return Executors.newFixedThreadPool(threads);
+		}
+	}
+
+	/**
+	 *	Finds the files to render. A folder gives every .html and .htm file
+	 *	in it and its subfolders, anything else is a glob that is matched
+	 *	from the folder before its first wildcard.
+	 *	@param pattern		a folder or a glob
+	 *	@return				the files, sorted by path
+	 *	@throws IOException	if a folder cannot be listed
+	 */
+	public List<Path> findFiles(String pattern) throws IOException
+	{
+		Path folder = Paths.get(pattern);
+		PathMatcher matcher = null;
+		if (Files.isDirectory(folder))
+			matcher = path -> {
+				String name = path.getFileName().toString().toLowerCase();
+				return name.endsWith(".html") || name.endsWith(".htm");
+			};
+		else {
+			// The folder is the part before the first wildcard
+			int wildcard = 0;
+			while (wildcard < pattern.length() && "*?[{".indexOf(pattern.charAt(wildcard)) == -1)
+				wildcard++;
+			int slash = pattern.lastIndexOf('/', wildcard);
+			folder = Paths.get(slash == -1 ? "." : pattern.substring(0, slash + 1));
+			PathMatcher glob = folder.getFileSystem().getPathMatcher("glob:" + pattern.substring(slash + 1));
+			Path root = folder;
+			matcher = path -> glob.matches(root.relativize(path));
+		}
+
+		base = folder;
+		List<Path> files = new ArrayList<Path>();
+		PathMatcher accept = matcher;
+		try (Stream<Path> paths = Files.walk(folder)) {
+			paths.filter(path -> Files.isRegularFile(path) && accept.matches(path))
+				 .forEach(files::add);
+		}
+		Collections.sort(files);
+		return files;
+	}
+
+	/**
+	 *	Renders one file into its text file, holding a permit while the
+	 *	files are open, and records how long it took.
+	 *	@param file			the HTML file
+	 *	@param index		index of the file, where its results are kept
+	 */
+	private void renderFile(Path file, int index)
+	{
+		latencies[index] = -1;
+		try {
+			openFiles.acquire();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		try {
+			long start = System.nanoTime();
+			Path out = outputFor(file);
+			try (FileChannel channel = FileChannel.open(out, StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				HTMLRender renderer = new HTMLRender(new TextRenderSink(channel, ansi));
+				renderer.setRenderCache(cache);
+				renderer.render(file.toString());
+			}
+			sizes[index] = Files.size(file);
+			latencies[index] = System.nanoTime() - start;
+		}
+		catch (IOException | RuntimeException e) {
+			System.err.println("ERROR: Cannot render " + file + ": " + e);
+		}
+		finally {
+			openFiles.release();
+		}
+	}
+
+	/**
+	 *	@return				the text file for an HTML file, with its
+	 *						extension changed to .txt
+	 */
+	private Path outputFor(Path file) throws IOException
+	{
+		String name = file.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		name = (dot > 0 ? name.substring(0, dot) : name) + ".txt";
+		if (outFolder == null)
+			return file.resolveSibling(name);
+
+		Path out = outFolder.resolve(base.relativize(file)).resolveSibling(name);
+		Files.createDirectories(out.getParent());
+		return out;
+	}
+
+	/**
+	 *	Prints the number of files rendered and failed, the throughput,
+	 *	the latency percentiles, the cache and, if they are kept, the metrics.
+	 *	@param elapsed		nanoseconds the whole batch took
+	 *	@return				the number of files that failed
+	 */
+	private int printSummary(long elapsed)
+	{
+		long [] done = new long[latencies.length];
+		int count = 0;
+		long bytes = 0;
+		for (int i = 0; i < latencies.length; i++) {
+			if (latencies[i] >= 0) {
+				done[count++] = latencies[i];
+				bytes += sizes[i];
+			}
+		}
+		Arrays.sort(done, 0, count);
+		int failed = latencies.length - count;
+		double seconds = Math.max(elapsed, 1) / 1e9;
+
+		System.out.println("rendered " + count + " files, " + failed + " failed, in "
+						   + String.format("%.3f", seconds) + " s");
+		System.out.println(String.format("throughput: %.1f files/s, %.1f MB/s",
+						   count / seconds, bytes / seconds / (1024 * 1024)));
+		if (count > 0)
+			System.out.println(String.format("latency per file: p50 %.3f ms, p99 %.3f ms",
+							   percentile(done, count, 50) / 1e6, percentile(done, count, 99) / 1e6));
+		if (cache != null)
+			System.out.println(cache);
+		if (RenderMetrics.ENABLED)
+			System.out.println(RenderMetrics.snapshot());
+		return failed;
+	}
+
+	/**
+	 *	@param sorted		values in increasing order
+	 *	@param count		number of values
+	 *	@param percent		the percentile, 0 to 100
+	 *	@return				the smallest value that is at least percent of
+	 *						the values, by the nearest rank
+	 */
+	private static long percentile(long [] sorted, int count, int percent)
+	{
+		int rank = (int)Math.ceil(percent / 100.0 * count);
+		return sorted[Math.max(rank, 1) - 1];
+	}
+}
@@ -0,0 +1,690 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *	HTMLLayout
+ *	The layout stage of the renderer. HTMLRender decides the style of
+ *	every word and adds it here, along with the line breaks and rules
+ *	between blocks. The layout splits the words of each block into
+ *	lines no longer than the limit of their style and keeps the result
+ *	as a list of LineBoxes.
+ *
+ *	The words are kept too, in one character pool with int arrays for
+ *	their spans, so the document can be laid out again for other limits
+ *	without tokenizing it again. Only blocks that use a changed limit
+ *	and are wider than the smaller of the old and new limits are laid
+ *	out again, the lines of every other block are reused. Printing the
+ *	lines to a sink is a replay of the kept LineBoxes.
+ *
+ *	A layout can also be built from the items of another layout, so
+ *	the parts of a document that did not change are copied over with
+ *	their lines instead of being rendered and laid out again.
+ *
+ *	Only a layout that retains its blocks keeps them. One that prints
+ *	to a live sink drops each block once it is printed unless it is
+ *	told to retain them, so rendering a document straight to a sink
+ *	holds one block at a time instead of the whole document twice.
+ *	A block that grows past FLUSH_ITEMS items, like a whole book in one
+ *	paragraph, has its full lines printed and dropped as it goes, so
+ *	only the line still being filled is held.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class HTMLLayout {
+
+	// Categories of limits, the index into the limits array
+	public static final int BODY = 0;		// normal text
+	public static final int HEADING1 = 1;	// heading 1, up to HEADING1 + 5 for heading 6
+
+	// the limits HTMLRender has always used, for text and headings 1 to 6
+	public static final int [] DEFAULT_LIMITS = { 80, 40, 50, 60, 80, 100, 120 };
+
+	// Types of items
+	private static final int WORD = 0;		// a word that counts toward the limit
+	private static final int TEXT = 1;		// text that does not count or wrap
+	private static final int CONTROL = 2;	// a new line, break or rule
+	private static final int END = 3;		// the end of a block from endBlock
+
+	private final int DEFAULT_CAPACITY = 64;	// starting size of the arrays
+
+	// items an open block that is not kept may hold before its full lines are printed
+	private static final int FLUSH_ITEMS = 4096;
+
+	private StringBuilder pool;		// the characters of every word and text
+	private int [] types;			// type of each item
+	private int [] operations;		// RenderSink operation of each item
+	private int [] starts;			// start of each item's text in the pool
+	private int [] ends;			// end of each item's text in the pool
+	private int [] categories;		// limit category of each word
+	private boolean [] spaced;		// true if a space is printed after the word
+	private int itemCount;			// number of items
+
+	private int [] blockStarts;		// index of the first item of each block
+	private int [] blockWidths;		// width of each block on a single line
+	private int [] blockCategories;	// bit of each category used in the block
+	private int blockCount;			// number of finished blocks
+	private int openStart;			// first item of the block being built
+	private boolean openControl;	// true if the open block has ended its text
+
+	private List<LineBox[]> blockLines;	// the lines of each finished block
+	private int [] limits;				// the limits the lines were laid out for
+	private RenderSink live;			// where finished blocks are printed, or null
+	private RenderSink copy;			// where finished blocks are also printed, or null
+	private boolean retain;				// true if finished blocks are kept
+	private int droppedBlocks;			// number of finished blocks not kept
+	private int flushAt;				// item count that prints the open block's full lines
+
+	/**
+	 *	Creates a layout for the default limits that prints each block
+	 *	as soon as it is finished. Blocks are kept only if there is no
+	 *	live sink.
+	 *	@param liveIn		where to print finished blocks, or null to only
+	 *						keep them
+	 */
+	public HTMLLayout(RenderSink liveIn)
+	{
+		this(liveIn, DEFAULT_LIMITS);
+	}
+
+	/**
+	 *	Blocks are kept only if there is no live sink.
+	 *	@param liveIn		where to print finished blocks, or null to only
+	 *						keep them
+	 *	@param limitsIn		the most characters on a line for each category
+	 */
+	public HTMLLayout(RenderSink liveIn, int [] limitsIn)
+	{
+		pool = new StringBuilder();
+		types = new int[DEFAULT_CAPACITY];
+		operations = new int[DEFAULT_CAPACITY];
+		starts = new int[DEFAULT_CAPACITY];
+		ends = new int[DEFAULT_CAPACITY];
+		categories = new int[DEFAULT_CAPACITY];
+		spaced = new boolean[DEFAULT_CAPACITY];
+		itemCount = 0;
+		blockStarts = new int[DEFAULT_CAPACITY];
+		blockWidths = new int[DEFAULT_CAPACITY];
+		blockCategories = new int[DEFAULT_CAPACITY];
+		blockCount = 0;
+		openStart = 0;
+		openControl = false;
+		blockLines = new ArrayList<LineBox[]>();
+		limits = limitsIn.clone();
+		live = liveIn;
+		copy = null;
+		retain = liveIn == null;
+		droppedBlocks = 0;
+		flushAt = FLUSH_ITEMS;
+	}
+
+	/**
+	 *	Sets if blocks finished from now on are kept, so they can be laid
+	 *	out again, paged or copied, or dropped once they are printed.
+	 *	@param retainIn		true to keep finished blocks
+	 */
+	public void setRetain(boolean retainIn)
+	{
+		retain = retainIn;
+	}
+
+	/**
+	 *	Sets a second sink that the lines of each finished block are
+	 *	printed to, whether or not the block is kept.
+	 *	@param copyIn		where to also print finished blocks, or null
+	 */
+	void setCopy(RenderSink copyIn)
+	{
+		copy = copyIn;
+	}
+
+	/**
+	 *	Adds a word that wraps at the limit of its category.
+	 *	@param operation	the RenderSink operation of its style
+	 *	@param text			the text the word is in
+	 *	@param start		index of the first character of the word
+	 *	@param end			index after the last character of the word
+	 *	@param space		true if a space is printed after it
+	 *	@param category		the limit category, BODY or a heading
+	 */
+	public void addWord(int operation, CharSequence text, int start, int end,
+						boolean space, int category)
+	{
+		addItem(WORD, operation, text, start, end, space, category);
+	}
+
+	/**
+	 *	Adds text that is printed as is, does not count toward the line
+	 *	limit and is never wrapped, like quotation marks or preformatted
+	 *	text.
+	 *	@param operation	the RenderSink operation of its style
+	 *	@param text			the text to print
+	 */
+	public void addText(int operation, CharSequence text)
+	{
+		addText(operation, text, 0, text.length());
+	}
+
+	/**
+	 *	Adds part of some text that is printed as is, like addText above.
+	 *	@param operation	the RenderSink operation of its style
+	 *	@param text			the text the part is in
+	 *	@param start		index of the first character to print
+	 *	@param end			index after the last character to print
+	 */
+	public void addText(int operation, CharSequence text, int start, int end)
+	{
+		addItem(TEXT, operation, text, start, end, false, BODY);
+	}
+
+	/**
+	 *	Adds a new line, line break or horizontal rule, which ends the
+	 *	text of the current block.
+	 *	@param operation	PRINTLN, PRINT_BREAK or PRINT_HORIZONTAL_RULE
+	 */
+	public void addControl(int operation)
+	{
+		addItem(CONTROL, operation, "", 0, 0, false, BODY);
+		openControl = true;
+	}
+
+	/**
+	 *	Ends the current block without printing anything, so the next
+	 *	word starts counting toward the limit from zero.
+	 */
+	public void endBlock()
+	{
+		if(openStart < itemCount)
+		{
+			storeItem(END, -1, "", 0, 0, false, BODY);
+			finishBlock();
+		}
+	}
+
+	/**
+	 *	Ends the last block, laying it out and printing it.
+	 */
+	public void finish()
+	{
+		if(openStart < itemCount)
+			finishBlock();
+	}
+
+	/**
+	 *	Lays the kept blocks out for new limits. Blocks that are not
+	 *	affected by the change keep their lines.
+	 *	@param limitsIn		the most characters on a line for each category
+	 *	@return				the lines of the whole document
+	 */
+	public List<LineBox> layout(int [] limitsIn)
+	{
+		int [] oldLimits = limits;
+		limits = limitsIn.clone();
+		for(int b = 0; b < blockCount; b++)
+		{
+			if(isAffected(b, oldLimits))
+				blockLines.set(b, layoutBlock(b));
+		}
+		return getLines();
+	}
+
+	/**
+	 *	@return				the lines of every kept block, in order
+	 */
+	public List<LineBox> getLines()
+	{
+		List<LineBox> lines = new ArrayList<LineBox>();
+		for(int b = 0; b < blockCount; b++)
+			lines.addAll(Arrays.asList(blockLines.get(b)));
+		return Collections.unmodifiableList(lines);
+	}
+
+	/**
+	 *	Prints every kept block to a sink from the kept lines.
+	 *	@param sink			where the lines are printed
+	 */
+	public void emit(RenderSink sink)
+	{
+		for(int b = 0; b < blockCount; b++)
+		{
+			LineBox [] lines = blockLines.get(b);
+			for(int k = 0; k < lines.length; k++)
+				lines[k].emit(sink);
+		}
+	}
+
+	/**
+	 *	@return				the limits the lines are laid out for
+	 */
+	public int[] getLimits()
+	{
+		return limits.clone();
+	}
+
+	/**
+	 *	@return				the number of finished blocks, kept or not
+	 */
+	public int getBlockCount()
+	{
+		return droppedBlocks + blockCount;
+	}
+
+	/**
+	 *	@return				true if finished blocks are kept
+	 */
+	public boolean isRetained()
+	{
+		return retain;
+	}
+
+	/**
+	 *	@return				the number of items added so far
+	 */
+	int getItemCount()
+	{
+		return itemCount;
+	}
+
+	/**
+	 *	@return				true if items were added since the last block
+	 *						ended, so endBlock would end another block
+	 */
+	boolean hasOpenBlock()
+	{
+		return openStart < itemCount;
+	}
+
+	/**
+	 *	Adds a range of the items of another layout, as if the calls that
+	 *	added them were made again. Blocks that lie wholly inside the
+	 *	range are copied with their lines when the limits are the same,
+	 *	so nothing is laid out again.
+	 *	@param from			the layout to copy from
+	 *	@param first		index of the first item to copy
+	 *	@param last			index after the last item to copy
+	 */
+	void appendItems(HTMLLayout from, int first, int last)
+	{
+		// The first block of the other layout that starts in the range
+		int b = Arrays.binarySearch(from.blockStarts, 0, from.blockCount, first);
+		if(b < 0)
+			b = -b - 1;
+
+		int k = first;
+		while(k < last)
+		{
+			if(b < from.blockCount && from.blockStarts[b] == k)
+			{
+				// A block ends the same here if the item that ended it is copied too
+				int end = from.blockEnd(b);
+				if(end < last || (end == last && from.types[end - 1] == END))
+				{
+					if(openControl && from.types[k] != CONTROL)
+						finishBlock();
+					if(openStart == itemCount)
+					{
+						copyBlock(from, b);
+						k = end;
+						b++;
+						continue;
+					}
+				}
+				b++;
+			}
+			if(from.types[k] == END)
+				endBlock();
+			else
+			{
+				addItem(from.types[k], from.operations[k], from.pool, from.starts[k],
+						from.ends[k], from.spaced[k], from.categories[k]);
+				if(from.types[k] == CONTROL)
+					openControl = true;
+			}
+			k++;
+		}
+	}
+
+	/**
+	 *	Adds an item, first finishing the open block if this text comes
+	 *	after its new lines.
+	 */
+	private void addItem(int type, int operation, CharSequence text, int start, int end,
+						boolean space, int category)
+	{
+		if(type != CONTROL && openControl)
+			finishBlock();
+		storeItem(type, operation, text, start, end, space, category);
+		if(itemCount >= flushAt && !retain && blockCount == 0 && !openControl)
+			flushLines();
+	}
+
+	/**
+	 *	Prints the lines of the open block that are full and drops their
+	 *	items, keeping the line still being filled. A line ends once the
+	 *	word after it is known, so these lines are the same as if the
+	 *	whole block were laid out at its end. Only done for a block that
+	 *	is not kept and is the only one held.
+	 */
+	private void flushLines()
+	{
+		List<LineBox> lines = new ArrayList<LineBox>();
+		int lineStart = layoutItems(openStart, itemCount, lines);
+		flushAt = itemCount - lineStart + FLUSH_ITEMS;
+		if(lineStart == openStart)
+			return;
+
+		// The line being filled has no new line at its end yet
+		if(lines.get(lines.size() - 1).getEndCount() == 0)
+			lines.remove(lines.size() - 1);
+		for(LineBox line : lines)
+		{
+			if(live != null)
+				line.emit(live);
+			if(copy != null)
+				line.emit(copy);
+		}
+
+		// Move the items of the line being filled to the front
+		int count = itemCount - lineStart;
+		int shift = starts[lineStart];
+		pool.delete(0, shift);
+		System.arraycopy(types, lineStart, types, 0, count);
+		System.arraycopy(operations, lineStart, operations, 0, count);
+		System.arraycopy(categories, lineStart, categories, 0, count);
+		System.arraycopy(spaced, lineStart, spaced, 0, count);
+		for(int k = 0; k < count; k++)
+		{
+			starts[k] = starts[lineStart + k] - shift;
+			ends[k] = ends[lineStart + k] - shift;
+		}
+		itemCount = count;
+		openStart = 0;
+	}
+
+	/**
+	 *	Stores an item at the end of the arrays.
+	 */
+	private void storeItem(int type, int operation, CharSequence text, int start, int end,
+						boolean space, int category)
+	{
+		growItems(itemCount + 1);
+		types[itemCount] = type;
+		operations[itemCount] = operation;
+		starts[itemCount] = pool.length();
+		pool.append(text, start, end);
+		ends[itemCount] = pool.length();
+		categories[itemCount] = category;
+		spaced[itemCount] = space;
+		itemCount++;
+	}
+
+	/**
+	 *	Finishes the open block: measures it, lays it out, prints its
+	 *	lines if there is a live sink and keeps them if it retains.
+	 */
+	private void finishBlock()
+	{
+		growBlocks();
+		int width = 0;
+		int used = 0;
+		for(int k = openStart; k < itemCount; k++)
+		{
+			if(types[k] == WORD)
+			{
+				width += ends[k] - starts[k] + (spaced[k] ? 1 : 0);
+				used |= 1 << categories[k];
+			}
+		}
+		blockStarts[blockCount] = openStart;
+		blockWidths[blockCount] = width;
+		blockCategories[blockCount] = used;
+		blockCount++;
+		openStart = itemCount;
+		openControl = false;
+		addLines(layoutBlock(blockCount - 1));
+	}
+
+	/**
+	 *	Copies a finished block of another layout to the end of this one,
+	 *	which has no open block. Its lines are reused if both layouts
+	 *	have the same limits.
+	 *	@param from			the layout to copy from
+	 *	@param b			index of the block in that layout
+	 */
+	private void copyBlock(HTMLLayout from, int b)
+	{
+		int first = from.blockStarts[b];
+		int count = from.blockEnd(b) - first;
+		int shift = pool.length() - from.starts[first];
+		growItems(itemCount + count);
+		System.arraycopy(from.types, first, types, itemCount, count);
+		System.arraycopy(from.operations, first, operations, itemCount, count);
+		System.arraycopy(from.categories, first, categories, itemCount, count);
+		System.arraycopy(from.spaced, first, spaced, itemCount, count);
+		for(int k = 0; k < count; k++)
+		{
+			starts[itemCount + k] = from.starts[first + k] + shift;
+			ends[itemCount + k] = from.ends[first + k] + shift;
+		}
+		pool.append(from.pool, from.starts[first], from.ends[first + count - 1]);
+
+		growBlocks();
+		blockStarts[blockCount] = itemCount;
+		blockWidths[blockCount] = from.blockWidths[b];
+		blockCategories[blockCount] = from.blockCategories[b];
+		blockCount++;
+		itemCount += count;
+		openStart = itemCount;
+		openControl = false;
+		if(Arrays.equals(limits, from.limits))
+			addLines(from.blockLines.get(b));
+		else
+			addLines(layoutBlock(blockCount - 1));
+	}
+
+	/**
+	 *	Prints the lines of the block just finished to the live sink and
+	 *	the copy, if there are any, then keeps the block if it retains or
+	 *	drops it with its items, which are then no longer needed.
+	 */
+	private void addLines(LineBox [] lines)
+	{
+		for(int k = 0; k < lines.length; k++)
+		{
+			if(live != null)
+				lines[k].emit(live);
+			if(copy != null)
+				lines[k].emit(copy);
+		}
+		if(retain)
+			blockLines.add(lines);
+		else
+		{
+			droppedBlocks += blockCount;
+			blockCount = 0;
+			blockLines.clear();
+			itemCount = 0;
+			openStart = 0;
+			pool.setLength(0);
+			flushAt = FLUSH_ITEMS;
+		}
+	}
+
+	/**
+	 *	@return				index after the last item of a finished block
+	 */
+	private int blockEnd(int b)
+	{
+		return b + 1 < blockCount ? blockStarts[b + 1] : openStart;
+	}
+
+	/**
+	 *	Makes room for at least the given number of items.
+	 */
+	private void growItems(int needed)
+	{
+		if(needed <= types.length)
+			return;
+		int newLength = Math.max(types.length * 2, needed);
+		types = Arrays.copyOf(types, newLength);
+		operations = Arrays.copyOf(operations, newLength);
+		starts = Arrays.copyOf(starts, newLength);
+		ends = Arrays.copyOf(ends, newLength);
+		categories = Arrays.copyOf(categories, newLength);
+		spaced = Arrays.copyOf(spaced, newLength);
+	}
+
+	/**
+	 *	Makes room for one more block.
+	 */
+	private void growBlocks()
+	{
+		if(blockCount < blockStarts.length)
+			return;
+		int newLength = blockStarts.length * 2;
+		blockStarts = Arrays.copyOf(blockStarts, newLength);
+		blockWidths = Arrays.copyOf(blockWidths, newLength);
+		blockCategories = Arrays.copyOf(blockCategories, newLength);
+	}
+
+	/**
+	 *	Checks if a block could wrap differently with the new limits.
+	 *	A block that fits on one line under both the old and new limit
+	 *	of a category lays out the same either way.
+	 *	@param b			index of the block
+	 *	@param oldLimits	the limits the block was laid out for
+	 *	@return				true if the block has to be laid out again
+	 */
+	private boolean isAffected(int b, int [] oldLimits)
+	{
+		for(int c = 0; c < limits.length; c++)
+		{
+			if((blockCategories[b] & (1 << c)) != 0 && limits[c] != oldLimits[c]
+			   && blockWidths[b] > Math.min(limits[c], oldLimits[c]))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 *	Splits the words of a block into lines. After each word, if the
+	 *	next word would go past the limit of the word's category, the line
+	 *	ends. The last line ends with the block's own new lines and rules.
+	 *	@param b			index of the block
+	 *	@return				the lines of the block
+	 */
+	private LineBox[] layoutBlock(int b)
+	{
+		int first = blockStarts[b];
+		int last = blockEnd(b);
+		if(last > first && types[last - 1] == END)
+			last--;
+		List<LineBox> lines = new ArrayList<LineBox>();
+		layoutItems(first, last, lines);
+		return lines.toArray(new LineBox[lines.size()]);
+	}
+
+	/**
+	 *	Splits a range of items into lines, as layoutBlock above.
+	 *	@param first		index of the first item
+	 *	@param last			index after the last item
+	 *	@param lines		the list the lines are added to
+	 *	@return				index of the first item of the last line
+	 */
+	private int layoutItems(int first, int last, List<LineBox> lines)
+	{
+		List<Integer> runOperations = new ArrayList<Integer>();
+		List<String> runTexts = new ArrayList<String>();
+		StringBuilder run = new StringBuilder();
+		int runOperation = -1;
+		int letCount = 0;		// letter count of the line
+		int lineStart = first;	// first item of the line
+
+		int k = first;
+		while(k < last && types[k] != CONTROL)
+		{
+			// Join text of the same style into one run
+			if(operations[k] != runOperation)
+			{
+				endRun(runOperation, run, runOperations, runTexts);
+				runOperation = operations[k];
+			}
+			run.append(pool, starts[k], ends[k]);
+			if(types[k] == WORD)
+			{
+				letCount += ends[k] - starts[k];
+				if(spaced[k])
+				{
+					run.append(' ');
+					letCount++;
+				}
+
+				// If the next word exceeds the limit, go to the next line
+				int next = nextWord(k + 1, last);
+				if(next != -1 && letCount + ends[next] - starts[next] > limits[categories[k]])
+				{
+					endRun(runOperation, run, runOperations, runTexts);
+					runOperation = -1;
+					lines.add(makeLine(runOperations, runTexts, new int[] { RenderSink.PRINTLN }));
+					letCount = 0;
+					lineStart = k + 1;
+				}
+			}
+			k++;
+		}
+		endRun(runOperation, run, runOperations, runTexts);
+
+		// The new lines and rules that end the block
+		int [] controls = new int[last - k];
+		for(int c = 0; c < controls.length; c++)
+			controls[c] = operations[k + c];
+		if(!runTexts.isEmpty() || controls.length > 0)
+			lines.add(makeLine(runOperations, runTexts, controls));
+		return lineStart;
+	}
+
+	/**
+	 *	@return				index of the next word before last, or -1
+	 */
+	private int nextWord(int from, int last)
+	{
+		for(int k = from; k < last; k++)
+		{
+			if(types[k] == WORD)
+				return k;
+			if(types[k] == CONTROL)
+				return -1;
+		}
+		return -1;
+	}
+
+	/**
+	 *	Adds the run to the lists of runs of the line, if it has any text.
+	 */
+	private void endRun(int runOperation, StringBuilder run, List<Integer> runOperations,
+						List<String> runTexts)
+	{
+		if(run.length() > 0)
+		{
+			runOperations.add(runOperation);
+			runTexts.add(run.toString());
+		}
+		run.setLength(0);
+	}
+
+	/**
+	 *	Makes a LineBox from the runs and empties the lists for the next line.
+	 */
+	private LineBox makeLine(List<Integer> runOperations, List<String> runTexts, int [] controls)
+	{
+		int [] ops = new int[runOperations.size()];
+		for(int r = 0; r < ops.length; r++)
+			ops[r] = runOperations.get(r);
+		LineBox line = new LineBox(ops, runTexts.toArray(new String[runTexts.size()]), controls);
+		runOperations.clear();
+		runTexts.clear();
+		return line;
+	}
+}
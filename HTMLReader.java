@@ -0,0 +1,464 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ *	HTMLReader
+ *	Reads the bytes of an HTML file through NIO and turns them into
+ *	characters in the charset the file says it is in. The charset is
+ *	picked the way browsers do before parsing: a byte order mark wins,
+ *	then a <meta charset="..."> or <meta http-equiv="Content-Type"
+ *	content="...; charset=..."> in the first PRESCAN_SIZE bytes, then
+ *	the charset the reader was given.
+ *
+ *	In charsets where ASCII bytes are always ASCII characters, like
+ *	UTF-8, ISO-8859-* and windows-125*, runs of ASCII bytes are copied
+ *	straight into characters, and only the runs of other bytes go
+ *	through a CharsetDecoder. Most HTML is mostly markup, so most bytes
+ *	never reach the decoder. Other charsets are decoded the usual way.
+ *	Bytes that are not valid in the charset become U+FFFD.
+ *
+ *	A file opened with open is recorded with RenderMetrics when the
+ *	reader is closed, with the bytes read from it and the time spent in
+ *	read, the same way FileUtils.mapToRead records a file it maps.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class HTMLReader extends Reader {
+
+	// how many bytes at the start are searched for a meta charset
+	public static final int PRESCAN_SIZE = 1024;
+
+	// the number of bytes and characters held at a time
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// the room left for characters when decoding stops, enough for the
+	// replacements of the bytes of a character cut off at the end
+	private static final int MIN_ROOM = 8;
+
+	private final ReadableByteChannel channel;	// where the bytes come from, or null
+	private final ByteBuffer bytes;		// bytes read and not yet decoded
+	private final CharBuffer chars;		// characters decoded and not yet read
+	private final Charset charset;		// the charset of the input
+	private final CharsetDecoder decoder;	// for the bytes that are not ASCII
+	private final boolean asciiRuns;	// true if ASCII bytes can skip the decoder
+	private boolean endOfInput;			// true once every byte has been read
+	private boolean done;				// true once every byte has been decoded
+	private long byteCount;				// number of bytes read from the channel
+	private long readNanos;				// time spent reading and decoding
+	private RenderMetrics.ReadEvent event;	// the read to record on close, or null
+	private String fileName;			// the file being read, or null
+
+	/**
+	 *	Reads from a channel, sniffing its charset from the first bytes.
+	 *	@param channelIn	the bytes of the HTML
+	 *	@param fallback		the charset if the bytes do not say
+	 *	@throws IOException	if the first bytes cannot be read
+	 */
+	public HTMLReader(ReadableByteChannel channelIn, Charset fallback) throws IOException
+	{
+		channel = channelIn;
+		bytes = ByteBuffer.allocate(BUFFER_SIZE);
+		endOfInput = false;
+		while(bytes.position() < PRESCAN_SIZE && !endOfInput)
+			readMore();
+		bytes.flip();
+
+		charset = sniff(bytes, fallback);
+		bytes.position(bomEnd(bytes, charset));
+		chars = CharBuffer.allocate(BUFFER_SIZE);
+		chars.flip();
+		decoder = newDecoder(charset);
+		asciiRuns = isAsciiCompatible(charset);
+		done = false;
+	}
+
+	/**
+	 *	Reads bytes that are already in memory, such as a mapped file,
+	 *	in the given charset. A byte order mark of the charset is skipped.
+	 *	@param bytesIn		the bytes of the HTML, from position to limit
+	 *	@param charsetIn	the charset of the bytes
+	 */
+	public HTMLReader(ByteBuffer bytesIn, Charset charsetIn)
+	{
+		channel = null;
+		bytes = bytesIn.slice();
+		endOfInput = true;
+		charset = charsetIn;
+		bytes.position(bomEnd(bytes, charset));
+		chars = CharBuffer.allocate(BUFFER_SIZE);
+		chars.flip();
+		decoder = newDecoder(charset);
+		asciiRuns = isAsciiCompatible(charset);
+		done = false;
+	}
+
+	/**
+	 *	Opens a file to read, sniffing its charset and falling back to
+	 *	the default charset.
+	 *	@param file			the HTML file
+	 *	@return				the reader
+	 *	@throws IOException	if the file cannot be opened or read
+	 */
+	public static HTMLReader open(Path file) throws IOException
+	{
+		RenderMetrics.ReadEvent event = RenderMetrics.beginRead();
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try
+		{
+			HTMLReader reader = new HTMLReader(channel, Charset.defaultCharset());
+			reader.event = event;
+			reader.fileName = file.toString();
+			return reader;
+		}
+		catch(IOException | RuntimeException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 *	Decodes all the bytes in a buffer, copying ASCII runs and only
+	 *	decoding the rest.
+	 *	@param bytesIn		the bytes, from position to limit
+	 *	@param charsetIn	the charset of the bytes
+	 *	@return				the characters, from 0 to limit
+	 */
+	public static CharBuffer decode(ByteBuffer bytesIn, Charset charsetIn)
+	{
+		HTMLReader reader = new HTMLReader(bytesIn, charsetIn);
+		CharBuffer text = CharBuffer.allocate(Math.max(reader.bytes.remaining(), 16));
+		try
+		{
+			while(reader.fill())
+			{
+				if(text.remaining() < reader.chars.remaining())
+				{
+					CharBuffer bigger = CharBuffer.allocate(Math.max(text.capacity() * 2,
+														text.position() + reader.chars.remaining()));
+					text.flip();
+					bigger.put(text);
+					text = bigger;
+				}
+				text.put(reader.chars);
+			}
+		}
+		catch(IOException e)
+		{
+			// Only reading from a channel throws, and there is none
+			throw new IllegalStateException(e);
+		}
+		text.flip();
+		return text;
+	}
+
+	/**
+	 *	Picks the charset of HTML from its first bytes: a byte order mark,
+	 *	then a meta charset in the first PRESCAN_SIZE bytes.
+	 *	@param head			the first bytes, from position to limit, which
+	 *						are not moved
+	 *	@param fallback		the charset if the bytes do not say
+	 *	@return				the charset
+	 */
+	public static Charset sniff(ByteBuffer head, Charset fallback)
+	{
+		int p = head.position();
+		int n = Math.min(head.remaining(), PRESCAN_SIZE);
+		if(n >= 3 && (head.get(p) & 0xff) == 0xEF && (head.get(p + 1) & 0xff) == 0xBB
+		   && (head.get(p + 2) & 0xff) == 0xBF)
+			return StandardCharsets.UTF_8;
+		if(n >= 2 && (head.get(p) & 0xff) == 0xFE && (head.get(p + 1) & 0xff) == 0xFF)
+			return StandardCharsets.UTF_16BE;
+		if(n >= 2 && (head.get(p) & 0xff) == 0xFF && (head.get(p + 1) & 0xff) == 0xFE)
+			return StandardCharsets.UTF_16LE;
+
+		Charset declared = metaCharset(head, p, p + n);
+		return declared != null ? declared : fallback;
+	}
+
+	/**
+	 *	Looks for a charset in the meta tags between two indexes. The
+	 *	bytes are read as ASCII, as a meta tag has to be for it to be
+	 *	found before the charset is known.
+	 *	@return				the charset, or null if there is none or it is
+	 *						not supported
+	 */
+	private static Charset metaCharset(ByteBuffer head, int from, int to)
+	{
+		for(int k = from; k + 5 < to; k++)
+		{
+			if(head.get(k) != '<' || !matches(head, k + 1, to, "meta"))
+				continue;
+
+			// Look for "charset" inside the tag, in either of its forms
+			int tagEnd = k + 5;
+			while(tagEnd < to && head.get(tagEnd) != '>')
+				tagEnd++;
+			for(int c = k + 5; c + 7 <= tagEnd; c++)
+			{
+				if(!matches(head, c, tagEnd, "charset"))
+					continue;
+				int v = c + 7;
+				while(v < tagEnd && head.get(v) == ' ')
+					v++;
+				if(v == tagEnd || head.get(v) != '=')
+					continue;
+				v++;
+				while(v < tagEnd && (head.get(v) == ' ' || head.get(v) == '"' || head.get(v) == '\''))
+					v++;
+				int nameEnd = v;
+				while(nameEnd < tagEnd && isCharsetNameChar(head.get(nameEnd)))
+					nameEnd++;
+				if(nameEnd == v)
+					continue;
+
+				StringBuilder name = new StringBuilder(nameEnd - v);
+				for(int b = v; b < nameEnd; b++)
+					name.append((char)head.get(b));
+				try
+				{
+					Charset declared = Charset.forName(name.toString());
+
+					// A page that can say so in ASCII is not really UTF-16
+					if(declared.name().startsWith("UTF-16"))
+						return StandardCharsets.UTF_8;
+					return declared;
+				}
+				catch(IllegalArgumentException e)
+				{
+					// Not a charset Java knows, keep looking
+				}
+			}
+			k = tagEnd;
+		}
+		return null;
+	}
+
+	/**
+	 *	@return				true if the bytes at k spell the lower case word,
+	 *						ignoring the case of the bytes
+	 */
+	private static boolean matches(ByteBuffer head, int k, int to, String word)
+	{
+		if(k + word.length() > to)
+			return false;
+		for(int i = 0; i < word.length(); i++)
+		{
+			if((head.get(k + i) | 0x20) != word.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 *	@return				true if the byte can be part of a charset name
+	 */
+	private static boolean isCharsetNameChar(byte b)
+	{
+		return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+			   || b == '-' || b == '_' || b == '.' || b == ':';
+	}
+
+	/**
+	 *	@return				the index after the byte order mark of the
+	 *						charset at the position of the bytes, or the
+	 *						position if there is none
+	 */
+	private static int bomEnd(ByteBuffer head, Charset charsetIn)
+	{
+		int p = head.position();
+		int n = head.remaining();
+		if(charsetIn.equals(StandardCharsets.UTF_8) && n >= 3 && (head.get(p) & 0xff) == 0xEF
+		   && (head.get(p + 1) & 0xff) == 0xBB && (head.get(p + 2) & 0xff) == 0xBF)
+			return p + 3;
+		if(charsetIn.equals(StandardCharsets.UTF_16BE) && n >= 2 && (head.get(p) & 0xff) == 0xFE
+		   && (head.get(p + 1) & 0xff) == 0xFF)
+			return p + 2;
+		if(charsetIn.equals(StandardCharsets.UTF_16LE) && n >= 2 && (head.get(p) & 0xff) == 0xFF
+		   && (head.get(p + 1) & 0xff) == 0xFE)
+			return p + 2;
+		return p;
+	}
+
+	/**
+	 *	Checks if ASCII bytes are always the same characters in the
+	 *	charset, and are never part of another character.
+	 *	@param charsetIn	the charset to check
+	 *	@return				true if ASCII runs can skip the decoder
+	 */
+	static boolean isAsciiCompatible(Charset charsetIn)
+	{
+		return charsetIn.equals(StandardCharsets.US_ASCII)
+			   || charsetIn.equals(StandardCharsets.UTF_8)
+			   || charsetIn.name().startsWith("ISO-8859-")
+			   || charsetIn.name().startsWith("windows-125");
+	}
+
+	/**
+	 *	@return				a decoder for the charset that replaces bad bytes
+	 */
+	private static CharsetDecoder newDecoder(Charset charsetIn)
+	{
+		return charsetIn.newDecoder()
+						.onMalformedInput(CodingErrorAction.REPLACE)
+						.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 *	@return				the charset the input is read in
+	 */
+	public Charset getCharset()
+	{
+		return charset;
+	}
+
+	/**
+	 *	Reads characters into part of an array, decoding more bytes when
+	 *	the characters held run out.
+	 *	@return				the number of characters read, or -1 at the end
+	 */
+	public int read(char [] cbuf, int off, int len) throws IOException
+	{
+		if(len == 0)
+			return 0;
+		if(!chars.hasRemaining())
+		{
+			long start = System.nanoTime();
+			boolean filled = fill();
+			readNanos += System.nanoTime() - start;
+			if(!filled)
+				return -1;
+		}
+		int count = Math.min(len, chars.remaining());
+		chars.get(cbuf, off, count);
+		return count;
+	}
+
+	/**
+	 *	Decodes the next characters into chars, reading bytes as needed.
+	 *	@return				true if there are characters to read
+	 */
+	private boolean fill() throws IOException
+	{
+		chars.clear();
+		while(!done && chars.remaining() > MIN_ROOM)
+		{
+			int before = bytes.position();
+			convert();
+			if(chars.remaining() <= MIN_ROOM)
+				break;
+
+			// Out of bytes, or only part of a character is left
+			if(bytes.position() == before || !bytes.hasRemaining())
+			{
+				if(endOfInput)
+				{
+					decoder.decode(bytes, chars, true);
+					decoder.flush(chars);
+					done = true;
+				}
+				else
+					readBytes();
+			}
+		}
+		chars.flip();
+		return chars.hasRemaining();
+	}
+
+	/**
+	 *	Turns as many of the bytes held into characters as there is room
+	 *	for. ASCII runs are copied, each run of other bytes is decoded up
+	 *	to and with the ASCII byte after it, so a character cut off by an
+	 *	ASCII byte is replaced instead of waiting for more bytes.
+	 */
+	private void convert()
+	{
+		if(!asciiRuns)
+		{
+			decoder.decode(bytes, chars, false);
+			return;
+		}
+
+		char [] out = chars.array();
+		int limit = bytes.limit();
+		int room = chars.limit();
+		int p = bytes.position();
+		int q = chars.position();
+		while(p < limit && q < room)
+		{
+			byte b = bytes.get(p);
+			if(b >= 0)
+			{
+				out[q++] = (char)b;
+				p++;
+				continue;
+			}
+
+			int runEnd = p + 1;
+			while(runEnd < limit && bytes.get(runEnd) < 0)
+				runEnd++;
+			bytes.position(p);
+			chars.position(q);
+			bytes.limit(runEnd < limit ? runEnd + 1 : limit);
+			decoder.decode(bytes, chars, false);
+			bytes.limit(limit);
+
+			// Stuck on part of a character at the end, or out of room
+			if(bytes.position() == p)
+				break;
+			p = bytes.position();
+			q = chars.position();
+		}
+		bytes.position(p);
+		chars.position(q);
+	}
+
+	/**
+	 *	Moves the bytes not yet decoded to the front and reads more after
+	 *	them.
+	 */
+	private void readBytes() throws IOException
+	{
+		bytes.compact();
+		readMore();
+		bytes.flip();
+	}
+
+	/**
+	 *	Reads bytes from the channel into the free part of bytes.
+	 */
+	private void readMore() throws IOException
+	{
+		int count = channel.read(bytes);
+		if(count == -1)
+			endOfInput = true;
+		else
+			byteCount += count;
+	}
+
+	/**
+	 *	Closes the channel, and records the read of a file opened with
+	 *	open the first time.
+	 */
+	public void close() throws IOException
+	{
+		if(channel != null)
+			channel.close();
+		if(event != null)
+		{
+			RenderMetrics.endRead(event, fileName, byteCount, readNanos);
+			event = null;
+		}
+	}
+}
@@ -1,16 +1,49 @@
-import java.util.Scanner;
+import java.awt.Window;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import javax.swing.SwingUtilities;
 /**
  *	HTMLRender
  *	This program renders HTML code into a JFrame window.
  *	It requires your HTMLUtilities class and
  *	the SimpleHtmlRenderer and HtmlPrinter classes.
+ *	With -text or -ansi it writes the rendered text to the console
+ *	instead, and with -null it only counts the print calls. With
+ *	-trace it also writes every token to a file, or to the console for
+ *	"-", as lines of JSON (see TokenTrace). With -cache the rendered
+ *	lines are kept in a folder, and a file that has not changed is
+ *	printed from them the next time (see RenderCache). With -record the
+ *	output is also written to a file as a DisplayList, and -replay
+ *	prints such a file in place of an HTML file. With -page the file
+ *	is laid out first and shown a page of that many lines at a time,
+ *	scrolled by commands typed into the console (see PagedDocument).
+ *	With -parallel a file small enough to map is tokenized on every
+ *	core (see ParallelTokenizer). With -pipeline the file is read and
+ *	tokenized on a thread of its own and printed on the Swing event
+ *	thread as it is rendered, and the time to first paint is printed
+ *	when it is done (see RenderPipeline); it cannot be used with the
+ *	options that trace, cache, record, page or tokenize in parallel.
+ *	Run with -Dhtmlrender.metrics=true to print RenderMetrics when it
+ *	is done.
  *
  *	The tags supported:
  *		<html>, </html> - start/end of the HTML file
  *		<body>, </body> - start/end of the HTML code
  *		<p>, </p> - Start/end of a paragraph.
  *					Causes a newline before and a blank line after. Lines are restricted
- *					to 80 characters maximum.
+ *					to 80 characters maximum. A <p>, <hX> or <pre> ends an open
+ *					paragraph as if </p> came first.
  *		<hr>	- Creates a horizontal rule on the following line.
  *		<br>	- newline (break)
  *		<b>, </b> - Start/end of bold font print
@@ -24,611 +57,1017 @@ import java.util.Scanner;
  */
 public class HTMLRender {
 	
-	// the array holding all the tokens of the HTML file
-	private String [] tokens;
-	private final int TOKENS_SIZE = 10000;	// size of array
+	// the buffer holding the tokens of the current line, reused each line
+	private TokenBuffer tokens;
 	
-	// SimpleHtmlRenderer fields
-	private SimpleHtmlRenderer render;
-	private HtmlPrinter browser;
+	// where the output is printed, the SimpleHtmlRenderer window by default,
+	// with runs of text in the same style joined into one call
+	private CoalescingRenderSink browser;
 	private HTMLUtilities util;			// HTMLUtilities used in tester
 	
+	// wraps the styled words into lines, prints them and keeps them
+	private HTMLLayout layout;
 	
-	// NONE = not nested in a block, PARAGRAPH = inside a paragraph block,
-	// BOLD = inside a bold block, ITALIC = inside an italic block,
-	// QUOTE = inside a quote block, PREFORMAT = inside a pre-format block, 
-	// HEAD1-6 = inside a heading block (from 1-6)
-	private enum TokenState { NONE, PARAGRAPH, BOLD, ITALIC, QUOTE, PREFORMAT, HEAD1,HEAD2, HEAD3, HEAD4, HEAD5, HEAD6};
+	// where the tokens are written as they are rendered, null if not tracing
+	private TokenTrace trace;
+	
+	// where rendered files are kept to be replayed, null if not caching
+	private RenderCache cache;
+	
+	// where the output of each file is recorded, null if not recording
+	private DisplayList recording;
+	
+	// tokenizes mapped files on every core, null to tokenize on this thread
+	private ParallelTokenizer parallel;
+	
+	private static final String USAGE = 
+			"Usage: java HTMLRender [-text | -ansi | -null] [-trace <file | ->] "
+			+ "[-cache <folder>] [-record <file>] [-parallel] [-page <lines> | -pipeline] "
+			+ "<htmlFileName | -replay <file>>";
+	
+	private static final String PAGE_HELP =
+			"Enter: next page, p: previous page, <line>: go to line, q: quit";
+	
+	
+	// Bits of the inline style, combined when tags are nested
+	private static final int STYLE_BOLD = 1;	// inside <b>
+	private static final int STYLE_ITALIC = 2;	// inside <i>
+	private static final int STYLE_QUOTE = 4;	// inside <q>
 
-	// the current tokenizer state
-	private TokenState state; 
+	// the most elements that can be open at once, deeper tags are ignored
+	private static final int MAX_DEPTH = 256;
 
-	private int letCount;         // letter count of the line
-		
-	private String [] stateStack; // keep track of nested states
+	private int [] openTags;      // TagTable IDs of the open elements
+	private int [] savedStyles;   // the style before each open element
+	private int [] savedBlocks;   // the block before each open element
+	private int depth;            // number of open elements
+	private int overflow;         // number of open elements ignored as too deep
 	
-	private int stateCount;       // index of the state stack array
+	private int style;            // STYLE bits of the open inline elements
+	private int block;            // innermost open P, H1-H6 or PRE, or UNKNOWN
+	
+	// the character of the entity being printed, reused for each one
+	private StringBuilder entityText;
+	
+	// The last word of the tokens rendered so far is held back until the
+	// token after it is seen, as that decides if a space follows it, so
+	// where the tokens were split into chunks does not change the output
+	private StringBuilder pendingText;	// its text, or the character of an entity
+	private int pendingKind;			// its TokenBuffer kind, -1 if no word is held
+	private int pendingOperation;		// the RenderSink operation of its style
+	private int pendingCategory;		// its HTMLLayout limit category
+	private boolean pendingQuoted;		// true if it is inside a <q>
+	private long pendingEnd;			// where it ends in the input, -1 after a line break
 	
 	
 	public HTMLRender() {
-		// Initialize token array
-		tokens = new String[TOKENS_SIZE];
+		// Initialize Simple Browser
+		this(new HtmlPrinterSink(new SimpleHtmlRenderer().getHtmlPrinter()));
+	}
+	
+	/**
+	 *	Creates a renderer that prints into the given sink.
+	 *	@param sink		where the output is printed
+	 */
+	public HTMLRender(RenderSink sink) {
+		// Initialize token buffer
+		tokens = new TokenBuffer();
 		
 		// Initialize util
 		util = new HTMLUtilities();
 
-		// Initialize Simple Browser
-		render = new SimpleHtmlRenderer();
-		browser = render.getHtmlPrinter();
+		browser = new CoalescingRenderSink(RenderMetrics.meter(sink));
+		layout = new HTMLLayout(browser);
+		trace = null;
+		cache = null;
+		recording = null;
+		parallel = null;
 		
-		//Initialize counts, arrays, and states
-		letCount = 0;
-		state = state.NONE;		
-		stateStack = new String[10000];
-		stateCount = 0;
+		//Initialize arrays and states
+		openTags = new int[MAX_DEPTH];
+		savedStyles = new int[MAX_DEPTH];
+		savedBlocks = new int[MAX_DEPTH];
+		depth = 0;
+		overflow = 0;
+		style = 0;
+		block = TagTable.UNKNOWN;
+		entityText = new StringBuilder(2);
+		pendingText = new StringBuilder();
+		pendingKind = -1;
+		pendingEnd = -1;
 	}
 	
 	
 	public static void main(String[] args) {
-		HTMLRender hf = new HTMLRender();
-		hf.run(args);
+		RenderSink sink = null;
+		CountingRenderSink counter = null;
+		TokenTrace trace = null;
+		RenderCache cache = null;
+		String recordFile = null;
+		String replayFile = null;
+		int pageLines = 0;
+		boolean pipeline = false;
+		boolean parallel = false;
+		
+		// Options before the file name pick a headless sink or a trace
+		int arg = 0;
+		while (arg < args.length && args[arg].startsWith("-")) {
+			if (args[arg].equals("-text") || args[arg].equals("-ansi"))
+				sink = new TextRenderSink(new FileOutputStream(FileDescriptor.out).getChannel(),
+										  args[arg].equals("-ansi"));
+			else if (args[arg].equals("-null"))
+				sink = counter = new CountingRenderSink();
+			else if (args[arg].equals("-trace") && arg + 1 < args.length) {
+				arg++;
+				try {
+					trace = TokenTrace.open(args[arg]);
+				}
+				catch (IOException e) {
+					System.err.println("ERROR: Cannot open " + args[arg] + " for writing.");
+					System.exit(73);
+				}
+			}
+			else if (args[arg].equals("-cache") && arg + 1 < args.length) {
+				arg++;
+				try {
+					cache = new RenderCache(Paths.get(args[arg]));
+				}
+				catch (IOException e) {
+					System.err.println("ERROR: Cannot make the cache folder " + args[arg]);
+					System.exit(73);
+				}
+			}
+			else if (args[arg].equals("-record") && arg + 1 < args.length)
+				recordFile = args[++arg];
+			else if (args[arg].equals("-replay") && arg + 1 < args.length)
+				replayFile = args[++arg];
+			else if (args[arg].equals("-page") && arg + 1 < args.length
+					 && args[arg + 1].matches("[0-9]{1,9}") && Integer.parseInt(args[arg + 1]) > 0)
+				pageLines = Integer.parseInt(args[++arg]);
+			else if (args[arg].equals("-pipeline"))
+				pipeline = true;
+			else if (args[arg].equals("-parallel"))
+				parallel = true;
+			else {
+				System.out.println(USAGE);
+				System.exit(0);
+			}
+			arg++;
+		}
+		
+		// The pipeline tokenizes on its own reader thread and prints as it
+		// goes, so it does not trace, cache, record, replay, page or tokenize
+		// in parallel; asking for any of them with it is a usage error
+		if (pipeline && (parallel || pageLines > 0 || trace != null || cache != null
+						 || recordFile != null || replayFile != null)) {
+			System.out.println(USAGE);
+			System.exit(0);
+		}
+		
+		if (pipeline) {
+			runPipeline(sink != null ? sink
+							: new HtmlPrinterSink(new SimpleHtmlRenderer().getHtmlPrinter()),
+						Arrays.copyOfRange(args, arg, args.length));
+			if (counter != null)
+				System.out.println(counter);
+			if (RenderMetrics.ENABLED)
+				System.err.println(RenderMetrics.snapshot());
+			return;
+		}
+		
+		// When paging, each window is printed into a sink of its own and
+		// the layout prints nothing as it is built
+		Supplier<RenderSink> windows = null;
+		if (pageLines > 0 && replayFile == null) {
+			RenderSink headless = sink;
+			windows = headless != null ? () -> headless : pageWindows();
+			if (sink == null)
+				sink = new CountingRenderSink();
+		}
+		
+		HTMLRender hf = sink != null ? new HTMLRender(sink) : new HTMLRender();
+		hf.setTrace(trace);
+		if (parallel)
+			hf.setParallelTokenizer(new ParallelTokenizer());
+		if (recordFile != null)
+			hf.setRecording(new DisplayList());
+		if (windows != null) {
+			// No cache, as a cached file is replayed without being laid out
+			hf.setLayout(new HTMLLayout(null));
+			hf.run(Arrays.copyOfRange(args, arg, args.length));
+			browse(new PagedDocument(hf.getLayout(), pageLines, PagedDocument.DEFAULT_MARGIN,
+									 windows));
+		}
+		else if (replayFile == null) {
+			hf.setRenderCache(cache);
+			hf.run(Arrays.copyOfRange(args, arg, args.length));
+		}
+		else {
+			try {
+				hf.replay(DisplayList.readFrom(Paths.get(replayFile)));
+			}
+			catch (IOException e) {
+				System.err.println("ERROR: Cannot read " + replayFile);
+				System.exit(74);
+			}
+		}
+		if (recordFile != null) {
+			try {
+				hf.recording.writeTo(Paths.get(recordFile));
+			}
+			catch (IOException e) {
+				System.err.println("ERROR: Cannot write " + recordFile);
+				System.exit(74);
+			}
+		}
+		if (trace != null) {
+			try {
+				trace.close();
+			}
+			catch (IOException e) {
+				System.err.println("ERROR: Cannot write the trace");
+				System.exit(74);
+			}
+		}
+		if (counter != null) {
+			System.out.println(hf.getCoalescingStats());
+			System.out.println(counter);
+			if (cache != null)
+				System.out.println(cache);
+		}
+		if (RenderMetrics.ENABLED)
+			System.err.println(RenderMetrics.snapshot());
+	}
+	
+	/**
+	 *	Renders a file through a RenderPipeline and prints how long the
+	 *	first screen took to System.err, so it does not mix with text
+	 *	printed to the console.
+	 *	@param sink			where the output is printed
+	 *	@param args			the file name
+	 */
+	private static void runPipeline(RenderSink sink, String [] args) {
+		if (args.length == 0) {
+			System.out.println(USAGE);
+			System.exit(0);
+		}
+		RenderPipeline pipeline = new RenderPipeline(sink);
+		try {
+			pipeline.render(args[0]);
+		}
+		catch (IOException e) {
+			System.err.println("ERROR: Cannot read " + args[0]);
+			System.exit(74);
+		}
+		catch (UncheckedIOException e) {
+			System.err.println("ERROR: Cannot write the output");
+			System.exit(74);
+		}
+		System.err.println(pipeline);
+	}
+	
+	/**
+	 *	Makes a sink factory for paging that opens a SimpleHtmlRenderer
+	 *	window for each new window of pages and closes the one before, as
+	 *	an HtmlPrinter cannot take back what it was given.
+	 *	@return				the sink factory
+	 */
+	private static Supplier<RenderSink> pageWindows() {
+		List<Window> open = new ArrayList<Window>();	// the windows of the pages shown
+		return () -> {
+			List<Window> before = Arrays.asList(Window.getWindows());
+			RenderSink window = new HtmlPrinterSink(new SimpleHtmlRenderer().getHtmlPrinter());
+			
+			// Closed after the new window opens, so the screen is never empty
+			for (Window old : open)
+				SwingUtilities.invokeLater(old::dispose);
+			open.clear();
+			for (Window opened : Window.getWindows()) {
+				if (!before.contains(opened))
+					open.add(opened);
+			}
+			return window;
+		};
+	}
+	
+	/**
+	 *	Shows a paged document from its first line, then scrolls it by
+	 *	the commands typed into the console until "q" or the end of the
+	 *	input. Where it is goes to System.err, so it does not mix with
+	 *	text printed to the console: the lines scrolled to after each
+	 *	command, or that the start or end was already reached if it did
+	 *	not move.
+	 *	@param pages		the paged document
+	 */
+	private static void browse(PagedDocument pages) {
+		BufferedReader commands = new BufferedReader(new InputStreamReader(System.in));
+		pages.scrollTo(0);
+		System.err.println(PAGE_HELP);
+		if (pages.getLineCount() == 0) {
+			System.err.println("[empty document]");
+			return;
+		}
+		printPosition(pages);
+		try {
+			String command;
+			while ((command = commands.readLine()) != null) {
+				command = command.trim();
+				if (command.equals("q"))
+					break;
+				int topLine = pages.getTopLine();
+				if (command.matches("[0-9]{1,9}"))
+					pages.scrollTo(Integer.parseInt(command) - 1);
+				else if (command.isEmpty() || command.equals("n")) {
+					pages.scrollBy(pages.getPageLines());
+					if (pages.getTopLine() == topLine) {
+						System.err.println("[end of document]");
+						continue;
+					}
+				}
+				else if (command.equals("p")) {
+					pages.scrollBy(-pages.getPageLines());
+					if (pages.getTopLine() == topLine) {
+						System.err.println("[start of document]");
+						continue;
+					}
+				}
+				else {
+					System.err.println(PAGE_HELP);
+					continue;
+				}
+				printPosition(pages);
+			}
+		}
+		catch (IOException e) {
+			// The console was closed, which ends it like "q"
+		}
+		if (RenderMetrics.ENABLED)
+			System.err.println(pages);
+	}
+	
+	/**
+	 *	Prints the line scrolled to and if the last page is shown.
+	 *	@param pages		the paged document
+	 */
+	private static void printPosition(PagedDocument pages) {
+		int topLine = pages.getTopLine();
+		System.err.println("[lines " + (topLine + 1) + " of " + pages.getLineCount()
+						   + (topLine / pages.getPageLines() == pages.getPageCount() - 1
+							  ? ", end of document]" : "]"));
 	}
 	
 	public void run(String [] args) {
-		Scanner input = null;
 		String fileName = "";
 		// if the command line contains the file name, then store it
 		if (args.length > 0)
 			fileName = args[0];
 		// otherwise print out usage message
 		else {
-			System.out.println("Usage: java HTMLTester <htmlFileName>");
+			System.out.println(USAGE);
 			System.exit(0);
 		}
 		
-		// Open the HTML file
-		input = FileUtils.openToRead(fileName);
+		try {
+			render(fileName);
+		}
+		catch (IOException e) {
+			System.err.println("ERROR: Cannot read " + fileName);
+			System.exit(74);
+		}
+		catch (UncheckedIOException e) {
+			System.err.println("ERROR: Cannot write the trace");
+			System.exit(74);
+		}
+	}
+	
+	/**
+	 *	Sets where the tokens are traced as they are rendered. Tracing is
+	 *	off unless a trace is set.
+	 *	@param traceIn		the trace to write the tokens to, or null for none
+	 */
+	public void setTrace(TokenTrace traceIn) {
+		trace = traceIn;
+	}
+	
+	/**
+	 *	Sets where rendered files are kept. A file that has not changed
+	 *	since it was stored is printed from its stored lines, without
+	 *	tokenizing or laying it out, so it is not added to the layout.
+	 *	Files are not cached while tracing, as the trace needs the tokens.
+	 *	@param cacheIn		the cache, or null for none
+	 */
+	public void setRenderCache(RenderCache cacheIn) {
+		cache = cacheIn;
+	}
+	
+	/**
+	 *	Sets the tokenizer that files small enough to map are tokenized
+	 *	with, a chunk per core. Larger files are still streamed through
+	 *	one thread.
+	 *	@param parallelIn	the tokenizer, or null to tokenize on this thread
+	 */
+	public void setParallelTokenizer(ParallelTokenizer parallelIn) {
+		parallel = parallelIn;
+	}
+	
+	/**
+	 *	Sets where the output of each file rendered is recorded, after
+	 *	the file is done. The list can be replayed later, or written to a
+	 *	file, to print the same output again without the HTML.
+	 *	@param recordingIn	the list to record into, or null for none
+	 */
+	public void setRecording(DisplayList recordingIn) {
+		recording = recordingIn;
+	}
+	
+	/**
+	 *	Prints a recorded display list into the sink and flushes it,
+	 *	without tokenizing or laying out anything. It is not added to the
+	 *	layout, but it is recorded if there is a recording.
+	 *	@param list			the display list
+	 */
+	public void replay(DisplayList list) {
+		list.replay(browser);
+		browser.flush();
+		if (recording != null) {
+			list.replay(recording);
+			recording.flush();
+		}
+	}
+	
+	/**
+	 *	Renders an HTML file into the sink and flushes it, writing the
+	 *	tokens to the trace if there is one. Unlike run, errors are thrown
+	 *	instead of ending the program, so many files can be rendered by
+	 *	one program.
+	 *	@param fileName		the HTML file
+	 *	@throws IOException	if the file cannot be read
+	 *	@throws UncheckedIOException	if the trace cannot be written
+	 */
+	public void render(String fileName) throws IOException {
+		// The key is taken before rendering, so a file changed while it
+		// is rendered is stored under its old contents
+		RenderCache.Key key = null;
+		if (cache != null && trace == null) {
+			key = cache.keyOf(Paths.get(fileName));
+			DisplayList list = cache.load(key);
+			if (list != null) {
+				replay(list);
+				return;
+			}
+		}
 		
-		// Read each line of the HTML file, tokenize, then print tokens
-		while (input.hasNext()) {
-			String line = input.nextLine();
-			System.out.println("\n" + line);
-			String [] tokens = util.tokenizeHTMLString(line);
-			util.printTokens(tokens);
-			renderTokens(tokens);
+		// The lines are recorded as each block is finished, as the layout
+		// does not keep them unless it retains its blocks
+		DisplayList list = null;
+		if (key != null)
+			list = new DisplayList();
+		else if (recording != null)
+			list = recording;
+		layout.setCopy(list);
+		try {
+			if (trace == null)
+				render(fileName, this::renderTokens);
+			else {
+				render(fileName, chunk -> {
+					trace.accept(chunk);
+					renderTokens(chunk);
+				});
+				trace.flush();
+			}
+		}
+		finally {
+			layout.setCopy(null);
+		}
+		if (list != null)
+			list.flush();
+		if (key != null) {
+			cache.store(key, list);
+			if (recording != null) {
+				list.replay(recording);
+				recording.flush();
+			}
 		}
-		input.close();
+	}
+	
+	/**
+	 *	Maps the HTML file into memory, tokenizes it a window at a time,
+	 *	then hands the tokens of each window to the handler. Files too
+	 *	large to map are streamed a chunk at a time instead. With a
+	 *	parallel tokenizer, a mapped file is tokenized a chunk per core;
+	 *	a streamed file is tokenized on one core, which is said on
+	 *	System.err so -parallel is not skipped silently.
+	 *	@param fileName		the HTML file
+	 *	@param handler		called with the tokens of each window
+	 *	@throws IOException	if the file cannot be read
+	 */
+	private void render(String fileName, Consumer<TokenBuffer> handler) throws IOException {
+		CharSequence document = FileUtils.mapToRead(fileName);
+		if (document != null && parallel != null)
+			parallel.tokenize(document, handler);
+		else if (document != null)
+			util.tokenizeDocument(document, tokens, handler);
+		else {
+			if (parallel != null)
+				System.err.println("-parallel skipped: " + fileName
+								   + " is too large to map or decode whole, so it is streamed");
+			try (Reader input = HTMLReader.open(Paths.get(fileName))) {
+				util.tokenizeStream(input, tokens, handler);
+			}
+		}
+		flush();
+	}
+	
+	/**
+	 *	Lays out and prints the last block, and sends any text still held
+	 *	in the current run to the sink. Blocks are printed as they end and
+	 *	text is passed on at each style change and line break, so this is
+	 *	only needed after the last tokens. The word held back from the
+	 *	last tokens is added first, with nothing after it.
+	 */
+	public void flush() {
+		renderPending();
+		layout.finish();
+		browser.flush();
+	}
+	
+	/**
+	 *	@return		the layout of everything rendered so far, which can be
+	 *				laid out again for other limits or replayed to a sink
+	 *				if it retains its blocks, as a layout set with
+	 *				setLayout with no live sink does
+	 */
+	public HTMLLayout getLayout() {
+		return layout;
+	}
+	
+	/**
+	 *	Points the renderer at another layout, so part of a document can
+	 *	be rendered again into a new layout.
+	 *	@param layoutIn		the layout the next tokens are added to
+	 */
+	void setLayout(HTMLLayout layoutIn) {
+		layout = layoutIn;
+	}
+
+	/**
+	 *	Saves the open elements, style and block and the word held back,
+	 *	which is everything the renderer carries from one line to the
+	 *	next. Two lines that start with equal states render the same.
+	 *	@return		the state, as the style, block, depth and overflow
+	 *				followed by the open tags and the saved styles and
+	 *				blocks, then
+	 *				the kind, operation, category, quote and end of the
+	 *				word held back and its characters
+	 */
+	int[] saveState() {
+		int base = 4 + depth * 3;
+		int length = pendingKind == -1 ? 0 : pendingText.length();
+		int [] state = new int[base + 6 + length];
+		state[0] = style;
+		state[1] = block;
+		state[2] = depth;
+		state[3] = overflow;
+		System.arraycopy(openTags, 0, state, 4, depth);
+		System.arraycopy(savedStyles, 0, state, 4 + depth, depth);
+		System.arraycopy(savedBlocks, 0, state, 4 + depth * 2, depth);
+		state[base] = pendingKind;
+		state[base + 1] = pendingOperation;
+		state[base + 2] = pendingCategory;
+		state[base + 3] = pendingQuoted ? 1 : 0;
+		state[base + 4] = (int)(pendingEnd >>> 32);
+		state[base + 5] = (int)pendingEnd;
+		for(int k = 0; k < length; k++)
+			state[base + 6 + k] = pendingText.charAt(k);
+		return state;
+	}
+
+	/**
+	 *	Puts back a state made by saveState.
+	 *	@param state	the saved state
+	 */
+	void restoreState(int [] state) {
+		style = state[0];
+		block = state[1];
+		depth = state[2];
+		overflow = state[3];
+		System.arraycopy(state, 4, openTags, 0, depth);
+		System.arraycopy(state, 4 + depth, savedStyles, 0, depth);
+		System.arraycopy(state, 4 + depth * 2, savedBlocks, 0, depth);
+		int base = 4 + depth * 3;
+		pendingKind = state[base];
+		pendingOperation = state[base + 1];
+		pendingCategory = state[base + 2];
+		pendingQuoted = state[base + 3] != 0;
+		pendingEnd = ((long)state[base + 4] << 32) | (state[base + 5] & 0xffffffffL);
+		pendingText.setLength(0);
+		for(int k = base + 6; k < state.length; k++)
+			pendingText.append((char)state[k]);
+	}
+
+	/**
+	 *	Tells the renderer that a line break comes before the next tokens,
+	 *	so the word held back does not touch them. Used when each buffer
+	 *	holds one line and its spans do not say where in the input it is.
+	 */
+	void lineBreak() {
+		pendingEnd = -1;
+	}
+
+	/**
+	 *	@return		how the text runs were joined, calls made and saved
+	 */
+	public String getCoalescingStats() {
+		return browser.toString();
 	}
 	
 	/**
 	 *	This method renders all the tokens created in HTMLUtilities onto
 	 *  a new window. It identifies each tag and prints out
 	 *  the according print style to the screen (with the nested regular
-	 *  text inside it). It does this line by line and keeps track of being
-	 *  in a tag or in nested tags even if they are on seperate lines.
+	 *  text inside it). It does this chunk by chunk and keeps track of being
+	 *  in a tag or in nested tags even if they are in seperate chunks.
+	 *	Each array is taken to be one line.
 	 *	@param tokensIn	  array of tokens in that line
 	 */
 	public void renderTokens(String [] tokensIn)
 	{
-		int i = 0;
-		// Loops through each token of the current line
-		while(i < tokensIn.length)
+		renderTokens(toTokenBuffer(tokensIn));
+		lineBreak();
+	}
+
+	/**
+	 *	Renders the tokens of a line straight from the tokenizer's buffer.
+	 *	Tags are dispatched on the TagTable ID the tokenizer found and the
+	 *	kind of each token is already known, so a String is only made for
+	 *	text that is printed. The last word is held back until the next
+	 *	tokens or flush, so the buffer's source offset has to say where
+	 *	its spans are in the input.
+	 *	@param tokensIn	  buffer of tokens in that line
+	 */
+	public void renderTokens(TokenBuffer tokensIn)
+	{
+		RenderMetrics.RenderEvent event = RenderMetrics.beginRender();
+		
+		// The word held back from the last tokens is spaced by the first of these
+		if(pendingKind != -1 && tokensIn.size() > 0)
+			renderPending(tokensIn.getKind(0), tokensIn.getTagId(0),
+						  tokensIn.getSourceOffset() + tokensIn.getStart(0));
+		
+		// Loops through each token of the current chunk
+		for(int i = 0; i < tokensIn.size(); i++)
 		{
-			switch(state)
+			int tag = tokensIn.getTagId(i);	// ID of the tag, UNKNOWN for text
+			switch(tag)
 			{
-				case NONE:
-					// Ignores html, body tag
-					if(!(tokensIn[i].equalsIgnoreCase("<html>")) && !(tokensIn[i].equalsIgnoreCase("</html>"))
-						&& !(tokensIn[i].equalsIgnoreCase("<body>")) && !(tokensIn[i].equalsIgnoreCase("</body>")))
-					{
-						// If the current token is a paragraph tag,
-						// enter the paragraph state
-						if(tokensIn[i].equalsIgnoreCase("<p>"))
-						{
-							state = state.PARAGRAPH;
-							browser.println();
-							browser.println();
-							letCount = 0;
-							stateStack[stateCount] = "PARAGRAPH";
-							stateCount++;
-						}
-						// If the current token is a preformat tag,
-						// enter the preformat state
-						else if(tokensIn[i].equalsIgnoreCase("<pre>"))
-						{
-							state = state.PREFORMAT;
-							browser.println();
-							browser.println();
-						}
-						// If the current token is one of the heading tags (1-6),
-						// enter the the corresponding heading state 
-						else if(tokensIn[i].equalsIgnoreCase("<h1>"))
-						{
-							state = state.HEAD1;
-							browser.println();
-							browser.println();
-							letCount = 0;
-						}
-						else if(tokensIn[i].equalsIgnoreCase("<h2>"))
-						{
-							state = state.HEAD2;
-							browser.println();
-							browser.println();
-							letCount = 0;
-						}
-						else if(tokensIn[i].equalsIgnoreCase("<h3>"))
-						{
-							state = state.HEAD3;
-							browser.println();
-							browser.println();
-							letCount = 0;
-						}
-						else if(tokensIn[i].equalsIgnoreCase("<h4>"))
-						{
-							state = state.HEAD4;
-							browser.println();
-							browser.println();
-							letCount = 0;
-						}
-						else if(tokensIn[i].equalsIgnoreCase("<h5>"))
-						{
-							state = state.HEAD5;
-							browser.println();
-							browser.println();
-							letCount = 0;
-						}
-						else if(tokensIn[i].equalsIgnoreCase("<h6>"))
-						{
-							state = state.HEAD6;
-							browser.println();
-							browser.println();
-							letCount = 0;
-						}
-						// If the current token is a quote tag,
-						// enter the quote state
-						else if(tokensIn[i].equalsIgnoreCase("<q>"))
-						{
-							state = state.QUOTE;
-							browser.print("\"");
-
-						}
-						// If the current token is a horizontal rule tag,
-						// print a horizontal rule
-						else if(tokensIn[i].equalsIgnoreCase("<hr>"))
-						{
-							   browser.printHorizontalRule();
-							   letCount = 0;
-						}
-						// If the current token is a line break tag,
-						// print out a line break
-						else if(tokensIn[i].equalsIgnoreCase("<br>"))
-						{
-							browser.printBreak();
-							letCount = 0;
-						}
-						// If the current token is a bold tag,
-						// enter the bold state
-						else if(tokensIn[i].equalsIgnoreCase("<b>"))
-						{
-							
-							 state = state.BOLD;
-						}
-						else if(tokensIn[i].equalsIgnoreCase("<i>"))
-						{		
-							  state = state.ITALIC;
-						}
-						else
-						
-						{
-							String value = tokensIn[i];
-							// If the word after isn't punctuation, then add a space after the word
-							if (!((i + 1 < tokensIn.length) && isPunctuation(tokensIn[i + 1]))) 
-							{
-								value += " ";
-								letCount++;
-							}
-								browser.print(value);
-								letCount = letCount + tokensIn[i].length();
-							// If the next word exceeds the 80 character limit, go to the next line;
-							if( i < tokensIn.length - 1 && letCount + tokensIn[i + 1].length() > 80 )
-							{
-								browser.println();
-								letCount = 0;
-							}
-							
-						}
-					}
-				break;
-				case PARAGRAPH:
-					// Once corresponding paragraph tag is found, 
-					// print out a blank line and the state returns to NONE
-					if(tokensIn[i].equalsIgnoreCase("</p>"))
-					{
-						stateStack[stateCount] = "PARAFOUND";
-						stateCount++;
-						browser.println();
-						browser.println();
-						letCount = 0;
-						state = state.NONE;
-					}
-					else
+				// Ignores html, body tag
+				case TagTable.HTML:
+				case TagTable.HTML | TagTable.CLOSE:
+				case TagTable.BODY:
+				case TagTable.BODY | TagTable.CLOSE:
+					break;
+				// Paragraphs and headings start after a blank line, and end
+				// an open paragraph as if it were closed first
+				case TagTable.P:
+				case TagTable.H1:
+				case TagTable.H2:
+				case TagTable.H3:
+				case TagTable.H4:
+				case TagTable.H5:
+				case TagTable.H6:
+					endParagraph();
+					layout.addControl(RenderSink.PRINTLN);
+					layout.addControl(RenderSink.PRINTLN);
+					openTag(tag);
+					break;
+				// Preformatted text starts after a blank line
+				case TagTable.PRE:
+					endParagraph();
+					layout.addControl(RenderSink.PRINTLN);
+					layout.addControl(RenderSink.PRINTLN);
+					openTag(tag);
+					break;
+				// Bold and italic change the style until they are closed
+				case TagTable.B:
+				case TagTable.I:
+					openTag(tag);
+					break;
+				// Quotes are printed inside quotation marks
+				case TagTable.Q:
+					layout.addText(RenderSink.PRINT, "\"");
+					openTag(tag);
+					break;
+				// A paragraph ends with a blank line
+				case TagTable.P | TagTable.CLOSE:
+					if(closeTag(TagTable.P))
 					{
-						// Ignores html, body tag
-						if(!(tokensIn[i].equalsIgnoreCase("<html>")) && !(tokensIn[i].equalsIgnoreCase("</html>"))
-							&& !(tokensIn[i].equalsIgnoreCase("<body>")) && !(tokensIn[i].equalsIgnoreCase("</body>")))
-						{
-							// If the current token is a horizontal rule tag,
-							// print a horizontal rule
-							if(tokensIn[i].equalsIgnoreCase("<hr>"))
-							{
-							   browser.printHorizontalRule();
-							}
-							// If the current token is a line break tag,
-							// print out a line break
-							else if(tokensIn[i].equalsIgnoreCase("<br>"))
-							{
-								browser.printBreak();
-								letCount = 0;
-							}
-							// If the current token is a bold tag,
-							// enter the bold state
-								else if(tokensIn[i].equalsIgnoreCase("<b>"))
-							{
-							   state = state.BOLD;
-							}
-							// If the current token is an italic tag,
-							// enter the italic state
-							else if(tokensIn[i].equalsIgnoreCase("<i>"))
-							{
-							   state = state.ITALIC;
-							}
-							else
-						
-							{
-								String value = tokensIn[i];
-								// If the word after isn't punctuation, then add a space after the word
-								if (!((i + 1 < tokensIn.length) && isPunctuation(tokensIn[i + 1]))) 
-								{
-									value += " ";
-									letCount++;
-								}
-								browser.print(value);
-								letCount = letCount + tokensIn[i].length();
-								// If the next word exceeds the 80 character limit, go to the next line;
-								if( i < tokensIn.length - 1 && letCount + tokensIn[i + 1].length() > 80 )
-								{
-									browser.println();
-									letCount = 0;
-								}
-							}
-						}
+						layout.addControl(RenderSink.PRINTLN);
+						layout.addControl(RenderSink.PRINTLN);
 					}
-				break;
-				case BOLD:
-					// Once corresponding bold tag is found
-					if(tokensIn[i].equalsIgnoreCase("</b>"))
-					{
-						//browser.print(tokensIn[i]);
-						boolean paragraph = true;
-						String states = "";
-						
-						//Checks if the end tag is nested
-						for(int k = 0; k < stateStack.length; k++)
-						{
-							if(stateStack[k] != null)
-							states += stateStack[k];				
-						}
-						if(states.lastIndexOf("PARAGRAPH") == -1)
-							paragraph = true;
-						else if(states.lastIndexOf("PARAGRAPH") > states.lastIndexOf("PARAFOUND"))
-							paragraph = false;
-							
-						if(!paragraph)
-							state = state.PARAGRAPH;
-						else
-							state = state.NONE;
-					}
-					else
-					{
-						// Ignores html, body tag
-						if(!(tokensIn[i].equalsIgnoreCase("<html>")) && !(tokensIn[i].equalsIgnoreCase("</html>"))
-							&& !(tokensIn[i].equalsIgnoreCase("<body>")) && !(tokensIn[i].equalsIgnoreCase("</body>")))
-						{
-							// If the current token is a horizontal rule tag,
-							// print a horizontal rule
-							if(tokensIn[i].equalsIgnoreCase("<hr>"))
-							{
-							   browser.printHorizontalRule();
-							}
-							// If the current token is a line break tag,
-							// print out a line break
-							else if(tokensIn[i].equalsIgnoreCase("<br>"))
-							{
-								browser.print("<br>");
-								browser.printBreak();
-								letCount = 0;
-							}
-							else
-						
-							{
-								String value = tokensIn[i];
-								// If the word after isn't punctuation, then add a space after the word
-								if (!((i + 1 < tokensIn.length) && isPunctuation(tokensIn[i + 1]))) 
-								{
-									value += " ";
-									letCount++;
-								}
-								browser.printBold(value);
-								letCount = letCount + tokensIn[i].length();
-								// If the next word exceeds the 80 character limit, go to the next line;
-								if( i < tokensIn.length - 1 && letCount + tokensIn[i + 1].length() > 80 )
-								{
-									browser.println();
-									letCount = 0;
-								}
-							}
-						}
-					}
-				break;
-				case ITALIC:
-				// Once corresponding italic tag is found
-				if(tokensIn[i].equalsIgnoreCase("</i>"))
-					{
-						//browser.print(tokensIn[i]);
-						boolean paragraph = true;
-						String states = "";
-						
-						//Checks if the end tag is nested
-						for(int k = 0; k < stateStack.length; k++)
-						{
-							if(stateStack[k] != null)
-							states += stateStack[k];				
-						}
-						if(states.lastIndexOf("PARAGRAPH") == -1)
-							paragraph = true;
-						else if(states.lastIndexOf("PARAGRAPH") > states.lastIndexOf("PARAFOUND"))
-							paragraph = false;	
-									
-						if(!paragraph)
-						state = state.PARAGRAPH;
-						else
-						state = state.NONE;
-					}
-					else
-					{
-						// Ignores html, body tag
-						if(!(tokensIn[i].equalsIgnoreCase("<html>")) && !(tokensIn[i].equalsIgnoreCase("</html>"))
-							&& !(tokensIn[i].equalsIgnoreCase("<body>")) && !(tokensIn[i].equalsIgnoreCase("</body>")))
-						{
-							// If the current token is a horizontal rule tag,
-							// print a horizontal rule
-							if(tokensIn[i].equalsIgnoreCase("<hr>"))
-							{
-							   browser.printHorizontalRule();
-							}
-							// If the current token is a line break tag,
-							// print out a line break
-							else if(tokensIn[i].equalsIgnoreCase("<br>"))
-							{
-								browser.printBreak();
-								letCount = 0;
-							}
-							else	
-							{
-								String value = tokensIn[i];
-								// If the word after isn't punctuation, then add a space after the word
-								if (!((i + 1 < tokensIn.length) && isPunctuation(tokensIn[i + 1]))) 
-								{
-									value += " ";
-									letCount++;
-								}
-								browser.printItalic(value);
-								letCount = letCount + tokensIn[i].length(); 
-								// If the next word exceeds the 80 character limit, go to the next line
-								if( i < tokensIn.length - 1 && letCount + tokensIn[i + 1].length() > 80 )
-								{
-									browser.println();
-									letCount = 0;
-								}
-							}
-						}
-					}
-				break;
-				case QUOTE:
-					// Once corresponding quote tag is found
-					if(tokensIn[i].equalsIgnoreCase("</q>"))
-					{
-						browser.print("\" ");	
-						state = state.NONE;
-					}
-					else
-					{
-						// Ignores html, body tag
-						if(!(tokensIn[i].equalsIgnoreCase("<html>")) && !(tokensIn[i].equalsIgnoreCase("</html>"))
-							&& !(tokensIn[i].equalsIgnoreCase("<body>")) && !(tokensIn[i].equalsIgnoreCase("</body>")))
-						{
-							// If the current token is a horizontal rule tag,
-							// print a horizontal rule
-							if(tokensIn[i].equalsIgnoreCase("<hr>"))
-							{
-							   browser.printHorizontalRule();
-							}
-							// If the current token is a line break tag,
-							// print out a line break
-							else if(tokensIn[i].equalsIgnoreCase("<br>"))
-							{
-								browser.printBreak();
-								letCount = 0;
-							}
-							else
-							{
-								String value = tokensIn[i];
-								// If the word after isn't punctuation, then add a space after the word
-								if (!((i + 1 < tokensIn.length) && isPunctuation(tokensIn[i + 1]))
-								    && !(tokensIn[i + 1].equalsIgnoreCase("</q>"))) 
-								{
-									value += " ";
-									letCount++;
-								}	
-								browser.print(value);
-								letCount = letCount + tokensIn[i].length();
-								// If the next word exceeds the 80 character limit, go to the next line
-								if( i < tokensIn.length - 1 && letCount + tokensIn[i + 1].length() > 80 )
-								{
-									browser.println();
-									letCount = 0;
-								}
-							}
-						}
-					}
-				break;
-				case PREFORMAT:
-					// Once corresponding preformat tag is found
-					if(tokensIn[i].equalsIgnoreCase("</pre>"))
-					{
-						state = state.NONE;
-					}
-					else
-					{
-						// Ignores html, body tag
-						if(!(tokensIn[i].equalsIgnoreCase("<html>")) && !(tokensIn[i].equalsIgnoreCase("</html>"))
-							&& !(tokensIn[i].equalsIgnoreCase("<body>")) && !(tokensIn[i].equalsIgnoreCase("</body>")))
-						{
-								String value = tokensIn[i];
-								browser.printPreformattedText(value);
-								letCount = letCount + tokensIn[i].length(); 
-								browser.println();
-								browser.println();
-								letCount = 0;
-							
-						}
-					}
-				break;
-				case HEAD1:
-					// Processes token render for heading one to six
-					processHeading("h1", tokensIn, i);
-				break;
-				case HEAD2:
-					// Processes token render for heading two
-					processHeading("h2", tokensIn, i);
-
-				break;
-				case HEAD3:
-					// Processes token render for heading three
-					processHeading("h3", tokensIn, i);
-
-				break;
-				case HEAD4:
-					// Processes token render for heading four
-					processHeading("h4", tokensIn, i);
-
-				break;
-				case HEAD5:
-					// Processes token render for heading five
-				    processHeading("h5", tokensIn, i);
-				break;
-				case HEAD6:
-					// Processes token render for heading six
-					processHeading("h6", tokensIn, i);
-				break;
+					break;
+				// A heading ends its block, the next words start a new line count
+				case TagTable.H1 | TagTable.CLOSE:
+				case TagTable.H2 | TagTable.CLOSE:
+				case TagTable.H3 | TagTable.CLOSE:
+				case TagTable.H4 | TagTable.CLOSE:
+				case TagTable.H5 | TagTable.CLOSE:
+				case TagTable.H6 | TagTable.CLOSE:
+					if(closeTag(tag & ~TagTable.CLOSE))
+						layout.endBlock();
+					break;
+				case TagTable.PRE | TagTable.CLOSE:
+				case TagTable.B | TagTable.CLOSE:
+				case TagTable.I | TagTable.CLOSE:
+					closeTag(tag & ~TagTable.CLOSE);
+					break;
+				case TagTable.Q | TagTable.CLOSE:
+					if(closeTag(TagTable.Q))
+						layout.addText(RenderSink.PRINT, "\" ");
+					break;
+				// If the current token is a horizontal rule tag,
+				// print a horizontal rule
+				case TagTable.HR:
+					layout.addControl(RenderSink.PRINT_HORIZONTAL_RULE);
+					break;
+				// If the current token is a line break tag,
+				// print out a line break
+				case TagTable.BR:
+					layout.addControl(RenderSink.PRINT_BREAK);
+					break;
+				default:
+					renderText(tokensIn, i);
 			}
-			i++;
 		}
+		RenderMetrics.endRender(event, tokensIn.size());
 	}
 	
 	/**
-	 *	Processes the output for the heading tags. When in the current
-	 *  heading state, words nested in the tags will be printed in the
-	 *  corresponding heading style. Spaces will put in between each
-	 *  token with the exception of punctuation. Word count is also kept
-	 *  track of to make sure a line does not exceed 80 characters. Once
-	 *  the corresponding ending heading tag is found, the word count is
-	 *  reset and the state returns to NONE.
-	 *	@param headingTag	the number of the type of heading tag
-	 *  @param tokensIn     the array of tokens in the current line
-	 *  @param i            current index of the tokensIn array
+	 *	Pushes an element onto the open element stack, saving the style
+	 *	and block so they come back when it is closed.
+	 *	@param tag			the TagTable ID of the element
 	 */
-	public void processHeading(String headingTag, String[] tokensIn, int i)
+	private void openTag(int tag)
 	{
-		int limit = lineLimit(headingTag);
-		// Once corresponding heading tag is found, state returns to NONE
-		if (tokensIn[i].equalsIgnoreCase("</" + headingTag + ">")) 
+		// Too deeply nested, the element is ignored until it is closed
+		if(depth == MAX_DEPTH)
 		{
-			state = state.NONE;
-			letCount = 0;
-		}
-        else 
-        {	
-			// Ignores html, body tag
-			if(!(tokensIn[i].equalsIgnoreCase("<html>")) && !(tokensIn[i].equalsIgnoreCase("</html>"))
-				&& !(tokensIn[i].equalsIgnoreCase("<body>")) && !(tokensIn[i].equalsIgnoreCase("</body>")))
-            { 
-				String value = tokensIn[i];
-				// If the word after isn't punctuation, then add a space after the word
-				if (!((i + 1 < tokensIn.length) && isPunctuation(tokensIn[i + 1]))) 
-				{
-					value += " ";
-					letCount++;
-				}
-				printHeading(headingTag, value);
-				letCount = letCount + tokensIn[i].length();
-				
-				// If the next word exceeds the 80 character limit, go to the next line;
-
-				if( i < tokensIn.length - 1 && letCount + tokensIn[i + 1].length() > limit )
-				{
-					browser.println();
-					letCount = 0;
-				}
+			overflow++;
+			return;
+		}
+		openTags[depth] = tag;
+		savedStyles[depth] = style;
+		savedBlocks[depth] = block;
+		depth++;
+		
+		switch(tag)
+		{
+			case TagTable.B: style |= STYLE_BOLD; break;
+			case TagTable.I: style |= STYLE_ITALIC; break;
+			case TagTable.Q: style |= STYLE_QUOTE; break;
+			default: block = tag;
+		}
+	}
+	
+	/**
+	 *	Pops an element off the open element stack for its close tag.
+	 *	While elements too deep for the stack are open, the close tag
+	 *	is taken to be for the innermost of them and is ignored too, so
+	 *	it does not close an element on the stack.
+	 *	@param tag			the TagTable ID of the element
+	 *	@return				true if the element was open
+	 */
+	private boolean closeTag(int tag)
+	{
+		if(overflow > 0)
+		{
+			overflow--;
+			return false;
+		}
+		return popTag(tag);
+	}
+	
+	/**
+	 *	Pops an element off the open element stack. Usually it is on top
+	 *	and this takes one step. If elements inside it were never closed,
+	 *	they are closed along with it, even those too deep for the stack.
+	 *	@param tag			the TagTable ID of the element
+	 *	@return				true if the element was open
+	 */
+	private boolean popTag(int tag)
+	{
+		for(int d = depth - 1; d >= 0; d--)
+		{
+			if(openTags[d] == tag)
+			{
+				style = savedStyles[d];
+				block = savedBlocks[d];
+				depth = d;
+				overflow = 0;
+				return true;
 			}
 		}
+		return false;
+	}
+	
+	/**
+	 *	Ends an open paragraph before a paragraph, heading or preformatted
+	 *	block starts, which cannot be inside one, printing what </p> would.
+	 */
+	private void endParagraph()
+	{
+		if(popTag(TagTable.P))
+		{
+			layout.addControl(RenderSink.PRINTLN);
+			layout.addControl(RenderSink.PRINTLN);
+		}
 	}
 	
 	/**
-	 *	Takes in the heading tag and calculates the printing style it
-	 *  will use, along with what will be printed in that printing style.
-	 *	@param headingTag	the number of the type of heading tag
-	 *  @param content      what will be printed to the screen
+	 *	Adds a word, number, punctuation, entity or preformatted text to
+	 *	the layout in the style of the open elements. Headings use their
+	 *	own print style and line limit, otherwise bold is used before
+	 *	italic. An entity is printed as the character it stands for.
+	 *	@param tokensIn		the buffer of tokens in the current chunk
+	 *	@param i			index of the token
 	 */
-	public void printHeading(String headingTag, String content) 
+	private void renderText(TokenBuffer tokensIn, int i)
 	{
-		// Print statement corresponding to the header
-		if (headingTag.equalsIgnoreCase("h1")) 
-			browser.printHeading1(content);
-		else if (headingTag.equalsIgnoreCase("h2")) 
-			browser.printHeading2(content);
-		else if (headingTag.equalsIgnoreCase("h3")) 
-			browser.printHeading3(content);
-		else if (headingTag.equalsIgnoreCase("h4")) 
-			browser.printHeading4(content);
-		else if (headingTag.equalsIgnoreCase("h5")) 
-			browser.printHeading5(content);
-		else if (headingTag.equalsIgnoreCase("h6")) 
-			browser.printHeading6(content);
-	}
-	
-	/**
-	 *	Takes in the heading tag and calculates the the line limit
-	 *  the heading tag has.
-	 *	@param headingTag	the number of the type of heading tag
-	 *  @return             the line limit
-	 */
-	public int lineLimit(String headingTag) 
+		// Preformatted text is printed as is, on its own line
+		if(block == TagTable.PRE)
+		{
+			renderPreformatted(tokensIn.getSource(), tokensIn.getStart(i), tokensIn.getEnd(i));
+			layout.addControl(RenderSink.PRINTLN);
+			layout.addControl(RenderSink.PRINTLN);
+			return;
+		}
+		
+		int operation = RenderSink.PRINT;
+		int category = HTMLLayout.BODY;
+		if(block >= TagTable.H1 && block <= TagTable.H6)
+		{
+			operation = RenderSink.PRINT_HEADING1 + block - TagTable.H1;
+			category = HTMLLayout.HEADING1 + block - TagTable.H1;
+		}
+		else if((style & STYLE_BOLD) != 0)
+			operation = RenderSink.PRINT_BOLD;
+		else if((style & STYLE_ITALIC) != 0)
+			operation = RenderSink.PRINT_ITALIC;
+		
+		// The last word waits for the token after it, in the next buffer
+		int kind = tokensIn.getKind(i);
+		if(i + 1 == tokensIn.size())
+		{
+			pendingText.setLength(0);
+			if(kind == TokenBuffer.ENTITY)
+				pendingText.appendCodePoint(tokensIn.getCodePoint(i));
+			else
+				pendingText.append(tokensIn.getSource(), tokensIn.getStart(i), tokensIn.getEnd(i));
+			pendingKind = kind;
+			pendingOperation = operation;
+			pendingCategory = category;
+			pendingQuoted = (style & STYLE_QUOTE) != 0;
+			pendingEnd = tokensIn.getSourceOffset() + tokensIn.getEnd(i);
+			return;
+		}
+		
+		boolean spaced = isSpaced(kind, (style & STYLE_QUOTE) != 0, tokensIn.getEnd(i),
+								  tokensIn.getKind(i + 1), tokensIn.getTagId(i + 1),
+								  tokensIn.getStart(i + 1));
+		if(kind == TokenBuffer.ENTITY)
+		{
+			setEntityText(tokensIn.getCodePoint(i));
+			layout.addWord(operation, entityText, 0, entityText.length(), spaced, category);
+		}
+		else
+			layout.addWord(operation, tokensIn.getSource(), tokensIn.getStart(i), 
+						   tokensIn.getEnd(i), spaced, category);
+	}
+	
+	/**
+	 *	Adds the word held back to the layout, as the last word of the
+	 *	document, if there is one.
+	 */
+	void renderPending()
 	{
-		// Return line limit
-		if (headingTag.equalsIgnoreCase("h1")) 
-			return 40;
-		else if (headingTag.equalsIgnoreCase("h2")) 
-			return 50;
-		else if (headingTag.equalsIgnoreCase("h3")) 
-			return 60;
-		else if (headingTag.equalsIgnoreCase("h4")) 
-			return 80;
-		else if (headingTag.equalsIgnoreCase("h5")) 
-			return 100;
-		else if (headingTag.equalsIgnoreCase("h6")) 
-			return 120;
-		return -1;
+		if(pendingKind != -1)
+			renderPending(-1, TagTable.UNKNOWN, Long.MIN_VALUE);
+	}
+	
+	/**
+	 *	Adds the word held back to the layout, spaced by the token after it.
+	 *	@param nextKind		the TokenBuffer kind of the next token
+	 *	@param nextTag		the TagTable ID of the next token
+	 *	@param nextStart	where the next token starts in the input
+	 */
+	private void renderPending(int nextKind, int nextTag, long nextStart)
+	{
+		boolean spaced = isSpaced(pendingKind, pendingQuoted, pendingEnd, nextKind, nextTag,
+								  nextStart);
+		pendingKind = -1;
+		layout.addWord(pendingOperation, pendingText, 0, pendingText.length(), spaced,
+					   pendingCategory);
+	}
+	
+	/**
+	 *	Decides if a space is printed after a word from the token after it.
+	 *	@param kind			the TokenBuffer kind of the word
+	 *	@param quoted		true if the word is inside a <q>
+	 *	@param end			where the word ends
+	 *	@param nextKind		the kind of the next token, -1 if there is none
+	 *	@param nextTag		the TagTable ID of the next token
+	 *	@param nextStart	where the next token starts, counted the same way
+	 *	@return				true if a space is printed after the word
+	 */
+	private boolean isSpaced(int kind, boolean quoted, long end, int nextKind, int nextTag,
+							 long nextStart)
+	{
+		// If the word after isn't punctuation, then add a space after the word
+		boolean spaced = nextKind != TokenBuffer.PUNCT;
+		
+		// No space between the last word of a quote and the closing mark
+		if(quoted && nextTag == (TagTable.Q | TagTable.CLOSE))
+			spaced = false;
+		
+		// An entity is part of the text it touches, as in "caf&eacute;"
+		if(end == nextStart && nextKind != TokenBuffer.TAG
+		   && (kind == TokenBuffer.ENTITY || nextKind == TokenBuffer.ENTITY))
+			spaced = false;
+		return spaced;
+	}
+	
+	/**
+	 *	Adds a line of preformatted text to the layout, with each
+	 *	character reference in it replaced by its character.
+	 *	@param text			the text the line is in
+	 *	@param start		index of the first character of the line
+	 *	@param end			index after the last character of the line
+	 */
+	private void renderPreformatted(CharSequence text, int start, int end)
+	{
+		int run = start;	// start of the text not yet added
+		for(int k = start; k < end; k++)
+		{
+			if(text.charAt(k) != '&')
+				continue;
+			int refEnd = EntityTable.end(text, k, end);
+			if(refEnd == -1)
+				continue;
+			if(k > run)
+				layout.addText(RenderSink.PRINT_PREFORMATTED, text, run, k);
+			setEntityText(EntityTable.decode(text, k, refEnd));
+			layout.addText(RenderSink.PRINT_PREFORMATTED, entityText, 0, entityText.length());
+			run = refEnd;
+			k = refEnd - 1;
+		}
+		if(end > run || run == start)
+			layout.addText(RenderSink.PRINT_PREFORMATTED, text, run, end);
+	}
+	
+	/**
+	 *	Puts the character an entity stands for into entityText.
+	 *	@param codePoint	the character
+	 */
+	private void setEntityText(int codePoint)
+	{
+		entityText.setLength(0);
+		entityText.appendCodePoint(codePoint);
+	}
+	
+	/**
+	 *	Puts an array of String tokens into a token buffer so it can
+	 *	be rendered. The tokens are joined into one source string and
+	 *	each one is given a kind from its first character.
+	 *	@param tokensIn		array of tokens
+	 *	@return				the buffer of the tokens
+	 */
+	private TokenBuffer toTokenBuffer(String [] tokensIn)
+	{
+		StringBuilder source = new StringBuilder();
+		TokenBuffer buffer = new TokenBuffer();
+		buffer.setSource(source);
+		for(int i = 0; i < tokensIn.length; i++)
+		{
+			String token = tokensIn[i];
+			int kind = TokenBuffer.PRE_TEXT;
+			if(isPunctuation(token))
+				kind = TokenBuffer.PUNCT;
+			else if(token.startsWith("&") && EntityTable.decode(token, 0, token.length()) != -1)
+				kind = TokenBuffer.ENTITY;
+			else if(token.startsWith("<"))
+				kind = TokenBuffer.TAG;
+			else if(token.length() > 0 && Character.isLetter(token.charAt(0)))
+				kind = TokenBuffer.WORD;
+			else if(token.length() > 0 && (Character.isDigit(token.charAt(0)) 
+			        || token.charAt(0) == '-'))
+				kind = TokenBuffer.NUMBER;
+			source.append(token);
+			int start = source.length() - token.length();
+			int tag = TagTable.UNKNOWN;
+			if(kind == TokenBuffer.TAG)
+				tag = TagTable.lookup(source, start, source.length());
+			buffer.add(kind, start, source.length(), tag);
+		}
+		return buffer;
 	}
 
 	/**
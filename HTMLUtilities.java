@@ -1,3 +1,8 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.function.Consumer;
+
 /**
  *  HTMLUtilities.java
  *	This program handles HTML by tokenizing several aspects of an HTML.
@@ -6,6 +11,14 @@
  *  each line is tokenized seperately so the number of tokens resets
  *  each line. Additionally, comments are ignored as tokens, and 
  *  preformatted text is tokenized as is.
+ *  A whole file can also be streamed from a Reader a chunk at a time,
+ *  in which case tags and comments may span lines and chunks.
+ *  Each character is looked up in a table of character classes, and
+ *  words and numbers are scanned with small state tables over those
+ *  classes, so most characters cost one lookup and one step.
+ *  Character references like "&amp;" and "&#8212;" are one ENTITY
+ *  token each, found in the EntityTable trie as they are scanned. An
+ *  '&' that does not start one is punctuation.
  *
  *	@author	 Joshua Cao
  *	@since	 11/13/24
@@ -14,14 +27,67 @@ public class HTMLUtilities {
 
 	// NONE = not nested in a block, COMMENT = inside a comment block
 	// PREFORMAT = inside a pre-format block
-	private enum TokenState { NONE, COMMENT, PREFORMAT };
+	enum TokenState { NONE, COMMENT, PREFORMAT };
 
 	// the current tokenizer state
 	private TokenState state; 
 
+	// the tokens of lines seen before, null if lines are not cached
+	private TokenCache cache;
+
+	// the most characters a tag or hyphen needs to look at, "</pre>"
+	private final int LOOKAHEAD = 6;
+
+	// default number of characters read at a time when streaming
+	private final int CHUNK_SIZE = 8192;
+
+	// Classes of characters, the columns of the scanner tables
+	private static final int C_OTHER = 0;	// none of the classes below
+	private static final int C_SPACE = 1;	// whitespace
+	private static final int C_DIGIT = 2;	// a digit
+	private static final int C_LETTER = 3;	// a letter other than 'e'
+	private static final int C_E = 4;		// 'e', a letter that may be in a number
+	private static final int C_HYPHEN = 5;	// '-', punctuation that may be in a number or word
+	private static final int C_PERIOD = 6;	// '.', punctuation that may be in a number
+	private static final int C_PUNCT = 7;	// the rest of the punctuation
+	private static final int C_LT = 8;		// '<', which starts a tag or comment
+	private static final int CLASS_COUNT = 9;
+
+	// the class of each ASCII character, others are classed as they are met
+	private static final byte [] CLASSES = buildClasses();
+
+	// A scanner table holds the next state for each state and class, at
+	// [state + class], where a state is the index of its row. END ends the
+	// token before the character, END_BEFORE before the one before it.
+	private static final int END = -1;
+	private static final int END_BEFORE = -2;
+
+	// Number states count the hyphens, 0 to 2, plus 3 once an 'e' is seen
+	// and 6 once a period is seen, times CLASS_COUNT
+	private static final int NUMBER_STATES = 12;
+	private static final int [] NUMBER_NEXT = buildNumberTable();
+
+	// Word states, in the letters or just after a hyphen
+	private static final int WORD = 0;
+	private static final int WORD_HYPHEN = CLASS_COUNT;
+	private static final int [] WORD_NEXT = buildWordTable();
+
 	public HTMLUtilities()
 	{
 		state = state.NONE;
+		cache = null;
+	}
+
+	/**
+	 *	Sets the cache the tokens of each string given to
+	 *	tokenizeHTMLString are looked up in and added to. A string seen
+	 *	before in the same state is not scanned again. Other tokenizers
+	 *	may share the cache.
+	 *	@param cacheIn		the cache, or null to scan every string
+	 */
+	public void setCache(TokenCache cacheIn)
+	{
+		cache = cacheIn;
 	}
 
 	/**
@@ -34,24 +100,239 @@ public class HTMLUtilities {
 	 */
 	public String[] tokenizeHTMLString(String str) 
 	{
-		String[] result = new String[10000]; // large array to hold the HTML file
-		int counter = 0;     // number of tokens
-		String wordFormat = "";    // preformatted text per each line
+		TokenBuffer result = new TokenBuffer();
+		TokenCache.Entry cached = tokenize(str, result);
+		
+		// A cached string keeps the text of its tokens
+		if(cached != null)
+			return cached.toArray(str);
+		return result.toArray();
+	}
+
+	/**
+	 *	Break the HTML string into tokens and add them to the end of the
+	 *	given buffer. The buffer grows as needed, so there is no limit
+	 *	on the length of the string. Tokens are stored as a kind and a
+	 *	start/end span into str, no Strings are created. Clear the
+	 *	buffer between calls to reuse its storage for the next line.
+	 *	@param str			the HTML string
+	 *	@param result		the buffer the tokens are added to
+	 *	@return				the number of tokens added
+	 */
+	public int tokenizeHTMLString(CharSequence str, TokenBuffer result) 
+	{
+		int before = result.size();
+		TokenCache.Entry cached = tokenize(str, result);
+		if(cached != null)
+			cached.addTo(result);
+		return result.size() - before;
+	}
+
+	/**
+	 *	Tokenizes a whole string into the buffer, unless it is in the
+	 *	cache with the current state, and adds it to the cache if there is
+	 *	one. Strings found in the cache are not scanned, so they are left
+	 *	out of the RenderMetrics tokenize counts.
+	 *	@param str			the HTML string
+	 *	@param result		the buffer the tokens are added to
+	 *	@return				the cache entry of the string, whose tokens have
+	 *						not been added, or null if the string was scanned
+	 */
+	private TokenCache.Entry tokenize(CharSequence str, TokenBuffer result)
+	{
+		result.setSource(str);
+		if(cache != null)
+		{
+			TokenCache.Entry cached = cache.find(str, state);
+			if(cached != null)
+			{
+				state = cached.getExit();
+				return cached;
+			}
+		}
+		
+		int before = result.size();
+		TokenState entry = state;	// the state before the string
+		RenderMetrics.TokenizeEvent event = RenderMetrics.beginTokenize();
+		scan(str, 0, str.length(), true, result);
+		RenderMetrics.endTokenize(event, str, 0, str.length(), result, before);
+		if(cache != null)
+			cache.add(str, entry, result, before, state);
+		return null;
+	}
+
+	/**
+	 *	Tokenizes a whole document that is already in memory, such as a
+	 *	memory-mapped file, a window of characters at a time. The tokens
+	 *	point straight into the document, nothing is copied. The buffer is
+	 *	reused for each window, so the tokens are only valid while the
+	 *	handler is running.
+	 *	@param doc			the HTML document
+	 *	@param tokens		the buffer reused for the tokens of each window
+	 *	@param handler		called with the tokens of each window
+	 */
+	public void tokenizeDocument(CharSequence doc, TokenBuffer tokens, 
+						Consumer<TokenBuffer> handler)
+	{
+		int length = doc.length();
+		int from = 0;				// start of the text not yet tokenized
+		int window = CHUNK_SIZE;	// number of characters to scan at a time
 
-		// Loops through the entire HTML file and checks character by character
-		for(int i = 0; i < str.length(); i++)
+		while(from < length)
+		{
+			int to = (int)Math.min(length, (long)from + window);
+			tokens.clear();
+			tokens.setSource(doc);
+			RenderMetrics.TokenizeEvent event = RenderMetrics.beginTokenize();
+			int stop = scan(doc, from, to, to == length, tokens);
+			RenderMetrics.endTokenize(event, doc, from, stop, tokens, 0);
+			if(tokens.size() > 0)
+				handler.accept(tokens);
+
+			// A single token is longer than the window, widen it
+			if(stop == from)
+				window *= 2;
+			else
+			{
+				window = CHUNK_SIZE;
+				from = stop;
+			}
+		}
+	}
+
+	/**
+	 *	Tokenizes HTML read from a Reader, a chunk of characters at a time,
+	 *	using the default chunk size.
+	 *	@param in			the Reader to read the HTML from
+	 *	@param tokens		the buffer reused for the tokens of each chunk
+	 *	@param handler		called with the tokens of each chunk
+	 */
+	public void tokenizeStream(Reader in, TokenBuffer tokens, Consumer<TokenBuffer> handler)
+						throws IOException
+	{
+		tokenizeStream(in, CHUNK_SIZE, tokens, handler);
+	}
+
+	/**
+	 *	Tokenizes HTML read from a Reader, a chunk of characters at a time.
+	 *	A tag, comment, word or line of preformatted text that is cut off
+	 *	at the end of a chunk is kept and finished with the next chunk, so
+	 *	line breaks and chunk boundaries do not change the tokens. Only the
+	 *	current chunk is kept in memory. The tokens point into a window that
+	 *	is reused for the next chunk, so they are only valid while the
+	 *	handler is running. The source offset of the buffer is where the
+	 *	window starts in the input.
+	 *	@param in			the Reader to read the HTML from
+	 *	@param chunkSize	the number of characters to read at a time
+	 *	@param tokens		the buffer reused for the tokens of each chunk
+	 *	@param handler		called with the tokens of each chunk
+	 */
+	public void tokenizeStream(Reader in, int chunkSize, TokenBuffer tokens, 
+						Consumer<TokenBuffer> handler) throws IOException
+	{
+		char [] window = new char[chunkSize];	// the characters being scanned
+		CharBuffer source = CharBuffer.wrap(window);
+		int carry = 0;							// characters kept from the last chunk
+		long offset = 0;						// where the window starts in the input
+		boolean endOfInput = false;
+
+		while(!endOfInput)
+		{
+			// A single token fills the window, make room for the rest of it
+			if(carry == window.length)
+			{
+				window = java.util.Arrays.copyOf(window, window.length * 2);
+				source = CharBuffer.wrap(window);
+			}
+
+			int filled = carry;
+			int count = in.read(window, carry, window.length - carry);
+			if(count == -1)
+				endOfInput = true;
+			else
+				filled += count;
+
+			tokens.clear();
+			tokens.setSource(source);
+			tokens.setSourceOffset(offset);
+			RenderMetrics.TokenizeEvent event = RenderMetrics.beginTokenize();
+			int stop = scan(source, 0, filled, endOfInput, tokens);
+			RenderMetrics.endTokenize(event, source, 0, stop, tokens, 0);
+			if(tokens.size() > 0)
+				handler.accept(tokens);
+
+			// Move the unfinished text to the front of the window
+			carry = filled - stop;
+			System.arraycopy(window, stop, window, 0, carry);
+			offset += stop;
+		}
+	}
+
+	/**
+	 *	Tokenizes the text between from and to, adding the tokens to the
+	 *	buffer. If this is not the end of the input, a token that might
+	 *	continue past to (a tag without its '>', a word or number that
+	 *	runs to the end, preformatted text without its line end) is not
+	 *	added, and its start is returned so the caller can scan it again
+	 *	once more text has been read. The state carries over either way.
+	 *	@param str			the HTML text
+	 *	@param from			index to start scanning at
+	 *	@param to			index to stop scanning at
+	 *	@param endOfInput	true if there is no more text after to
+	 *	@param result		the buffer the tokens are added to
+	 *	@return				index of the first character that was not used
+	 */
+	private int scan(CharSequence str, int from, int to, boolean endOfInput, TokenBuffer result)
+	{
+		return scan(str, from, to, endOfInput, result, Integer.MAX_VALUE);
+	}
+
+	/**
+	 *	Tokenizes the text between from and to like the method above, but
+	 *	stops as soon as the buffer holds at least maxTokens tokens. Used
+	 *	to pull tokens one at a time.
+	 *	@param str			the HTML text
+	 *	@param from			index to start scanning at
+	 *	@param to			index to stop scanning at
+	 *	@param endOfInput	true if there is no more text after to
+	 *	@param result		the buffer the tokens are added to
+	 *	@param maxTokens	the number of tokens in the buffer to stop at
+	 *	@return				index of the first character that was not used
+	 */
+	int scan(CharSequence str, int from, int to, boolean endOfInput, TokenBuffer result, 
+				int maxTokens)
+	{
+		return scan(str, from, to, endOfInput, result, maxTokens, to);
+	}
+
+	/**
+	 *	Tokenizes the text between from and to like the methods above, but
+	 *	does not start a token at or after stopAt. A token that starts
+	 *	before stopAt is finished even if it runs past it, so the index
+	 *	returned may be after stopAt. Used to split a document into
+	 *	pieces that are tokenized separately.
+	 *	@param str			the HTML text
+	 *	@param from			index to start scanning at
+	 *	@param to			index to stop scanning at
+	 *	@param endOfInput	true if there is no more text after to
+	 *	@param result		the buffer the tokens are added to
+	 *	@param maxTokens	the number of tokens in the buffer to stop at
+	 *	@param stopAt		the index no token may start at or after
+	 *	@return				index of the first character that was not used
+	 */
+	int scan(CharSequence str, int from, int to, boolean endOfInput, TokenBuffer result, 
+				int maxTokens, int stopAt)
+	{
+		int preStart = -1;   // where the preformatted text of the line starts
+
+		// Loops through the text and checks character by character
+		for(int i = from; i < to; i++)
 		{	
+			// Enough tokens were found, the rest is scanned next time
+			if((result.size() >= maxTokens || i >= stopAt) && preStart == -1)
+				return i;
+
 			char letter = str.charAt(i);   // current letter being checked
-			char letterBefore = '\0';      // previous letter being checked
-			char letterAfter = '\0';       // next letter being checked
-
-			// Ensures there is only intialzation of the before and after
-			// letters if we are not checking the first or last letter
-			// to prvent an IndexOutOfBoundsExeception.
-			if(i != 0)
-				letterBefore = str.charAt(i - 1);
-			if(i != str.length() - 1)
-				letterAfter = str.charAt(i + 1);
 			
 			// Switch statement to control the current state of the tokenization
 			// process, whether if we are in a comment or preformat block
@@ -59,240 +340,154 @@ public class HTMLUtilities {
 			{
 				case NONE:
 				
-					// Set the state to comment if there is the start to
-					// the comment tag
-					if(letter == '<' && letterAfter == '!' && str.charAt(i + 2) == '-' 
-					   && str.charAt(i + 3) == '-')
-					{
-						state = state.COMMENT;
-					}
-					
-					// Set the state to preformat and tokenize it if there
-					// is the start to the preformat tag
-					else if(letter == '<' && letterAfter == 'p' && str.charAt(i + 2) == 'r' 
-					        && str.charAt(i + 3) == 'e'  && str.charAt(i + 4) == '>')
-					{
-						state = state.PREFORMAT;
-						result[i] = "<pre>";
-						counter++;
-						i += 4;
-					} 
-					
-					else
+					// The class of the letter picks the kind of token
+					switch(charClass(letter))
 					{
-						// Tokenize the HTML tags
-						if(letter == '<')
-						{
-							int recentIndex = i; // the current character
-							int endIndex = str.indexOf(">", i); // where the tag ends
-							
-							// Take the substring of the start of the 
-							// current character to the end of the HTML tag
-							result[i] = str.substring(recentIndex, endIndex + 1);
-							i += endIndex - recentIndex;
-							counter++;
-						}
+						case C_LT:
 						
-						// Tokenize if there if there is a space between 
-						// a minus symbol and a number
-						else if(letter == '-' && Character.isWhitespace(letterAfter) 
-						        && Character.isDigit(str.charAt(i + 2)))
-						{
-							boolean found = true;  // end character found or not
-							int recentIndex = i;   // the current character
-							int endIndex = -1;     // where the number ends
-							int j;
-							int [] hyphen = new int[3]; // store count of hypen
-							int [] e = new int[2]; // store count of e
-							int index = 0; // index of hyphen
-							int [] period = new int[2]; // store count of period
+							// Tags and comments need to look ahead, wait
+							// for more text if they are too close to the end
+							if(!endOfInput && i + LOOKAHEAD > to)
+								return i;
+
+							// Set the state to comment if there is the start to
+							// the comment tag
+							if(charAt(str, i + 1, to) == '!' && charAt(str, i + 2, to) == '-' 
+							   && charAt(str, i + 3, to) == '-')
+							{
+								state = state.COMMENT;
+							}
 							
-							// Loops at plus two of the current index until
-							// the index of when the number ends is found
-							for(j = i + 2; j < str.length() && found; j++)
+							// Tokenize the HTML tags, a pre tag in any case and
+							// with any attributes starts preformatted text
+							else
 							{
+								int endIndex = indexOf(str, '>', i, to); // where the tag ends
 								
-								 
-								// If the character is no longer a digit, 
-								// not a hyphen, 'e', or a period.		
+								// An unclosed tag either continues in the text
+								// still to be read or runs to the end of the input
+								if(endIndex == -1 && !endOfInput)
+									return i;
+								if(endIndex == -1)
+									endIndex = to - 1;
 								
-								if(str.charAt(j) == '-' && hyphen[0] == -1 && hyphen[1] == -1)
-								{
-									endIndex = j;
-									found = false;
-								}
-								if(str.charAt(j) == '-')
-								{
-									hyphen[index] = -1;
-									index++;
-								}
-								if(str.charAt(j) == 'e' && e[0] == -1)
-								{
-									endIndex = j;
-									found = false;
-								}
-								if(str.charAt(j) == 'e')
-								{
-									e[0] = -1;
-								}
-								 					
-								if(str.charAt(j) == '.' && period[0] == -1)
-								{
-									endIndex = j;
-									found = false;
-								}
-								if(str.charAt(j) == '.')
-								{
-									period[0] = -1;
-								}
-								
-								if (!Character.isDigit(str.charAt(j)) && 
-								    !(str.charAt(j) == '-') && !(str.charAt(j) == 'e') 
-								    && !(str.charAt(j) == '.')) 
-								{		
-									endIndex = j;
-									found = false;
-								}
+								int id = TagTable.lookup(str, i, endIndex + 1);
+								result.add(TokenBuffer.TAG, i, endIndex + 1, id);
+								if(id == TagTable.PRE)
+									state = state.PREFORMAT;
+								i = endIndex;
 							}
+							break;
 							
-							// If not found set the index to the end of the line
-							if(endIndex == -1)
-								endIndex =  j;
-						
-							result[i] = "-";
-							result[i + 1] = str.substring(recentIndex + 2, endIndex);
-							i += endIndex - recentIndex + 2;
-							counter+=2;
-						}
+						case C_HYPHEN:
 						
-						// Tokenize numbers
-						else if(Character.isDigit(letter) || letter == '-' 
-						        && Character.isDigit(letterAfter))
-						{
-							boolean found = true;  // end character found or not
-							int recentIndex = i;   // the current character
-							int endIndex = -1;     // where the number end
-							int j;
-							int [] hyphen = new int[3]; // store count of hypen
-							int [] e = new int[2]; // store count of e
-							int index = 0; // index of hyphen
-							int [] period = new int[2]; // store count of period
-							
-							
-							// Loops at the current index until
-							// the index of when the  number ends is found
-							for(j = i; j < str.length() && found; j++)
+							// Hyphens need to look ahead, wait for more text
+							// if they are too close to the end
+							if(!endOfInput && i + LOOKAHEAD > to)
+								return i;
+
+							// Tokenize if there is a space between a minus
+							// symbol and a number, as punctuation and a number
+							if(charClass(charAt(str, i + 1, to)) == C_SPACE 
+							   && charClass(charAt(str, i + 2, to)) == C_DIGIT)
 							{
-							
-								// If the character is no longer a digit, 
-								// not a hyphen, 'e', or a period	
-								
-								if(str.charAt(j) == '-' && hyphen[0] == -1 && hyphen[1] == -1)
-								{
-									endIndex = j;
-									found = false;
-								}
-								if(str.charAt(j) == '-')
-								{
-									hyphen[index] = -1;
-									index++;
-								}
-								if(str.charAt(j) == 'e' && e[0] == -1)
-								{
-									endIndex = j;
-									found = false;
-								}
-								if(str.charAt(j) == 'e')
-								{
-									e[0] = -1;
-								}
-														
-								if(str.charAt(j) == '.' && period[0] == -1)
-								{
-									endIndex = j;
-									found = false;
-								}
-								if(str.charAt(j) == '.')
-								{
-									period[0] = -1;
-								}
+								int endIndex = numberEnd(str, i + 2, to);
 								
-								if (!Character.isDigit(str.charAt(j)) && 
-								    !(str.charAt(j) == '-') && !(str.charAt(j) == 'e') 
-								    && !(str.charAt(j) == '.')) 
-								{		
-									endIndex = j;
-									found = false;
-								}
+								// If not found the number may continue in the text
+								// still to be read, otherwise it ends with the input
+								if(endIndex == -1 && !endOfInput)
+									return i;
+								if(endIndex == -1)
+									endIndex = to;
 								
-						
+								result.add(TokenBuffer.PUNCT, i, i + 1);
+								result.add(TokenBuffer.NUMBER, i + 2, endIndex);
+								i = endIndex - 1;
+								break;
 							}
 							
-							// If not found set the index to the end of the line
-							if(endIndex == -1)
+							// A hyphen not before a digit is punctuation
+							if(charClass(charAt(str, i + 1, to)) != C_DIGIT)
 							{
-								endIndex =  j;
+								result.add(TokenBuffer.PUNCT, i, i + 1);
+								break;
 							}
-							result[i] = str.substring(recentIndex, endIndex);
-							i += endIndex - recentIndex - 1;
-							counter++;
-						}
-						
-						// Tokenize letters
-						else if(Character.isLetter(letter))
-						{
-							boolean found = true;  // end character found or not
-							int recentIndex = i;   // the current character
-							int endIndex = -1;     // where the word end
-							int j;
 							
-							// Loops at the current index until
-							// the indnex of when the word ends is found
-							for(j = i; j < str.length() && found; j++)
+							// Otherwise it starts a negative number, which is
+							// scanned like any other number
 							{
-								// If the character is no longer a letter,
-								// and it is not a hyphen.
-								if (!Character.isLetter(str.charAt(j)))
-								{		
-									if(str.charAt(j) == '-')
-									{
-										if(!Character.isLetter(str.charAt(j + 1)))
-										{
-											endIndex = j;
-											found = false;
-										}
-									}
-									else
-									{
-										endIndex = j;
-										found = false;
-									}
-								}
+								int last = addNumber(str, i, to, endOfInput, result);
+								if(last == -1)
+									return i;
+								i = last;
 							}
+							break;
 							
-							// If not found set the index to the end of the line
+						case C_DIGIT:
+						{
+							int last = addNumber(str, i, to, endOfInput, result);
+							if(last == -1)
+								return i;
+							i = last;
+							break;
+						}
+							
+						case C_LETTER:
+						case C_E:
+						{
+							int endIndex = wordEnd(str, i, to); // where the word ends
+							
+							// If not found, or a hyphen is the last character,
+							// the word may continue in the text still to be read
+							if(!endOfInput && (endIndex == -1 || endIndex + 1 >= to))
+								return i;
 							if(endIndex == -1)
-								endIndex = j;
-
-							result[i] = str.substring(recentIndex, endIndex);
-							i += endIndex - recentIndex - 1;
-							counter++;
+								endIndex = to;
+							
+							result.add(TokenBuffer.WORD, i, endIndex);
+							i = endIndex - 1;
+							break;
 						}
 						
+						case C_PUNCT:
+						
+							// An '&' may start a character reference, which
+							// needs to look ahead like a tag
+							if(letter == '&')
+							{
+								if(!endOfInput && i + EntityTable.MAX_LENGTH > to)
+									return i;
+								int endIndex = EntityTable.end(str, i, to);
+								if(endIndex != -1)
+								{
+									result.add(TokenBuffer.ENTITY, i, endIndex);
+									i = endIndex - 1;
+									break;
+								}
+							}
+							result.add(TokenBuffer.PUNCT, i, i + 1);
+							break;
+							
 						// Tokenize punctuation
-						else if(isPunctuation(letter))
-						{
-							result[i] = letter + "";
-							counter++;
-						}
+						case C_PERIOD:
+							result.add(TokenBuffer.PUNCT, i, i + 1);
+							break;
+							
+						// Spaces and other characters are skipped
+						default:
+							break;
 					}
 					break;
 
 				case COMMENT:
 					
+					// Wait for more text if the end tag could be cut off
+					if(!endOfInput && letter == '-' && i + 3 > to)
+						return i;
+
 					// Ignore and do not tokenize anything until
 					// comment end tag is reached.
-					if(letter == '-' && letterAfter == '-' && str.charAt(i + 2) == '>')
+					if(letter == '-' && charAt(str, i + 1, to) == '-' && charAt(str, i + 2, to) == '>')
 					{
 						state = state.NONE;
 						i += 2;
@@ -300,47 +495,345 @@ public class HTMLUtilities {
 					break;
 					
 				case PREFORMAT:
+				
+					// Only a line break or the '<' of the end tag can end the
+					// text of the line, skip straight to the next one
+					int stop = indexOfPreStop(str, i, to);
+					if(stop != i && preStart == -1)
+						preStart = i;
+					if(stop == -1)
+					{
+						i = to - 1;
+						break;
+					}
+					i = stop;
+					letter = str.charAt(i);
 					
+					// Wait for more text if the end tag could be cut off,
+					// the text of the line is scanned again with it
+					if(!endOfInput && letter == '<' && i + LOOKAHEAD > to)
+						return preStart != -1 ? preStart : i;
+
 					// Tokenize each line as is until the pre end tag
-					// is reached.
-					if(letter == '<' && letterAfter == '/' && str.charAt(i + 2) == 'p' 
-					   && str.charAt(i + 3) == 'r'  && str.charAt(i + 4) == 'e'
-					   && str.charAt(i + 5) == '>')
+					// is reached, in any case and with spaces before its '>'
+					int preEnd = letter == '<' ? indexOfPreEnd(str, i, to) : -1;
+					if(preEnd == -2 && !endOfInput)
+						return preStart != -1 ? preStart : i;
+					if(preEnd >= 0)
 					{
+						// Tokenize the preformatted text before the end tag
+						if(preStart != -1)
+						{
+							addPreText(str, preStart, i, result);
+							preStart = -1;
+						}
 						state = state.NONE;
-						result[i] = "</pre>";
-						counter++;
-						i += 5;
+						result.add(TokenBuffer.TAG, i, preEnd + 1, TagTable.PRE | TagTable.CLOSE);
+						i = preEnd;
 					}
-					else
+					// A line break ends the preformatted text of the line
+					else if(letter == '\n')
 					{
-						wordFormat += letter;
-						
-						// If the index is at the end of the line, tokenize
-						if(i == str.length() - 1) 
+						if(preStart != -1)
 						{
-							result[i] = wordFormat;
-							counter++;
+							addPreText(str, preStart, i, result);
+							preStart = -1;
 						}
+					}
+					else if(preStart == -1)
+					{
+						preStart = i;
 					} 	
 					break;
 				}		
 		}
 		
-		// Put all tokenized words into the ans array
-		String[] ans = new String[counter];
-		int index = 0;
-		for(int i = 0; i < result.length; i++)
+		// The rest of the line is preformatted text, tokenize it as is
+		// unless it may continue in the text still to be read
+		if(preStart != -1)
 		{
-			if(result[i] != null)
-			{
-				ans[index] = result[i];
-				index++;
-			}
+			if(!endOfInput)
+				return preStart;
+			addPreText(str, preStart, to, result);
+		}
+		
+		return to;
+	}
+
+	/**
+	 *	Adds a line of preformatted text to the buffer, without the
+	 *	carriage return of a Windows line ending.
+	 *	@param str			the HTML text
+	 *	@param start		index of the first character of the text
+	 *	@param end			index after the last character of the text
+	 *	@param result		the buffer the token is added to
+	 */
+	private void addPreText(CharSequence str, int start, int end, TokenBuffer result)
+	{
+		if(end > start && str.charAt(end - 1) == '\r')
+			end--;
+		if(end > start)
+			result.add(TokenBuffer.PRE_TEXT, start, end);
+	}
+
+	/**
+	 *	@return				the current tokenizer state
+	 */
+	TokenState getState()
+	{
+		return state;
+	}
+
+	/**
+	 *	Sets the tokenizer state, for callers that move through the text
+	 *	without scanning it.
+	 *	@param stateIn		the new tokenizer state
+	 */
+	void setState(TokenState stateIn)
+	{
+		state = stateIn;
+	}
+
+	/**
+	 *	Looks ahead in the string without running off the end of it.
+	 *	@param str			the HTML string
+	 *	@param index		index of the character to get
+	 *	@param to			index of the end of the text
+	 *	@return				the character, or '\0' if the index is past the end
+	 */
+	private char charAt(CharSequence str, int index, int to)
+	{
+		if(index >= to)
+			return '\0';
+		return str.charAt(index);
+	}
+
+	/**
+	 *	Finds a character in the string, like String.indexOf.
+	 *	@param str			the HTML string
+	 *	@param ch			the character to find
+	 *	@param from			index to start searching from
+	 *	@param to			index to stop searching at
+	 *	@return				index of the character, or -1 if it is not found
+	 */
+	private int indexOf(CharSequence str, char ch, int from, int to)
+	{
+		for(int i = from; i < to; i++)
+		{
+			if(str.charAt(i) == ch)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 *	Finds the next character that can end a line of preformatted text,
+	 *	a line break or the '<' that may start the end tag.
+	 *	@param str			the HTML text
+	 *	@param from			index to start searching from
+	 *	@param to			index to stop searching at
+	 *	@return				index of the character, or -1 if there is none
+	 */
+	private int indexOfPreStop(CharSequence str, int from, int to)
+	{
+		for(int i = from; i < to; i++)
+		{
+			char letter = str.charAt(i);
+			if(letter == '\n' || letter == '<')
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 *	Finds the end of a pre end tag, the tag TagTable.lookup gives
+	 *	TagTable.PRE | TagTable.CLOSE for, whatever its case.
+	 *	@param str			the HTML text
+	 *	@param from			index of the '<' that may start the end tag
+	 *	@param to			index of the end of the text
+	 *	@return				index of the '>' of the end tag, -1 if it is not
+	 *						the end tag, or -2 if its '>' may be in the text
+	 *						still to be read
+	 */
+	private int indexOfPreEnd(CharSequence str, int from, int to)
+	{
+		if(charAt(str, from + 1, to) != '/' || Character.toLowerCase(charAt(str, from + 2, to)) != 'p'
+		   || Character.toLowerCase(charAt(str, from + 3, to)) != 'r'
+		   || Character.toLowerCase(charAt(str, from + 4, to)) != 'e')
+			return -1;
+		int endIndex = indexOf(str, '>', from, to);
+		if(endIndex == -1)
+			return -2;
+		return TagTable.lookup(str, from, endIndex + 1) == (TagTable.PRE | TagTable.CLOSE) ? endIndex : -1;
+	}
+
+	/**
+	 *	Adds the number that starts at from as a token.
+	 *	@param str			the HTML text
+	 *	@param from			index of the first character of the number
+	 *	@param to			index of the end of the text
+	 *	@param endOfInput	true if no text comes after to
+	 *	@param result		the buffer the token is added to
+	 *	@return				index of the last character of the number, or
+	 *						-1 if it may continue in the text still to be
+	 *						read and nothing was added
+	 */
+	private int addNumber(CharSequence str, int from, int to, boolean endOfInput,
+						  TokenBuffer result)
+	{
+		int endIndex = numberEnd(str, from, to);	// where the number ends
+
+		// If not found the number may continue in the text still to be
+		// read, otherwise it ends with the input
+		if(endIndex == -1 && !endOfInput)
+			return -1;
+		if(endIndex == -1)
+			endIndex = to;
+
+		result.add(TokenBuffer.NUMBER, from, endIndex);
+		return endIndex - 1;
+	}
+
+	/**
+	 *	Finds the end of a number with the number table. A number is digits
+	 *	with up to two hyphens, one 'e' and one period anywhere in it, so
+	 *	"-2.5e-3" is one number, and a third hyphen, second 'e' or second
+	 *	period starts the next token.
+	 *	@param str			the HTML text
+	 *	@param from			index of the first character of the number
+	 *	@param to			index of the end of the text
+	 *	@return				index after the number, or -1 if it runs to the end
+	 */
+	private int numberEnd(CharSequence str, int from, int to)
+	{
+		int next = 0;
+		for(int j = from; j < to; j++)
+		{
+			next = NUMBER_NEXT[next + charClass(str.charAt(j))];
+			if(next == END)
+				return j;
+		}
+		return -1;
+	}
+
+	/**
+	 *	Finds the end of a word with the word table. A word is letters,
+	 *	with single hyphens between them, so "well-known" is one word.
+	 *	@param str			the HTML text
+	 *	@param from			index of the first letter of the word
+	 *	@param to			index of the end of the text
+	 *	@return				index after the word, or -1 if it runs to the end
+	 */
+	private int wordEnd(CharSequence str, int from, int to)
+	{
+		int next = WORD;
+		for(int j = from; j < to; j++)
+		{
+			next = WORD_NEXT[next + charClass(str.charAt(j))];
+			if(next == END)
+				return j;
+			if(next == END_BEFORE)
+				return j - 1;
 		}
 		
-		// return the correctly sized array
-		return ans;
+		// A hyphen at the end of the text is not part of the word
+		if(next == WORD_HYPHEN)
+			return to - 1;
+		return -1;
+	}
+
+	/**
+	 *	@param letter		a character
+	 *	@return				the class of the character, from the table if it
+	 *						is ASCII
+	 */
+	private static int charClass(char letter)
+	{
+		if(letter < 128)
+			return CLASSES[letter];
+		return classify(letter);
+	}
+
+	/**
+	 *	Finds the class of a character the slow way, with the Character
+	 *	tests. Only the ASCII characters have their own classes, the rest
+	 *	are digits, letters, whitespace or other.
+	 *	@param letter		a character
+	 *	@return				the class of the character
+	 */
+	private static int classify(char letter)
+	{
+		switch(letter)
+		{
+			case '<': return C_LT;
+			case '-': return C_HYPHEN;
+			case '.': return C_PERIOD;
+			case 'e': return C_E;
+			case ',': case '~': case '(': case ')': case '!': case '?': 
+			case '=': case ';': case '&': case '+': case ':':
+				return C_PUNCT;
+		}
+		if(Character.isDigit(letter))
+			return C_DIGIT;
+		if(Character.isLetter(letter))
+			return C_LETTER;
+		if(Character.isWhitespace(letter))
+			return C_SPACE;
+		return C_OTHER;
+	}
+
+	/**
+	 *	@return				the class of each ASCII character
+	 */
+	private static byte[] buildClasses()
+	{
+		byte [] classes = new byte[128];
+		for(char c = 0; c < 128; c++)
+			classes[c] = (byte)classify(c);
+		return classes;
+	}
+
+	/**
+	 *	Digits keep the state, a hyphen, 'e' or period moves to the state
+	 *	that has seen it or ends the number if there are already enough of
+	 *	them, and anything else ends the number.
+	 *	@return				the number table
+	 */
+	private static int[] buildNumberTable()
+	{
+		int [] next = new int[NUMBER_STATES * CLASS_COUNT];
+		java.util.Arrays.fill(next, END);
+		for(int state = 0; state < NUMBER_STATES; state++)
+		{
+			int row = state * CLASS_COUNT;
+			next[row + C_DIGIT] = row;
+			if(state % 3 < 2)
+				next[row + C_HYPHEN] = row + CLASS_COUNT;
+			if(state % 6 < 3)
+				next[row + C_E] = row + 3 * CLASS_COUNT;
+			if(state < 6)
+				next[row + C_PERIOD] = row + 6 * CLASS_COUNT;
+		}
+		return next;
+	}
+
+	/**
+	 *	Letters keep the word going and a hyphen waits for the next
+	 *	character. Anything else ends the word, before the hyphen if it
+	 *	comes after one.
+	 *	@return				the word table
+	 */
+	private static int[] buildWordTable()
+	{
+		int [] next = new int[2 * CLASS_COUNT];
+		java.util.Arrays.fill(next, WORD, WORD + CLASS_COUNT, END);
+		java.util.Arrays.fill(next, WORD_HYPHEN, WORD_HYPHEN + CLASS_COUNT, END_BEFORE);
+		next[WORD + C_LETTER] = WORD;
+		next[WORD + C_E] = WORD;
+		next[WORD + C_HYPHEN] = WORD_HYPHEN;
+		next[WORD_HYPHEN + C_LETTER] = WORD;
+		next[WORD_HYPHEN + C_E] = WORD;
+		return next;
 	}
 
 	/**
@@ -350,14 +843,8 @@ public class HTMLUtilities {
 	 */
 	public boolean isPunctuation(char letterIn)
 	{
-		if(letterIn == '.' || letterIn == ',' || letterIn == '~' 
-		   || letterIn == '(' || letterIn == ')' || letterIn == '!' 
-		   || letterIn == '?' || letterIn == '=' || letterIn == ';' 
-		   || letterIn == '&' || letterIn == '-' || letterIn == '+' 
-		   || letterIn == ':')
-			return true;
-		else
-			return false;
+		int type = charClass(letterIn);
+		return type == C_PUNCT || type == C_PERIOD || type == C_HYPHEN;
 	}
 	
 	/**
@@ -377,4 +864,19 @@ public class HTMLUtilities {
 		System.out.println();
 	}
 
+	/**
+	 *	Print the tokens in the buffer to the screen
+	 *	@param tokens		a buffer of tokens
+	 */
+	public void printTokens(TokenBuffer tokens) {
+		if (tokens == null) return;
+		for (int a = 0; a < tokens.size(); a++) {
+
+			if (a % 5 == 0) 
+				System.out.print("\n  ");
+			System.out.print("[token " + a + "]: " + tokens.getText(a) + " ");
+		}
+		System.out.println();
+	}
+
 }
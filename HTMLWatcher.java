@@ -0,0 +1,336 @@
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+
+/**
+ *	HTMLWatcher
+ *	Renders an HTML file and renders it again every time it is saved.
+ *	The file is tokenized and rendered a line at a time, the way the
+ *	first version of HTMLRender read it, and the state of the tokenizer,
+ *	the renderer and the layout at the start of every line is kept as a
+ *	checkpoint along with the layout items the line made.
+ *
+ *	After an edit only the lines from the first changed line on are
+ *	rendered again, and only until a line past the edit starts in the
+ *	same state as it did before. From there on every line would render
+ *	the same as last time, so the rest of the old layout is copied over,
+ *	with the lines of its blocks, instead. A change to one line of a
+ *	large document usually renders just that line.
+ *
+ *	With -cache the tokens of each line are kept in a TokenCache of that
+ *	many megabytes, so repeated lines are only scanned once.
+ *
+ *	Usage: java HTMLWatcher [-text | -ansi | -null] [-cache <MB>] <htmlFileName>
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class HTMLWatcher {
+
+	private HTMLUtilities util;		// tokenizes each line
+	private TokenCache cache;		// the tokens of lines seen before, or null
+	private HTMLRender render;		// renders the tokens of each line
+	private TokenBuffer tokens;		// the tokens of the current line, reused
+	private CoalescingRenderSink sink;	// where the document is printed
+
+	private String [] lines;		// the lines of the last version
+	private HTMLLayout layout;		// the layout of the last version
+
+	// Checkpoints at the start of each line, and after the last line
+	private HTMLUtilities.TokenState [] tokenStates;	// tokenizer state
+	private int [][] renderStates;	// renderer state, from HTMLRender.saveState
+	private int [] itemStarts;		// number of layout items before the line
+	private boolean [] openBlocks;	// true if the layout had an unfinished block
+
+	private int firstRendered;		// first line rendered by the last update
+	private int linesRendered;		// number of lines rendered by the last update
+
+	/**
+	 *	Creates a watcher with an empty document.
+	 *	@param sinkIn	where each version of the document is printed
+	 */
+	public HTMLWatcher(RenderSink sinkIn)
+	{
+		util = new HTMLUtilities();
+		cache = null;
+		render = new HTMLRender(sinkIn);
+		tokens = new TokenBuffer();
+		sink = new CoalescingRenderSink(sinkIn);
+
+		lines = new String[0];
+		layout = new HTMLLayout(null);
+		layout.finish();
+		tokenStates = new HTMLUtilities.TokenState[] { util.getState() };
+		renderStates = new int[][] { render.saveState() };
+		itemStarts = new int[] { 0 };
+		openBlocks = new boolean[] { false };
+		firstRendered = 0;
+		linesRendered = 0;
+	}
+
+	public static void main(String[] args)
+	{
+		RenderSink sink = null;
+		CountingRenderSink counter = null;
+		TokenCache cache = null;
+		boolean usage = false;
+
+		// Options before the file name pick the sink, text by default,
+		// and the size of the token cache
+		int arg = 0;
+		while (arg < args.length && args[arg].startsWith("-") && !usage) {
+			if (args[arg].equals("-text") || args[arg].equals("-ansi"))
+				sink = new TextRenderSink(new FileOutputStream(FileDescriptor.out).getChannel(),
+										  args[arg].equals("-ansi"));
+			else if (args[arg].equals("-null"))
+				sink = counter = new CountingRenderSink();
+			else if (args[arg].equals("-cache") && arg + 1 < args.length) {
+				arg++;
+				try {
+					cache = new TokenCache(Long.parseLong(args[arg]) * 1024 * 1024);
+				}
+				catch (IllegalArgumentException e) {
+					usage = true;
+				}
+			}
+			else
+				usage = true;
+			arg++;
+		}
+		args = Arrays.copyOfRange(args, arg, args.length);
+		if (sink == null)
+			sink = new TextRenderSink(new FileOutputStream(FileDescriptor.out).getChannel(), false);
+
+		if (usage || args.length == 0) {
+			System.out.println("Usage: java HTMLWatcher [-text | -ansi | -null] [-cache <MB>] <htmlFileName>");
+			System.exit(0);
+		}
+
+		HTMLWatcher watcher = new HTMLWatcher(sink);
+		watcher.setCache(cache);
+		try {
+			watcher.watch(Paths.get(args[0]), counter);
+		}
+		catch (IOException e) {
+			System.err.println("ERROR: Cannot watch " + args[0]);
+			System.exit(74);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 *	Sets the cache the tokens of each line are kept in, so lines that
+	 *	are rendered again, or repeated in the document, are not scanned
+	 *	again.
+	 *	@param cacheIn		the cache, or null to scan every line
+	 */
+	public void setCache(TokenCache cacheIn)
+	{
+		util.setCache(cacheIn);
+		cache = cacheIn;
+	}
+
+	/**
+	 *	Renders the file, then waits for it to change and renders it
+	 *	again each time, until the thread is interrupted or the folder
+	 *	can no longer be watched.
+	 *	@param file			the HTML file
+	 *	@param counter		the counting sink to report after each render,
+	 *						or null
+	 */
+	public void watch(Path file, CountingRenderSink counter)
+						throws IOException, InterruptedException
+	{
+		Path folder = file.toAbsolutePath().getParent();
+		WatchService service = FileSystems.getDefault().newWatchService();
+		try {
+			folder.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+							StandardWatchEventKinds.ENTRY_MODIFY);
+			refresh(file, counter);
+
+			boolean valid = true;
+			while (valid) {
+				WatchKey key = service.take();
+				boolean changed = false;
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (file.getFileName().equals(event.context()))
+						changed = true;
+				}
+				valid = key.reset();
+				if (changed)
+					refresh(file, counter);
+			}
+		}
+		finally {
+			service.close();
+		}
+	}
+
+	/**
+	 *	Reads the file in the charset HTMLReader finds for it and, if it
+	 *	changed, updates the layout, prints the document and reports which
+	 *	lines were rendered, if any were.
+	 */
+	private void refresh(Path file, CountingRenderSink counter) throws IOException
+	{
+		StringBuilder text = new StringBuilder();
+		try (Reader input = HTMLReader.open(file)) {
+			char [] buffer = new char[8192];
+			int count;
+			while ((count = input.read(buffer)) != -1)
+				text.append(buffer, 0, count);
+		}
+		long start = System.nanoTime();
+		if (!update(text))
+			return;
+		long micros = (System.nanoTime() - start) / 1000;
+
+		emit();
+		if (linesRendered > 0)
+			System.out.println("rendered lines " + (firstRendered + 1) + " to "
+							   + (firstRendered + linesRendered) + " of " + lines.length
+							   + " in " + (micros / 1000) + "."
+							   + String.format("%03d", micros % 1000) + " ms");
+		if (counter != null) {
+			System.out.println(counter);
+			counter.reset();
+		}
+		if (cache != null)
+			System.out.println(cache);
+	}
+
+	/**
+	 *	Updates the layout for a new version of the document. Lines before
+	 *	the first change and lines after the last change that start in the
+	 *	same state as before are not tokenized or rendered again.
+	 *	@param text			the whole document
+	 *	@return				false if nothing changed
+	 */
+	public boolean update(CharSequence text)
+	{
+		String [] newLines = text.toString().split("\r?\n", -1);
+		int oldCount = lines.length;
+		int newCount = newLines.length;
+
+		// The lines that are the same at the start and at the end
+		int same = Math.min(oldCount, newCount);
+		int prefix = 0;
+		while (prefix < same && lines[prefix].equals(newLines[prefix]))
+			prefix++;
+		if (prefix == oldCount && prefix == newCount)
+			return false;
+		int suffix = 0;
+		while (suffix < same - prefix
+			   && lines[oldCount - 1 - suffix].equals(newLines[newCount - 1 - suffix]))
+			suffix++;
+
+		HTMLUtilities.TokenState [] newTokenStates = new HTMLUtilities.TokenState[newCount + 1];
+		int [][] newRenderStates = new int[newCount + 1][];
+		int [] newItemStarts = new int[newCount + 1];
+		boolean [] newOpenBlocks = new boolean[newCount + 1];
+		System.arraycopy(tokenStates, 0, newTokenStates, 0, prefix + 1);
+		System.arraycopy(renderStates, 0, newRenderStates, 0, prefix + 1);
+		System.arraycopy(itemStarts, 0, newItemStarts, 0, prefix + 1);
+		System.arraycopy(openBlocks, 0, newOpenBlocks, 0, prefix + 1);
+
+		// Copy the lines before the change, then render from the checkpoint
+		HTMLLayout newLayout = new HTMLLayout(null);
+		newLayout.appendItems(layout, 0, itemStarts[prefix]);
+		util.setState(tokenStates[prefix]);
+		render.restoreState(renderStates[prefix]);
+		render.setLayout(newLayout);
+
+		int shift = oldCount - newCount;	// old line index minus new line index
+		int j = prefix;
+		while (j < newCount && !(j >= newCount - suffix && sameState(j, j + shift,
+								 newTokenStates, newRenderStates, newOpenBlocks)))
+		{
+			tokens.clear();
+			util.tokenizeHTMLString(newLines[j], tokens);
+			render.renderTokens(tokens);
+			render.lineBreak();
+			j++;
+			newTokenStates[j] = util.getState();
+			newRenderStates[j] = render.saveState();
+			newItemStarts[j] = newLayout.getItemCount();
+			newOpenBlocks[j] = newLayout.hasOpenBlock();
+		}
+		firstRendered = prefix;
+		linesRendered = j - prefix;
+
+		// The rest renders the same as before, copy it over with the
+		// last word, which the renderer holds back until the end
+		if (j < newCount) {
+			int offset = newItemStarts[j] - itemStarts[j + shift];
+			newLayout.appendItems(layout, itemStarts[j + shift], layout.getItemCount());
+			for (int k = j + 1; k <= newCount; k++) {
+				newTokenStates[k] = tokenStates[k + shift];
+				newRenderStates[k] = renderStates[k + shift];
+				newItemStarts[k] = itemStarts[k + shift] + offset;
+				newOpenBlocks[k] = openBlocks[k + shift];
+			}
+		}
+		else
+			render.renderPending();
+		newLayout.finish();
+
+		lines = newLines;
+		layout = newLayout;
+		tokenStates = newTokenStates;
+		renderStates = newRenderStates;
+		itemStarts = newItemStarts;
+		openBlocks = newOpenBlocks;
+		return true;
+	}
+
+	/**
+	 *	Compares a new checkpoint to an old one. Lines that start in the
+	 *	same state add the same items to the layout.
+	 *	@param j			index of the line in the new version
+	 *	@param old			index of the line in the old version
+	 *	@return				true if the checkpoints are the same
+	 */
+	private boolean sameState(int j, int old, HTMLUtilities.TokenState [] newTokenStates,
+							  int [][] newRenderStates, boolean [] newOpenBlocks)
+	{
+		return newTokenStates[j] == tokenStates[old]
+			   && newOpenBlocks[j] == openBlocks[old]
+			   && Arrays.equals(newRenderStates[j], renderStates[old]);
+	}
+
+	/**
+	 *	Prints the whole document from its layout.
+	 */
+	public void emit()
+	{
+		layout.emit(sink);
+		sink.flush();
+	}
+
+	/**
+	 *	@return				the layout of the current version
+	 */
+	public HTMLLayout getLayout()
+	{
+		return layout;
+	}
+
+	/**
+	 *	@return				the number of lines the last update rendered
+	 */
+	public int getLinesRendered()
+	{
+		return linesRendered;
+	}
+}
@@ -0,0 +1,46 @@
+/**
+ *	HtmlPrinterSink
+ *	Sends the renderer's output to an HtmlPrinter, which draws it in
+ *	the SimpleHtmlRenderer window.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class HtmlPrinterSink implements RenderSink {
+
+	private HtmlPrinter browser;	// the printer of the window
+
+	/**
+	 *	@param browserIn	the printer to send the output to
+	 */
+	public HtmlPrinterSink(HtmlPrinter browserIn)
+	{
+		browser = browserIn;
+	}
+
+	public void print(String text) { browser.print(text); }
+
+	public void printBold(String text) { browser.printBold(text); }
+
+	public void printItalic(String text) { browser.printItalic(text); }
+
+	public void printHeading1(String text) { browser.printHeading1(text); }
+
+	public void printHeading2(String text) { browser.printHeading2(text); }
+
+	public void printHeading3(String text) { browser.printHeading3(text); }
+
+	public void printHeading4(String text) { browser.printHeading4(text); }
+
+	public void printHeading5(String text) { browser.printHeading5(text); }
+
+	public void printHeading6(String text) { browser.printHeading6(text); }
+
+	public void printPreformattedText(String text) { browser.printPreformattedText(text); }
+
+	public void printBreak() { browser.printBreak(); }
+
+	public void printHorizontalRule() { browser.printHorizontalRule(); }
+
+	public void println() { browser.println(); }
+}
@@ -0,0 +1,105 @@
+/**
+ *	LineBox
+ *	One laid out line of a document: the runs of text on it, each with
+ *	the RenderSink operation of its style, the width of the line, and
+ *	the operations that end it (a new line where the text wrapped, or
+ *	the line breaks and rules that end its block). A LineBox never
+ *	changes once it is made, so it can be kept and replayed any number
+ *	of times.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public final class LineBox {
+
+	private final int [] runOperations;	// operation of each run of text
+	private final String [] runTexts;	// text of each run
+	private final int [] endOperations;	// PRINTLN, PRINT_BREAK or PRINT_HORIZONTAL_RULE
+	private final int width;			// number of characters on the line
+
+	/**
+	 *	@param runOperationsIn	operation of each run of text
+	 *	@param runTextsIn		text of each run
+	 *	@param endOperationsIn	operations printed after the runs
+	 */
+	public LineBox(int [] runOperationsIn, String [] runTextsIn, int [] endOperationsIn)
+	{
+		runOperations = runOperationsIn.clone();
+		runTexts = runTextsIn.clone();
+		endOperations = endOperationsIn.clone();
+		int total = 0;
+		for(int k = 0; k < runTexts.length; k++)
+			total += runTexts[k].length();
+		width = total;
+	}
+
+	/**
+	 *	@return				the number of runs of text on the line
+	 */
+	public int getRunCount()
+	{
+		return runTexts.length;
+	}
+
+	/**
+	 *	@param run			index of a run
+	 *	@return				the RenderSink operation of the run
+	 */
+	public int getRunOperation(int run)
+	{
+		return runOperations[run];
+	}
+
+	/**
+	 *	@param run			index of a run
+	 *	@return				the text of the run
+	 */
+	public String getRunText(int run)
+	{
+		return runTexts[run];
+	}
+
+	/**
+	 *	@return				the number of operations that end the line
+	 */
+	public int getEndCount()
+	{
+		return endOperations.length;
+	}
+
+	/**
+	 *	@param index		index of an end operation
+	 *	@return				the RenderSink operation
+	 */
+	public int getEndOperation(int index)
+	{
+		return endOperations[index];
+	}
+
+	/**
+	 *	@return				the number of characters on the line
+	 */
+	public int getWidth()
+	{
+		return width;
+	}
+
+	/**
+	 *	Prints the line to a sink.
+	 *	@param sink			where the line is printed
+	 */
+	public void emit(RenderSink sink)
+	{
+		for(int k = 0; k < runTexts.length; k++)
+			sink.printText(runOperations[k], runTexts[k], 0, runTexts[k].length());
+		for(int k = 0; k < endOperations.length; k++)
+		{
+			switch(endOperations[k])
+			{
+				case RenderSink.PRINTLN: sink.println(); break;
+				case RenderSink.PRINT_BREAK: sink.printBreak(); break;
+				case RenderSink.PRINT_HORIZONTAL_RULE: sink.printHorizontalRule(); break;
+			}
+		}
+	}
+}
@@ -0,0 +1,83 @@
+import java.nio.ByteBuffer;
+
+/**
+ *	MappedCharSequence
+ *	A read-only view of bytes, usually a memory-mapped file, as
+ *	characters. Each byte is one character (ASCII or ISO-8859-1), so
+ *	a character is decoded only when it is read and nothing is copied.
+ *	Sub-sequences share the same bytes.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class MappedCharSequence implements CharSequence {
+
+	private final ByteBuffer bytes;		// the bytes being viewed
+	private final int offset;			// index of the first byte of the view
+	private final int length;			// number of bytes in the view
+
+	/**
+	 *	Creates a view of all the bytes in the buffer.
+	 *	@param bytesIn		the bytes to view as characters
+	 */
+	public MappedCharSequence(ByteBuffer bytesIn)
+	{
+		this(bytesIn, 0, bytesIn.limit());
+	}
+
+	/**
+	 *	Creates a view of some of the bytes in the buffer.
+	 *	@param bytesIn		the bytes to view as characters
+	 *	@param offsetIn		index of the first byte of the view
+	 *	@param lengthIn		number of bytes in the view
+	 */
+	private MappedCharSequence(ByteBuffer bytesIn, int offsetIn, int lengthIn)
+	{
+		bytes = bytesIn;
+		offset = offsetIn;
+		length = lengthIn;
+	}
+
+	/**
+	 *	@return				the number of characters in the view
+	 */
+	public int length()
+	{
+		return length;
+	}
+
+	/**
+	 *	Decodes the byte at the index as a character.
+	 *	@param index		index of the character
+	 *	@return				the character
+	 */
+	public char charAt(int index)
+	{
+		if(index < 0 || index >= length)
+			throw new IndexOutOfBoundsException("index " + index + " of " + length);
+		return (char)(bytes.get(offset + index) & 0xff);
+	}
+
+	/**
+	 *	@param start		index of the first character
+	 *	@param end			index after the last character
+	 *	@return				a view of the characters sharing the same bytes
+	 */
+	public CharSequence subSequence(int start, int end)
+	{
+		if(start < 0 || end > length || start > end)
+			throw new IndexOutOfBoundsException("range " + start + " to " + end + " of " + length);
+		return new MappedCharSequence(bytes, offset + start, end - start);
+	}
+
+	/**
+	 *	@return				the characters of the view as a String
+	 */
+	public String toString()
+	{
+		char [] chars = new char[length];
+		for(int i = 0; i < length; i++)
+			chars[i] = (char)(bytes.get(offset + i) & 0xff);
+		return new String(chars);
+	}
+}
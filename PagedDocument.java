@@ -0,0 +1,186 @@
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ *	PagedDocument
+ *	Shows a laid out document a few pages at a time, so the sink only
+ *	ever holds the text around the part being read instead of the whole
+ *	document. The layout keeps every line, and a page is a run of
+ *	pageLines of them. Scrolling to a line shows its page and margin
+ *	pages on each side of it; the pages are recorded into DisplayLists
+ *	when they come into view and dropped when they leave it.
+ *
+ *	An HtmlPrinter cannot take back what it was given, so each time the
+ *	pages shown change they are printed into a new sink from the sink
+ *	factory, like a new window. Scrolling inside the middle page prints
+ *	nothing. The lists of dropped pages are reused for the next pages,
+ *	so scrolling makes little garbage.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class PagedDocument {
+
+	// the number of lines on a page if none is given
+	public static final int DEFAULT_PAGE_LINES = 100;
+
+	// the number of pages shown on each side of the page being read
+	public static final int DEFAULT_MARGIN = 1;
+
+	private final List<LineBox> lines;			// every line of the document
+	private final int pageLines;				// number of lines on a page
+	private final int margin;					// pages shown on each side
+	private final Supplier<RenderSink> sinks;	// makes the sink each window is printed into
+
+	private DisplayList [] pages;		// the pages shown, from firstPage to lastPage
+	private int firstPage;				// the first page shown, -1 before the first window
+	private int lastPage;				// the last page shown, -1 before the first window
+	private int topLine;				// the line scrolled to
+	private ArrayDeque<DisplayList> spare;	// lists of dropped pages, to reuse
+	private long pagesMade;				// pages recorded since it was made
+	private long windows;				// windows printed since it was made
+
+	/**
+	 *	Pages a layout with DEFAULT_PAGE_LINES and DEFAULT_MARGIN.
+	 *	@param layout		the finished layout of the document
+	 *	@param sinksIn		makes the sink each window is printed into
+	 */
+	public PagedDocument(HTMLLayout layout, Supplier<RenderSink> sinksIn)
+	{
+		this(layout, DEFAULT_PAGE_LINES, DEFAULT_MARGIN, sinksIn);
+	}
+
+	/**
+	 *	@param layout		the finished layout of the document
+	 *	@param pageLinesIn	the number of lines on a page
+	 *	@param marginIn		the number of pages shown on each side of the
+	 *						page being read
+	 *	@param sinksIn		makes the sink each window is printed into
+	 */
+	public PagedDocument(HTMLLayout layout, int pageLinesIn, int marginIn,
+						 Supplier<RenderSink> sinksIn)
+	{
+		if(pageLinesIn <= 0 || marginIn < 0)
+			throw new IllegalArgumentException("page of " + pageLinesIn + " lines, margin "
+											   + marginIn);
+		lines = layout.getLines();
+		pageLines = pageLinesIn;
+		margin = marginIn;
+		sinks = sinksIn;
+		pages = new DisplayList[0];
+		firstPage = -1;
+		lastPage = -1;
+		topLine = 0;
+		spare = new ArrayDeque<DisplayList>();
+		pagesMade = 0;
+		windows = 0;
+	}
+
+	/**
+	 *	Scrolls to a line, printing a new window if the pages around it
+	 *	are not the ones shown.
+	 *	@param line			index of the line, moved inside the document
+	 *	@return				true if a new window was printed
+	 */
+	public boolean scrollTo(int line)
+	{
+		topLine = Math.max(0, Math.min(line, lines.size() - 1));
+		int page = topLine / pageLines;
+		int first = Math.max(0, page - margin);
+		int last = Math.min(getPageCount() - 1, page + margin);
+		if(first == firstPage && last == lastPage)
+			return false;
+
+		// Keep the pages still in view, drop the rest and make the new ones
+		DisplayList [] shown = new DisplayList[Math.max(0, last - first + 1)];
+		for(int p = firstPage; p <= lastPage && p >= 0; p++)
+		{
+			if(p >= first && p <= last)
+				shown[p - first] = pages[p - firstPage];
+			else
+			{
+				pages[p - firstPage].clear();
+				spare.push(pages[p - firstPage]);
+			}
+		}
+		for(int p = first; p <= last; p++)
+		{
+			if(shown[p - first] == null)
+				shown[p - first] = makePage(p);
+		}
+		pages = shown;
+		firstPage = first;
+		lastPage = last;
+
+		// A page may end inside a run, so the pages are joined again
+		CoalescingRenderSink window = new CoalescingRenderSink(sinks.get());
+		for(int k = 0; k < pages.length; k++)
+			pages[k].replay(window);
+		window.flush();
+		windows++;
+		return true;
+	}
+
+	/**
+	 *	Scrolls by a number of lines, back if it is negative.
+	 *	@param count		the number of lines
+	 *	@return				true if a new window was printed
+	 */
+	public boolean scrollBy(int count)
+	{
+		return scrollTo((int)Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE,
+									  (long)topLine + count)));
+	}
+
+	/**
+	 *	Records the lines of a page, in a list of a dropped page if there
+	 *	is one.
+	 *	@param page			index of the page
+	 *	@return				the page
+	 */
+	private DisplayList makePage(int page)
+	{
+		DisplayList list = spare.isEmpty() ? new DisplayList() : spare.pop();
+		int end = Math.min(lines.size(), (page + 1) * pageLines);
+		for(int k = page * pageLines; k < end; k++)
+			lines.get(k).emit(list);
+		list.flush();
+		pagesMade++;
+		return list;
+	}
+
+	/**	@return			the line scrolled to */
+	public int getTopLine() { return topLine; }
+
+	/**	@return			the number of lines in the document */
+	public int getLineCount() { return lines.size(); }
+
+	/**	@return			the number of lines on a page */
+	public int getPageLines() { return pageLines; }
+
+	/**	@return			the number of pages in the document */
+	public int getPageCount() { return (lines.size() + pageLines - 1) / pageLines; }
+
+	/**	@return			the first page shown, or -1 if none */
+	public int getFirstPage() { return firstPage; }
+
+	/**	@return			the last page shown, or -1 if none */
+	public int getLastPage() { return lastPage; }
+
+	/**	@return			about how many bytes the pages shown take */
+	public long getBytes()
+	{
+		long total = 0;
+		for(int k = 0; k < pages.length; k++)
+			total += pages[k].getBytes();
+		return total;
+	}
+
+	public String toString()
+	{
+		return "paged document: " + lines.size() + " lines in " + getPageCount() + " pages of "
+			   + pageLines + ", showing pages " + firstPage + " to " + lastPage + ", "
+			   + pagesMade + " pages made, " + windows + " windows printed";
+	}
+}
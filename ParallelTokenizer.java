@@ -0,0 +1,298 @@
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ *	ParallelTokenizer
+ *	Tokenizes a large document on a ForkJoinPool. The document is cut
+ *	into chunks at line breaks and every chunk is tokenized at the same
+ *	time by its own HTMLUtilities. The state a chunk starts in depends
+ *	on all the text before it, so each chunk guesses its starting state
+ *	from the first comment or preformat marker in it, and assumes it
+ *	starts right at its first line.
+ *
+ *	A fix-up pass then walks the chunks in order. A chunk whose guess
+ *	does not match where and in what state the chunk before it really
+ *	stopped is tokenized again from there. Comments and preformatted
+ *	text that span chunks are rare, so usually nothing is tokenized
+ *	twice. The tokens are the same as tokenizing the whole document at
+ *	once with tokenizeHTMLString.
+ *
+ *	The chunks are done a wave at a time, a few per thread, so only the
+ *	tokens of one wave are in memory. The handler is called with the
+ *	tokens of each chunk in document order.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class ParallelTokenizer {
+
+	// default number of characters in a chunk
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+	// number of chunks in a wave for each thread of the pool
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	// how far into a chunk to look for a marker to guess its state
+	private static final int GUESS_LENGTH = 4096;
+
+	private ForkJoinPool pool;		// runs the chunks
+	private int chunkSize;			// the least number of characters in a chunk
+
+	private CharSequence doc;		// the document being tokenized
+	private int [] starts;			// where each chunk of the wave starts
+	private int [] ends;			// the line break each chunk ends after
+	private HTMLUtilities.TokenState [] states;	// the state each chunk starts in
+	private int [] stops;			// where each chunk stopped
+	private HTMLUtilities.TokenState [] endStates;	// the state each chunk stopped in
+	private TokenBuffer [] buffers;	// the tokens of each chunk
+
+	private int chunkCount;			// number of chunks tokenized
+	private int repairCount;		// number of chunks tokenized again
+
+	/**
+	 *	Creates a tokenizer that uses the common pool and the default
+	 *	chunk size.
+	 */
+	public ParallelTokenizer()
+	{
+		this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 *	@param poolIn		the pool to tokenize the chunks on
+	 *	@param chunkSizeIn	the least number of characters in a chunk,
+	 *						a chunk runs on to the end of its last line
+	 */
+	public ParallelTokenizer(ForkJoinPool poolIn, int chunkSizeIn)
+	{
+		if(chunkSizeIn <= 0)
+			throw new IllegalArgumentException("chunk size must be positive");
+		pool = poolIn;
+		chunkSize = chunkSizeIn;
+		int waveSize = Math.max(1, pool.getParallelism() * CHUNKS_PER_THREAD);
+		starts = new int[waveSize];
+		ends = new int[waveSize];
+		states = new HTMLUtilities.TokenState[waveSize];
+		stops = new int[waveSize];
+		endStates = new HTMLUtilities.TokenState[waveSize];
+		buffers = new TokenBuffer[waveSize];
+		for(int k = 0; k < waveSize; k++)
+			buffers[k] = new TokenBuffer();
+	}
+
+	/**
+	 *	Tokenizes a whole document, several chunks at a time. The buffers
+	 *	are reused for the next wave, so the tokens are only valid while
+	 *	the handler is running.
+	 *	@param docIn		the HTML document
+	 *	@param handler		called with the tokens of each chunk, in order
+	 */
+	public void tokenize(CharSequence docIn, Consumer<TokenBuffer> handler)
+	{
+		doc = docIn;
+		int length = doc.length();
+		int from = 0;
+		HTMLUtilities.TokenState state = HTMLUtilities.TokenState.NONE;
+		while(from < length)
+		{
+			// Cut the wave into chunks, the first one starts where the last wave stopped
+			int count = 0;
+			int start = from;
+			while(count < starts.length && start < length)
+			{
+				starts[count] = start;
+				ends[count] = lineEnd(start);
+				states[count] = count == 0 ? state : guessState(start, ends[count]);
+				start = ends[count];
+				count++;
+			}
+
+			pool.invoke(new ChunkAction(0, count));
+			chunkCount += count;
+
+			// Fix up the chunks that started in the wrong place or state
+			for(int k = 1; k < count; k++)
+			{
+				if(stops[k - 1] != starts[k] || endStates[k - 1] != states[k])
+				{
+					starts[k] = stops[k - 1];
+					states[k] = endStates[k - 1];
+					tokenizeChunk(k);
+					repairCount++;
+				}
+			}
+
+			for(int k = 0; k < count; k++)
+			{
+				if(buffers[k].size() > 0)
+					handler.accept(buffers[k]);
+			}
+			from = stops[count - 1];
+			state = endStates[count - 1];
+		}
+		for(int k = 0; k < buffers.length; k++)
+			buffers[k].clear();
+		doc = null;
+	}
+
+	/**
+	 *	@return				the number of chunks tokenized so far
+	 */
+	public int getChunkCount()
+	{
+		return chunkCount;
+	}
+
+	/**
+	 *	@return				the number of chunks whose guess was wrong and
+	 *						were tokenized again
+	 */
+	public int getRepairCount()
+	{
+		return repairCount;
+	}
+
+	/**
+	 *	Tokenizes a file on every core and prints how long it took.
+	 */
+	public static void main(String[] args)
+	{
+		if (args.length == 0) {
+			System.out.println("Usage: java ParallelTokenizer <htmlFileName>");
+			System.exit(0);
+		}
+		try {
+			CharSequence document = FileUtils.mapToRead(args[0]);
+			if (document == null) {
+				System.err.println("ERROR: " + args[0] + " is too large to map or decode");
+				System.exit(74);
+			}
+			ParallelTokenizer tokenizer = new ParallelTokenizer();
+			long [] tokens = new long[1];
+			long start = System.nanoTime();
+			tokenizer.tokenize(document, chunk -> tokens[0] += chunk.size());
+			long millis = (System.nanoTime() - start) / 1000000;
+			System.out.println(tokens[0] + " tokens in " + millis + " ms, "
+							   + tokenizer.getChunkCount() + " chunks, "
+							   + tokenizer.getRepairCount() + " tokenized again");
+		}
+		catch (IOException e) {
+			System.err.println("ERROR: Cannot read " + args[0]);
+			System.exit(74);
+		}
+	}
+
+	/**
+	 *	Tokenizes one chunk of the wave from its start and state, up to
+	 *	the first token that starts after its last line.
+	 *	@param k			index of the chunk in the wave
+	 */
+	private void tokenizeChunk(int k)
+	{
+		HTMLUtilities util = new HTMLUtilities();
+		util.setState(states[k]);
+		buffers[k].clear();
+		buffers[k].setSource(doc);
+		if(starts[k] >= ends[k])
+			stops[k] = starts[k];	// the chunk before ran past all of it
+		else
+			stops[k] = util.scan(doc, starts[k], doc.length(), true, buffers[k],
+								 Integer.MAX_VALUE, ends[k]);
+		endStates[k] = util.getState();
+	}
+
+	/**
+	 *	Finds where a chunk ends, after the first line break at or after
+	 *	start + chunkSize that is not inside a tag. A tag that is still
+	 *	open at the end of a line would make the next chunk start in the
+	 *	middle of it.
+	 *	@return				index after the line break, or the end of the
+	 *						document
+	 */
+	private int lineEnd(int start)
+	{
+		int length = doc.length();
+		int i = (int)Math.min(length, (long)start + chunkSize);
+		while(i < length && (doc.charAt(i - 1) != '\n' || inTag(i - 1)))
+			i++;
+		return i;
+	}
+
+	/**
+	 *	@param lineBreak	index of a line break
+	 *	@return				true if the line before it has a '<' after its
+	 *						last '>'
+	 */
+	private boolean inTag(int lineBreak)
+	{
+		for(int i = lineBreak - 1; i >= 0; i--)
+		{
+			char c = doc.charAt(i);
+			if(c == '>' || c == '\n')
+				return false;
+			if(c == '<')
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 *	Guesses the state a chunk starts in from the first marker near its
+	 *	start. An end of a comment or preformat block before any start of
+	 *	one means the chunk starts inside it.
+	 *	@return				the guessed state, NONE if there is no marker
+	 */
+	private HTMLUtilities.TokenState guessState(int start, int end)
+	{
+		int last = Math.min(end, start + GUESS_LENGTH);
+		for(int i = start; i < last; i++)
+		{
+			char c = doc.charAt(i);
+			if(c == '-' && i + 2 < end && doc.charAt(i + 1) == '-' && doc.charAt(i + 2) == '>')
+				return HTMLUtilities.TokenState.COMMENT;
+			if(c == '<' && i + 1 < end)
+			{
+				char next = Character.toLowerCase(doc.charAt(i + 1));
+				if(next == '!' || next == 'p')
+					return HTMLUtilities.TokenState.NONE;
+				if(next == '/' && i + 5 < end && Character.toLowerCase(doc.charAt(i + 2)) == 'p'
+				   && Character.toLowerCase(doc.charAt(i + 3)) == 'r'
+				   && Character.toLowerCase(doc.charAt(i + 4)) == 'e'
+				   && (doc.charAt(i + 5) == '>' || Character.isWhitespace(doc.charAt(i + 5))))
+					return HTMLUtilities.TokenState.PREFORMAT;
+			}
+		}
+		return HTMLUtilities.TokenState.NONE;
+	}
+
+	/**
+	 *	Tokenizes a range of the chunks of the wave, splitting it in
+	 *	half until there is one chunk left.
+	 */
+	private class ChunkAction extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private int first;		// index of the first chunk
+		private int last;		// index after the last chunk
+
+		ChunkAction(int firstIn, int lastIn)
+		{
+			first = firstIn;
+			last = lastIn;
+		}
+
+		protected void compute()
+		{
+			if(last - first == 1)
+				tokenizeChunk(first);
+			else
+			{
+				int middle = (first + last) / 2;
+				invokeAll(new ChunkAction(first, middle), new ChunkAction(middle, last));
+			}
+		}
+	}
+}
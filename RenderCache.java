@@ -0,0 +1,443 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ *	RenderCache
+ *	A folder of rendered documents, so a file that has not changed since
+ *	it was last rendered is printed from its stored lines without being
+ *	tokenized or laid out again. Each file has one entry, named by a hash
+ *	of its path, holding the DisplayList of the document.
+ *
+ *	An entry is kept with the path, size, modified time and a CRC-32C of
+ *	the contents of the file it was made from, and is only used if all
+ *	four still match. The entry also ends with a CRC-32C of itself, so a
+ *	damaged or half written entry is found and deleted before anything
+ *	is printed from it. Entries are written to a temporary file first and
+ *	moved into place, so readers never see one being written.
+ *
+ *	When the entries take more than maxBytes, the ones used longest ago
+ *	are deleted until they take a tenth less, so the folder is listed
+ *	once in many stores instead of after each one. Using an entry
+ *	updates its modified time for this. The bytes the entries take are
+ *	counted when the cache is opened and kept up to date as entries are
+ *	written and deleted, and counted again each time entries are
+ *	deleted, as other renderers may share the folder. Temporary files
+ *	left by a renderer that stopped while writing are deleted when the
+ *	cache is opened.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class RenderCache {
+
+	// the most bytes the entries may take if no size is given
+	public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+	// the start of every entry, "HRC1"
+	private static final int MAGIC = 0x48524331;
+
+	// changed whenever the format of an entry or the layout rules change
+	private static final int VERSION = 3;
+
+	// the end of the name of every entry
+	private static final String SUFFIX = ".render";
+
+	// the start and end of the name of every temporary file
+	private static final String TEMP_PREFIX = "entry";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	// how old a temporary file is before it is taken to be left over
+	private static final long STALE_TEMP_MILLIS = 60 * 1000;
+
+	// the size of the buffer the files are hashed through
+	private static final int HASH_BUFFER = 1 << 16;
+
+	private final Path folder;			// where the entries are kept
+	private final long maxBytes;		// the most bytes the entries may take
+	private final AtomicLong hits;		// entries found and used
+	private final AtomicLong misses;	// files with no entry, or a stale one
+	private final AtomicLong stores;	// entries written
+	private final AtomicLong totalBytes;	// bytes the entries take, as far as is known
+
+	/**
+	 *	Uses a folder for the cache, making it if it is missing, and
+	 *	counts the bytes its entries take.
+	 *	@param folderIn		where the entries are kept
+	 *	@param maxBytesIn	the most bytes the entries may take
+	 *	@throws IOException	if the folder cannot be made or listed
+	 */
+	public RenderCache(Path folderIn, long maxBytesIn) throws IOException
+	{
+		folder = folderIn;
+		maxBytes = maxBytesIn;
+		hits = new AtomicLong();
+		misses = new AtomicLong();
+		stores = new AtomicLong();
+		totalBytes = new AtomicLong();
+		Files.createDirectories(folder);
+		open();
+	}
+
+	/**
+	 *	Uses a folder for the cache, holding up to DEFAULT_MAX_BYTES.
+	 *	@param folderIn		where the entries are kept
+	 *	@throws IOException	if the folder cannot be made
+	 */
+	public RenderCache(Path folderIn) throws IOException
+	{
+		this(folderIn, DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 *	Deletes the temporary files left over from stores that never
+	 *	finished and adds up the sizes of the entries.
+	 *	@throws IOException	if the folder cannot be listed
+	 */
+	private void open() throws IOException
+	{
+		long stale = System.currentTimeMillis() - STALE_TEMP_MILLIS;
+		long total = 0;
+		try (Stream<Path> paths = Files.list(folder))
+		{
+			for(Path path : (Iterable<Path>)paths::iterator)
+			{
+				String name = path.getFileName().toString();
+				try
+				{
+					if(name.endsWith(SUFFIX))
+						total += Files.size(path);
+					else if(name.startsWith(TEMP_PREFIX) && name.endsWith(TEMP_SUFFIX)
+							&& Files.getLastModifiedTime(path).toMillis() < stale)
+						Files.deleteIfExists(path);
+				}
+				catch(IOException e)
+				{
+					// Deleted by another renderer since it was listed
+				}
+			}
+		}
+		totalBytes.set(total);
+	}
+
+	/**
+	 *	Finds the key of a file as it is now, reading it to hash it.
+	 *	@param file			the HTML file
+	 *	@return				the key of the file
+	 *	@throws IOException	if the file cannot be read
+	 */
+	public Key keyOf(Path file) throws IOException
+	{
+		CRC32C crc = new CRC32C();
+		long size = 0;
+		long modified = 0;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			size = channel.size();
+			modified = Files.getLastModifiedTime(file).toMillis();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER);
+			while(channel.read(buffer) != -1)
+			{
+				buffer.flip();
+				crc.update(buffer);
+				buffer.clear();
+			}
+		}
+		return new Key(file.toAbsolutePath().normalize().toString(), size, modified,
+					   (int)crc.getValue());
+	}
+
+	/**
+	 *	Reads the stored display list of a file. An entry that does not
+	 *	match the key or is damaged is deleted, as the file will be
+	 *	rendered again.
+	 *	@param key			the key of the file as it is now
+	 *	@return				the display list of the document, or null if
+	 *						there is no entry that can be used
+	 */
+	public DisplayList load(Key key)
+	{
+		Path entry = entryFor(key);
+		DisplayList list = null;
+		try
+		{
+			byte [] stored = Files.readAllBytes(entry);
+			list = decode(stored, key);
+			if(list == null)
+			{
+				if(Files.deleteIfExists(entry))
+					totalBytes.addAndGet(-stored.length);
+			}
+			else
+				Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+		}
+		catch(IOException e)
+		{
+			// No entry, or it was evicted while it was read; a list that
+			// was read is still good
+		}
+		(list == null ? misses : hits).incrementAndGet();
+		return list;
+	}
+
+	/**
+	 *	Stores the display list of a file, then deletes the entries used
+	 *	longest ago if the cache is over its size. A failure only means
+	 *	the file is rendered again next time, so it is not thrown.
+	 *	@param key			the key of the file when it was rendered
+	 *	@param list			the display list of the document
+	 *	@return				true if the entry was written
+	 */
+	public boolean store(Key key, DisplayList list)
+	{
+		Path entry = entryFor(key);
+		Path temp = null;
+		try
+		{
+			byte [] encoded = encode(key, list);
+			temp = Files.createTempFile(folder, TEMP_PREFIX, TEMP_SUFFIX);
+			Files.write(temp, encoded);
+			long replaced = 0;
+			try
+			{
+				replaced = Files.size(entry);
+			}
+			catch(IOException e)
+			{
+				// No entry for the file yet
+			}
+			Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING,
+					   StandardCopyOption.ATOMIC_MOVE);
+			stores.incrementAndGet();
+			if(totalBytes.addAndGet(encoded.length - replaced) > maxBytes)
+				evict();
+			return true;
+		}
+		catch(IOException e)
+		{
+			try
+			{
+				if(temp != null)
+					Files.deleteIfExists(temp);
+			}
+			catch(IOException ignored)
+			{
+			}
+			return false;
+		}
+	}
+
+	/**
+	 *	Deletes the entries used longest ago until the rest take a tenth
+	 *	less than maxBytes, then keeps the size of the rest as the count.
+	 *	@throws IOException	if the folder cannot be listed
+	 */
+	private synchronized void evict() throws IOException
+	{
+		// Another store may have evicted while this one waited
+		if(totalBytes.get() <= maxBytes)
+			return;
+
+		List<Path> entries = new ArrayList<Path>();
+		try (Stream<Path> paths = Files.list(folder))
+		{
+			paths.filter(path -> path.getFileName().toString().endsWith(SUFFIX))
+				 .forEach(entries::add);
+		}
+
+		// Newest first, so the oldest are the ones past the limit
+		long [] times = new long[entries.size()];
+		long [] sizes = new long[entries.size()];
+		Integer [] order = new Integer[entries.size()];
+		for(int k = 0; k < entries.size(); k++)
+		{
+			order[k] = k;
+			try
+			{
+				times[k] = Files.getLastModifiedTime(entries.get(k)).toMillis();
+				sizes[k] = Files.size(entries.get(k));
+			}
+			catch(IOException e)
+			{
+				// Deleted by another renderer since it was listed
+				times[k] = Long.MIN_VALUE;
+				sizes[k] = 0;
+			}
+		}
+		Arrays.sort(order, (a, b) -> Long.compare(times[b], times[a]));
+
+		long keep = maxBytes - maxBytes / 10;
+		long total = 0;
+		long kept = 0;
+		for(int k = 0; k < order.length; k++)
+		{
+			total += sizes[order[k]];
+			if(total > keep)
+				Files.deleteIfExists(entries.get(order[k]));
+			else
+				kept = total;
+		}
+		totalBytes.set(kept);
+	}
+
+	/**
+	 *	@return				the entry of a file, named by a hash of its path
+	 */
+	private Path entryFor(Key key)
+	{
+		try
+		{
+			byte [] digest = MessageDigest.getInstance("SHA-1")
+										  .digest(key.path.getBytes(StandardCharsets.UTF_8));
+			StringBuilder name = new StringBuilder();
+			for(int k = 0; k < digest.length; k++)
+				name.append(String.format("%02x", digest[k] & 0xff));
+			return folder.resolve(name.append(SUFFIX).toString());
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			// Every Java platform has SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 *	Writes the key and the display list of a document as the bytes of
+	 *	an entry, ending with the CRC-32C of all the bytes before it.
+	 */
+	private static byte[] encode(Key key, DisplayList list) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		writeString(out, key.path);
+		out.writeLong(key.size);
+		out.writeLong(key.modified);
+		out.writeInt(key.hash);
+
+		list.write(out);
+		out.flush();
+
+		CRC32C crc = new CRC32C();
+		crc.update(bytes.toByteArray());
+		out.writeInt((int)crc.getValue());
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 *	Reads the display list out of the bytes of an entry.
+	 *	@return				the display list, or null if the entry is
+	 *						damaged or was made from another version of
+	 *						the file
+	 */
+	private static DisplayList decode(byte [] bytes, Key key)
+	{
+		if(bytes.length < 4)
+			return null;
+		CRC32C crc = new CRC32C();
+		crc.update(bytes, 0, bytes.length - 4);
+		int end = bytes.length - 4;
+		int stored = ((bytes[end] & 0xff) << 24) | ((bytes[end + 1] & 0xff) << 16)
+					 | ((bytes[end + 2] & 0xff) << 8) | (bytes[end + 3] & 0xff);
+		if((int)crc.getValue() != stored)
+			return null;
+
+		try
+		{
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, end));
+			if(in.readInt() != MAGIC || in.readInt() != VERSION)
+				return null;
+			if(!readString(in).equals(key.path) || in.readLong() != key.size
+			   || in.readLong() != key.modified || in.readInt() != key.hash)
+				return null;
+
+			return DisplayList.read(in);
+		}
+		catch(IOException | RuntimeException e)
+		{
+			// The CRC matched but the entry does not make sense
+			return null;
+		}
+	}
+
+	/**
+	 *	Writes a String as its length in UTF-8 bytes and the bytes.
+	 */
+	private static void writeString(DataOutputStream out, String text) throws IOException
+	{
+		byte [] bytes = text.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 *	Reads a String written by writeString.
+	 */
+	private static String readString(DataInputStream in) throws IOException
+	{
+		byte [] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**	@return			the number of entries found and used */
+	public long getHits() { return hits.get(); }
+
+	/**	@return			the number of files with no entry that could be used */
+	public long getMisses() { return misses.get(); }
+
+	/**	@return			the number of entries written */
+	public long getStores() { return stores.get(); }
+
+	public String toString()
+	{
+		return "render cache: " + hits.get() + " hits, " + misses.get() + " misses, "
+			   + stores.get() + " stored, " + totalBytes.get() + " bytes";
+	}
+
+	/**
+	 *	What an entry is checked against: the absolute path, size, modified
+	 *	time and CRC-32C of the contents of a file.
+	 */
+	public static final class Key {
+
+		private final String path;		// the absolute path of the file
+		private final long size;		// the number of bytes in the file
+		private final long modified;	// when it was modified, in milliseconds
+		private final int hash;			// the CRC-32C of its bytes
+
+		private Key(String pathIn, long sizeIn, long modifiedIn, int hashIn)
+		{
+			path = pathIn;
+			size = sizeIn;
+			modified = modifiedIn;
+			hash = hashIn;
+		}
+
+		public String toString()
+		{
+			return path + " (" + size + " bytes, modified " + modified
+				   + ", crc " + Integer.toHexString(hash) + ")";
+		}
+	}
+}
@@ -0,0 +1,520 @@
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ *	RenderMetrics
+ *	Counts what the renderer does and how long each phase takes: the
+ *	files and bytes read, line breaks, tokens of each kind, tags of each
+ *	ID, calls to the sink and the nanoseconds spent reading, tokenizing,
+ *	rendering and printing. The counts are for the whole program, from
+ *	every thread, and are read with snapshot.
+ *
+ *	Counting is off unless the program is started with
+ *	-Dhtmlrender.metrics=true. ENABLED is a constant, so when it is off
+ *	the JIT drops the counting code and nothing is timed or counted.
+ *
+ *	Each read, tokenize and render also makes a JFR event, whether or
+ *	not counting is on. The events are only written while a flight
+ *	recording is running, for example with
+ *		java -XX:StartFlightRecording:filename=render.jfr HTMLRender -null page.html
+ *	and are otherwise checked and dropped without being filled in.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public final class RenderMetrics {
+
+	// true if the program counts, set with -Dhtmlrender.metrics=true
+	public static final boolean ENABLED = Boolean.getBoolean("htmlrender.metrics");
+
+	// The phases that are timed
+	public static final int READ = 0;		// opening, mapping and decoding files
+	public static final int TOKENIZE = 1;	// breaking text into tokens
+	public static final int RENDER = 2;		// renderTokens, which includes PRINT
+	public static final int PRINT = 3;		// inside the sink, during RENDER or a flush
+	public static final int PHASE_COUNT = 4;
+
+	private static final String [] PHASE_NAMES = { "read", "tokenize", "render", "print" };
+
+	// number of token kinds, TAG to ENTITY
+	private static final int KIND_COUNT = TokenBuffer.ENTITY + 1;
+	private static final String [] KIND_NAMES = { "tags", "words", "numbers",
+			"punctuation", "pre text", "entities" };
+
+	// number of tag IDs, start and end tags
+	private static final int TAG_COUNT = TagTable.CLOSE * 2;
+
+	private static final String [] OPERATION_NAMES = { "print", "bold", "italic",
+			"h1", "h2", "h3", "h4", "h5", "h6", "pre", "break", "rule", "println" };
+
+	// Where each count is in the counters
+	private static final int FILES = 0;
+	private static final int BYTES = 1;
+	private static final int LINES = 2;
+	private static final int NANOS = 3;							// + phase
+	private static final int TOKENS = NANOS + PHASE_COUNT;			// + kind
+	private static final int TAGS = TOKENS + KIND_COUNT;			// + tag ID
+	private static final int SINK_CALLS = TAGS + TAG_COUNT;		// + operation
+	private static final int COUNTER_COUNT = SINK_CALLS + RenderSink.OPERATION_COUNT;
+
+	private static final AtomicLongArray counters = new AtomicLongArray(COUNTER_COUNT);
+
+	private RenderMetrics()
+	{
+	}
+
+	/**
+	 *	@return				a copy of every count so far
+	 */
+	public static Snapshot snapshot()
+	{
+		long [] values = new long[COUNTER_COUNT];
+		for(int k = 0; k < COUNTER_COUNT; k++)
+			values[k] = counters.get(k);
+		return new Snapshot(values);
+	}
+
+	/**
+	 *	Sets every count back to zero.
+	 */
+	public static void reset()
+	{
+		for(int k = 0; k < COUNTER_COUNT; k++)
+			counters.set(k, 0);
+	}
+
+	/**
+	 *	Puts a sink behind one that counts and times its calls, if
+	 *	counting is on.
+	 *	@param sink			the sink to count
+	 *	@return				the counting sink, or sink itself if counting is off
+	 */
+	public static RenderSink meter(RenderSink sink)
+	{
+		return ENABLED ? new MeteredSink(sink) : sink;
+	}
+
+	/**
+	 *	Starts timing a file being read.
+	 *	@return				the event to pass to endRead
+	 */
+	static ReadEvent beginRead()
+	{
+		ReadEvent event = new ReadEvent();
+		if(ENABLED)
+			event.startNanos = System.nanoTime();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 *	Ends the timing of a file being read.
+	 *	@param event		the event from beginRead
+	 *	@param fileName		the name of the file
+	 *	@param bytes		the size of the file, or -1 to look it up
+	 */
+	static void endRead(ReadEvent event, String fileName, long bytes)
+	{
+		endRead(event, fileName, bytes, -1);
+	}
+
+	/**
+	 *	Ends the timing of a file that was read a part at a time, in
+	 *	between other work.
+	 *	@param event		the event from beginRead
+	 *	@param fileName		the name of the file
+	 *	@param bytes		the size of the file, or -1 to look it up
+	 *	@param nanos		the time spent reading, or -1 for the time
+	 *						since beginRead
+	 */
+	static void endRead(ReadEvent event, String fileName, long bytes, long nanos)
+	{
+		if(ENABLED || event.shouldCommit())
+			recordRead(event, fileName, bytes, nanos);
+	}
+
+	private static void recordRead(ReadEvent event, String fileName, long bytes, long nanos)
+	{
+		if(bytes == -1)
+			bytes = new File(fileName).length();
+		if(ENABLED)
+		{
+			if(nanos == -1)
+				nanos = System.nanoTime() - event.startNanos;
+			counters.addAndGet(NANOS + READ, nanos);
+			counters.incrementAndGet(FILES);
+			counters.addAndGet(BYTES, bytes);
+		}
+		if(event.shouldCommit())
+		{
+			event.file = fileName;
+			event.bytes = bytes;
+			event.commit();
+		}
+	}
+
+	/**
+	 *	Starts timing text being tokenized.
+	 *	@return				the event to pass to endTokenize
+	 */
+	static TokenizeEvent beginTokenize()
+	{
+		TokenizeEvent event = new TokenizeEvent();
+		if(ENABLED)
+			event.startNanos = System.nanoTime();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 *	Ends the timing of text being tokenized, and counts the text and
+	 *	the tokens found in it.
+	 *	@param event		the event from beginTokenize
+	 *	@param str			the text
+	 *	@param from			index of the first character tokenized
+	 *	@param to			index after the last character tokenized
+	 *	@param tokens		the buffer the tokens were added to
+	 *	@param first		index of the first token that was added
+	 */
+	static void endTokenize(TokenizeEvent event, CharSequence str, int from, int to,
+						TokenBuffer tokens, int first)
+	{
+		if(ENABLED || event.shouldCommit())
+			recordTokenize(event, str, from, to, tokens, first);
+	}
+
+	private static void recordTokenize(TokenizeEvent event, CharSequence str, int from, int to,
+						TokenBuffer tokens, int first)
+	{
+		long nanos = ENABLED ? System.nanoTime() - event.startNanos : 0;
+		int lines = 0;
+		for(int i = from; i < to; i++)
+		{
+			if(str.charAt(i) == '\n')
+				lines++;
+		}
+		int [] kinds = new int[KIND_COUNT];
+		int [] tags = new int[TAG_COUNT];
+		for(int i = first; i < tokens.size(); i++)
+		{
+			kinds[tokens.getKind(i)]++;
+			tags[tokens.getTagId(i)]++;
+		}
+
+		if(ENABLED)
+		{
+			counters.addAndGet(NANOS + TOKENIZE, nanos);
+			counters.addAndGet(LINES, lines);
+			for(int k = 0; k < KIND_COUNT; k++)
+			{
+				if(kinds[k] != 0)
+					counters.addAndGet(TOKENS + k, kinds[k]);
+			}
+			// Tokens that are not tags are all UNKNOWN, only count the tags
+			for(int id = 1; id < TAG_COUNT; id++)
+			{
+				if(tags[id] != 0)
+					counters.addAndGet(TAGS + id, tags[id]);
+			}
+		}
+		if(event.shouldCommit())
+		{
+			event.characters = to - from;
+			event.lines = lines;
+			event.tokens = tokens.size() - first;
+			event.tags = kinds[TokenBuffer.TAG];
+			event.words = kinds[TokenBuffer.WORD];
+			event.numbers = kinds[TokenBuffer.NUMBER];
+			event.punctuation = kinds[TokenBuffer.PUNCT];
+			event.preText = kinds[TokenBuffer.PRE_TEXT];
+			event.entities = kinds[TokenBuffer.ENTITY];
+			event.commit();
+		}
+	}
+
+	/**
+	 *	Starts timing tokens being rendered.
+	 *	@return				the event to pass to endRender
+	 */
+	static RenderEvent beginRender()
+	{
+		RenderEvent event = new RenderEvent();
+		if(ENABLED)
+			event.startNanos = System.nanoTime();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 *	Ends the timing of tokens being rendered.
+	 *	@param event		the event from beginRender
+	 *	@param tokens		the number of tokens rendered
+	 */
+	static void endRender(RenderEvent event, int tokens)
+	{
+		if(ENABLED)
+			counters.addAndGet(NANOS + RENDER, System.nanoTime() - event.startNanos);
+		if(event.shouldCommit())
+		{
+			event.tokens = tokens;
+			event.commit();
+		}
+	}
+
+	/**
+	 *	A copy of the counts at one moment.
+	 */
+	public static final class Snapshot {
+
+		private final long [] values;	// the counters, in the same slots
+
+		private Snapshot(long [] valuesIn)
+		{
+			values = valuesIn;
+		}
+
+		/**	@return			the number of files read */
+		public long getFiles() { return values[FILES]; }
+
+		/**	@return			the number of bytes in the files read */
+		public long getBytes() { return values[BYTES]; }
+
+		/**	@return			the number of line breaks tokenized */
+		public long getLines() { return values[LINES]; }
+
+		/**
+		 *	@param phase	READ, TOKENIZE, RENDER or PRINT
+		 *	@return			the nanoseconds spent in the phase
+		 */
+		public long getNanos(int phase) { return values[NANOS + phase]; }
+
+		/**
+		 *	@param kind		a TokenBuffer kind, TAG to ENTITY
+		 *	@return			the number of tokens of the kind
+		 */
+		public long getTokens(int kind) { return values[TOKENS + kind]; }
+
+		/**	@return			the number of tokens of every kind */
+		public long getTokens() { return sum(TOKENS, KIND_COUNT); }
+
+		/**
+		 *	@param tagId	a TagTable ID, with or without CLOSE
+		 *	@return			the number of tags with the ID, or of unknown
+		 *					tags, comments and declarations for UNKNOWN
+		 */
+		public long getTags(int tagId)
+		{
+			if(tagId == TagTable.UNKNOWN)
+				return values[TOKENS + TokenBuffer.TAG] - sum(TAGS + 1, TAG_COUNT - 1);
+			return values[TAGS + tagId];
+		}
+
+		/**
+		 *	@param operation	the number of a RenderSink operation
+		 *	@return				the number of calls of it that reached the sink
+		 */
+		public long getSinkCalls(int operation) { return values[SINK_CALLS + operation]; }
+
+		/**	@return			the number of calls that reached the sink */
+		public long getSinkCalls() { return sum(SINK_CALLS, RenderSink.OPERATION_COUNT); }
+
+		private long sum(int start, int count)
+		{
+			long total = 0;
+			for(int k = start; k < start + count; k++)
+				total += values[k];
+			return total;
+		}
+
+		public String toString()
+		{
+			StringBuilder text = new StringBuilder();
+			text.append("files: ").append(getFiles()).append(", bytes: ").append(getBytes())
+				.append(", lines: ").append(getLines());
+
+			text.append("\ntokens: ").append(getTokens()).append(" (");
+			for(int kind = 0; kind < KIND_COUNT; kind++)
+				text.append(kind == 0 ? "" : ", ").append(KIND_NAMES[kind]).append(' ')
+					.append(getTokens(kind));
+
+			text.append(")\ntags:");
+			for(int id = 1; id < TAG_COUNT; id++)
+			{
+				if(getTags(id) != 0)
+					text.append(' ').append((id & TagTable.CLOSE) != 0 ? "/" : "")
+						.append(TagTable.name(id)).append(' ').append(getTags(id));
+			}
+			text.append(" other ").append(getTags(TagTable.UNKNOWN));
+
+			text.append("\nsink calls: ").append(getSinkCalls()).append(" (");
+			for(int op = 0; op < RenderSink.OPERATION_COUNT; op++)
+				text.append(op == 0 ? "" : ", ").append(OPERATION_NAMES[op]).append(' ')
+					.append(getSinkCalls(op));
+
+			text.append(")\ntime:");
+			for(int phase = 0; phase < PHASE_COUNT; phase++)
+				text.append(phase == 0 ? " " : ", ").append(PHASE_NAMES[phase])
+					.append(String.format(" %.3f ms", getNanos(phase) / 1e6));
+			return text.toString();
+		}
+	}
+
+	/**
+	 *	Counts and times the calls made to the sink behind it.
+	 */
+	private static final class MeteredSink implements RenderSink {
+
+		private final RenderSink sink;		// where the calls are sent
+
+		MeteredSink(RenderSink sinkIn)
+		{
+			sink = sinkIn;
+		}
+
+		public void print(String text) { printText(PRINT, text, 0, text.length()); }
+
+		public void printBold(String text) { printText(PRINT_BOLD, text, 0, text.length()); }
+
+		public void printItalic(String text) { printText(PRINT_ITALIC, text, 0, text.length()); }
+
+		public void printHeading1(String text) { printText(PRINT_HEADING1, text, 0, text.length()); }
+
+		public void printHeading2(String text) { printText(PRINT_HEADING2, text, 0, text.length()); }
+
+		public void printHeading3(String text) { printText(PRINT_HEADING3, text, 0, text.length()); }
+
+		public void printHeading4(String text) { printText(PRINT_HEADING4, text, 0, text.length()); }
+
+		public void printHeading5(String text) { printText(PRINT_HEADING5, text, 0, text.length()); }
+
+		public void printHeading6(String text) { printText(PRINT_HEADING6, text, 0, text.length()); }
+
+		public void printPreformattedText(String text) { printText(PRINT_PREFORMATTED, text, 0, text.length()); }
+
+		public void printText(int operation, CharSequence text, int start, int end)
+		{
+			long began = System.nanoTime();
+			sink.printText(operation, text, start, end);
+			counted(operation, began);
+		}
+
+		public void printBreak()
+		{
+			long began = System.nanoTime();
+			sink.printBreak();
+			counted(PRINT_BREAK, began);
+		}
+
+		public void printHorizontalRule()
+		{
+			long began = System.nanoTime();
+			sink.printHorizontalRule();
+			counted(PRINT_HORIZONTAL_RULE, began);
+		}
+
+		public void println()
+		{
+			long began = System.nanoTime();
+			sink.println();
+			counted(PRINTLN, began);
+		}
+
+		public void flush()
+		{
+			long began = System.nanoTime();
+			sink.flush();
+			counters.addAndGet(NANOS + RenderMetrics.PRINT, System.nanoTime() - began);
+		}
+
+		/**
+		 *	Counts one call and the time it took.
+		 *	@param operation	the number of the operation
+		 *	@param began		System.nanoTime before the call
+		 */
+		private void counted(int operation, long began)
+		{
+			counters.addAndGet(NANOS + RenderMetrics.PRINT, System.nanoTime() - began);
+			counters.incrementAndGet(SINK_CALLS + operation);
+		}
+	}
+
+	/**
+	 *	A file was opened and read into memory, or opened to be streamed.
+	 */
+	@Name("htmlrender.Read")
+	@Label("Read HTML File")
+	@Category("HTML Render")
+	@StackTrace(false)
+	static final class ReadEvent extends Event {
+		@Label("File")
+		String file;
+
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+
+		transient long startNanos;
+	}
+
+	/**
+	 *	A string or window of a document was tokenized.
+	 */
+	@Name("htmlrender.Tokenize")
+	@Label("Tokenize HTML")
+	@Category("HTML Render")
+	@StackTrace(false)
+	static final class TokenizeEvent extends Event {
+		@Label("Characters")
+		int characters;
+
+		@Label("Line Breaks")
+		int lines;
+
+		@Label("Tokens")
+		int tokens;
+
+		@Label("Tags")
+		int tags;
+
+		@Label("Words")
+		int words;
+
+		@Label("Numbers")
+		int numbers;
+
+		@Label("Punctuation")
+		int punctuation;
+
+		@Label("Preformatted Lines")
+		@Description("Tokens of preformatted text, one per line")
+		int preText;
+
+		@Label("Entities")
+		@Description("Character references outside preformatted text")
+		int entities;
+
+		transient long startNanos;
+	}
+
+	/**
+	 *	A buffer of tokens was rendered into the layout.
+	 */
+	@Name("htmlrender.Render")
+	@Label("Render Tokens")
+	@Category("HTML Render")
+	@StackTrace(false)
+	static final class RenderEvent extends Event {
+		@Label("Tokens")
+		int tokens;
+
+		transient long startNanos;
+	}
+}
@@ -0,0 +1,365 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import javax.swing.SwingUtilities;
+
+/**
+ *	RenderPipeline
+ *	Renders an HTML file in three stages that run at the same time, so
+ *	the first screen is printed while the rest of the file is still
+ *	being read. A reader thread reads and tokenizes the file and puts
+ *	each batch of tokens on a bounded queue. The thread that called
+ *	render takes the batches off in order and renders them into a
+ *	DisplayList. Whenever the Swing event thread is free, the list
+ *	filled so far is handed to it and printed into the sink there,
+ *	while rendering goes on into a second list.
+ *
+ *	The queue holds at most queueSize batches, so a reader that gets
+ *	ahead waits instead of filling memory with tokens. The batches and
+ *	the two lists are reused, so the stages make little garbage. A slow
+ *	sink only makes the lists it is handed longer, never holds up the
+ *	reader or the renderer.
+ *
+ *	The time from the start of render to the end of the first print
+ *	that showed anything is kept as the time to first paint.
+ *
+ *	A pipeline renders one file. A render that fails can leave batches
+ *	on the queue and a half rendered page behind, so a second call to
+ *	render is refused; make a new pipeline for each file.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class RenderPipeline {
+
+	// number of batches of tokens that can wait to be rendered
+	public static final int DEFAULT_QUEUE_SIZE = 16;
+
+	// put on the queue after the last batch
+	private static final Batch END = new Batch();
+
+	private final RenderSink sink;		// where the lists are printed, on the event thread
+	private final HTMLRender render;	// renders the batches into filling
+	private final ArrayBlockingQueue<Batch> full;	// batches tokenized, not yet rendered
+	private final ArrayBlockingQueue<Batch> empty;	// batches for the reader to fill
+	private final ArrayBlockingQueue<DisplayList> free;	// the list not being printed
+
+	private DisplayList filling;				// the list being rendered into
+	private volatile Exception readFailure;		// why the reader stopped early, or null
+	private volatile RuntimeException printFailure;	// what the sink threw, or null
+
+	private long startNanos;					// System.nanoTime when render started
+	private volatile long firstPaintNanos;		// time to first paint, -1 until then
+	private volatile long doneNanos;			// time until the last print, -1 until then
+	private long batches;						// batches rendered
+	private boolean used;						// true once render was called
+	private volatile long paints;				// lists printed
+
+	/**
+	 *	Creates a pipeline with DEFAULT_QUEUE_SIZE batches.
+	 *	@param sinkIn		where the output is printed, only ever called
+	 *						on the Swing event thread
+	 */
+	public RenderPipeline(RenderSink sinkIn)
+	{
+		this(sinkIn, DEFAULT_QUEUE_SIZE);
+	}
+
+	/**
+	 *	@param sinkIn		where the output is printed, only ever called
+	 *						on the Swing event thread
+	 *	@param queueSize	number of batches of tokens that can wait to be
+	 *						rendered
+	 */
+	public RenderPipeline(RenderSink sinkIn, int queueSize)
+	{
+		if(queueSize <= 0)
+			throw new IllegalArgumentException("queue size must be positive");
+		sink = sinkIn;
+		render = new HTMLRender(new Handoff());
+		full = new ArrayBlockingQueue<Batch>(queueSize + 1);
+		empty = new ArrayBlockingQueue<Batch>(queueSize);
+		for(int k = 0; k < queueSize; k++)
+			empty.add(new Batch());
+		free = new ArrayBlockingQueue<DisplayList>(1);
+		free.add(new DisplayList());
+		filling = new DisplayList();
+		firstPaintNanos = -1;
+		doneNanos = -1;
+
+		// Starting the event thread loads the toolkit, which takes long
+		// enough to hold up the first paint, so it starts now
+		SwingUtilities.invokeLater(() -> { });
+	}
+
+	/**
+	 *	Renders an HTML file into the sink, returning once all of it has
+	 *	been printed. Can only be called once.
+	 *	@param fileName		the HTML file
+	 *	@throws IllegalStateException	if the pipeline already rendered
+	 *	@throws IOException	if the file cannot be read, after what was
+	 *						read before the error is printed
+	 *	@throws InterruptedIOException	if the thread is interrupted
+	 */
+	public void render(String fileName) throws IOException
+	{
+		if(used)
+			throw new IllegalStateException("a pipeline renders only one file");
+		used = true;
+		startNanos = System.nanoTime();
+		Thread reader = new Thread(() -> read(fileName), "HTMLRender reader");
+		reader.setDaemon(true);
+		reader.start();
+		try
+		{
+			Batch batch;
+			while((batch = full.take()) != END)
+			{
+				render.renderTokens(batch.tokens);
+				batch.tokens.clear();
+				empty.put(batch);
+				batches++;
+				handOff(false);
+			}
+			render.flush();
+			handOff(true);
+
+			// Wait for the last list to be printed
+			free.put(free.take());
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while rendering " + fileName);
+		}
+		finally
+		{
+			reader.interrupt();
+		}
+		if(printFailure != null)
+			throw printFailure;
+		if(readFailure instanceof IOException)
+			throw (IOException)readFailure;
+		if(readFailure != null)
+			throw (RuntimeException)readFailure;
+	}
+
+	/**
+	 *	Reads and tokenizes the file on the reader thread, putting each
+	 *	chunk of tokens on the queue, then END.
+	 */
+	private void read(String fileName)
+	{
+		HTMLUtilities util = new HTMLUtilities();
+		TokenBuffer tokens = new TokenBuffer();
+		try (Reader input = HTMLReader.open(Paths.get(fileName)))
+		{
+			util.tokenizeStream(input, tokens, this::send);
+		}
+		catch(CancellationException e)
+		{
+			// The renderer stopped, so no one is waiting for END
+			return;
+		}
+		catch(IOException | RuntimeException e)
+		{
+			readFailure = e;
+		}
+		try
+		{
+			full.put(END);
+		}
+		catch(InterruptedException e)
+		{
+			// The renderer stopped
+		}
+	}
+
+	/**
+	 *	Copies a chunk of tokens and their text into an empty batch and
+	 *	puts it on the queue, waiting for a batch to be free.
+	 *	@param chunk		the tokens, only valid until this returns
+	 *	@throws CancellationException	if the reader thread is interrupted
+	 */
+	private void send(TokenBuffer chunk)
+	{
+		try
+		{
+			Batch batch = empty.take();
+			batch.copy(chunk);
+			full.put(batch);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new CancellationException("the renderer stopped");
+		}
+	}
+
+	/**
+	 *	Hands the list rendered so far to the event thread to be printed,
+	 *	if the event thread has finished printing the one before.
+	 *	@param wait			true to wait for the event thread instead of
+	 *						carrying on filling the list
+	 */
+	private void handOff(boolean wait) throws InterruptedException
+	{
+		if(filling.getOperationCount() == 0)
+			return;
+		DisplayList next = wait ? free.take() : free.poll();
+		if(next == null)
+			return;
+		DisplayList list = filling;
+		filling = next;
+		SwingUtilities.invokeLater(() -> paint(list));
+	}
+
+	/**
+	 *	Prints a list into the sink, on the event thread, and gives it
+	 *	back to be filled again. It is given back even if the sink throws
+	 *	an Error, so render is never left waiting for it.
+	 */
+	private void paint(DisplayList list)
+	{
+		try
+		{
+			if(printFailure == null)
+			{
+				list.replay(sink);
+				sink.flush();
+			}
+		}
+		catch(RuntimeException e)
+		{
+			// Thrown again by render, nothing more is printed
+			printFailure = e;
+		}
+		catch(Error e)
+		{
+			printFailure = new IllegalStateException("the sink failed", e);
+			throw e;
+		}
+		finally
+		{
+			long now = System.nanoTime() - startNanos;
+			if(firstPaintNanos == -1)
+				firstPaintNanos = now;
+			doneNanos = now;
+			paints++;
+			list.clear();
+			free.add(list);
+		}
+	}
+
+	/**	@return			nanoseconds from the start of render until the
+	 *					first print finished, or -1 if nothing was printed */
+	public long getFirstPaintNanos() { return firstPaintNanos; }
+
+	/**	@return			nanoseconds from the start of render until the
+	 *					last print finished, or -1 if nothing was printed */
+	public long getDoneNanos() { return doneNanos; }
+
+	/**	@return			the number of batches of tokens rendered */
+	public long getBatches() { return batches; }
+
+	/**	@return			the number of times the event thread printed */
+	public long getPaints() { return paints; }
+
+	/**
+	 *	@return		how the text runs were joined, calls made and saved
+	 */
+	public String getCoalescingStats()
+	{
+		return render.getCoalescingStats();
+	}
+
+	public String toString()
+	{
+		if(firstPaintNanos == -1)
+			return "pipeline: nothing painted, " + batches + " batches";
+		return String.format("pipeline: first paint %.3f ms, done %.3f ms, %d batches, %d paints",
+							 firstPaintNanos / 1e6, doneNanos / 1e6, batches, paints);
+	}
+
+	/**
+	 *	A chunk of tokens on its way from the reader to the renderer, with
+	 *	its own copy of their text, as a streaming reader reuses its window.
+	 */
+	private static final class Batch {
+
+		private final TokenBuffer tokens;	// the tokens
+		private char [] text;				// the text of the tokens
+
+		Batch()
+		{
+			tokens = new TokenBuffer();
+			text = new char[0];
+		}
+
+		/**
+		 *	Makes the batch a copy of a chunk that has tokens. The tokens
+		 *	are in order, so their text is one range of the source.
+		 */
+		void copy(TokenBuffer chunk)
+		{
+			CharSequence source = chunk.getSource();
+			int first = chunk.getStart(0);
+			int last = chunk.getEnd(chunk.size() - 1);
+			if(text.length < last - first)
+				text = new char[Math.max(text.length * 2, last - first)];
+			for(int k = first; k < last; k++)
+				text[k - first] = source.charAt(k);
+
+			tokens.clear();
+			tokens.setSource(CharBuffer.wrap(text, 0, last - first));
+			tokens.setSourceOffset(chunk.getSourceOffset() + first);
+			for(int k = 0; k < chunk.size(); k++)
+				tokens.add(chunk.getKind(k), chunk.getStart(k) - first, chunk.getEnd(k) - first,
+						   chunk.getTagId(k));
+		}
+	}
+
+	/**
+	 *	Passes what the renderer prints on to the list being filled, which
+	 *	changes each time one is handed to the event thread.
+	 */
+	private final class Handoff implements RenderSink {
+
+		public void print(String text) { filling.print(text); }
+
+		public void printBold(String text) { filling.printBold(text); }
+
+		public void printItalic(String text) { filling.printItalic(text); }
+
+		public void printHeading1(String text) { filling.printHeading1(text); }
+
+		public void printHeading2(String text) { filling.printHeading2(text); }
+
+		public void printHeading3(String text) { filling.printHeading3(text); }
+
+		public void printHeading4(String text) { filling.printHeading4(text); }
+
+		public void printHeading5(String text) { filling.printHeading5(text); }
+
+		public void printHeading6(String text) { filling.printHeading6(text); }
+
+		public void printPreformattedText(String text) { filling.printPreformattedText(text); }
+
+		public void printText(int operation, CharSequence text, int start, int end)
+		{
+			filling.printText(operation, text, start, end);
+		}
+
+		public void printBreak() { filling.printBreak(); }
+
+		public void printHorizontalRule() { filling.printHorizontalRule(); }
+
+		public void println() { filling.println(); }
+
+		public void flush() { filling.flush(); }
+	}
+}
@@ -0,0 +1,104 @@
+/**
+ *	RenderSink
+ *	Where HTMLRender sends its output. These are the print operations
+ *	of HtmlPrinter, so the renderer can draw into a window, write text
+ *	to a file or terminal, or just count what it would have printed.
+ *	Each operation also has a number, for sinks that record or count
+ *	them.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public interface RenderSink {
+
+	// Numbers of the operations
+	int PRINT = 0;
+	int PRINT_BOLD = 1;
+	int PRINT_ITALIC = 2;
+	int PRINT_HEADING1 = 3;
+	int PRINT_HEADING2 = 4;
+	int PRINT_HEADING3 = 5;
+	int PRINT_HEADING4 = 6;
+	int PRINT_HEADING5 = 7;
+	int PRINT_HEADING6 = 8;
+	int PRINT_PREFORMATTED = 9;
+	int PRINT_BREAK = 10;
+	int PRINT_HORIZONTAL_RULE = 11;
+	int PRINTLN = 12;
+	int OPERATION_COUNT = 13;	// number of different operations
+
+	/**	@param text		text to print in the normal style */
+	void print(String text);
+
+	/**	@param text		text to print in bold */
+	void printBold(String text);
+
+	/**	@param text		text to print in italics */
+	void printItalic(String text);
+
+	/**	@param text		text to print in the heading 1 style */
+	void printHeading1(String text);
+
+	/**	@param text		text to print in the heading 2 style */
+	void printHeading2(String text);
+
+	/**	@param text		text to print in the heading 3 style */
+	void printHeading3(String text);
+
+	/**	@param text		text to print in the heading 4 style */
+	void printHeading4(String text);
+
+	/**	@param text		text to print in the heading 5 style */
+	void printHeading5(String text);
+
+	/**	@param text		text to print in the heading 6 style */
+	void printHeading6(String text);
+
+	/**	@param text		text to print as is, in a fixed width font */
+	void printPreformattedText(String text);
+
+	/**	Prints a line break. */
+	void printBreak();
+
+	/**	Prints a horizontal rule. */
+	void printHorizontalRule();
+
+	/**	Ends the current line. */
+	void println();
+
+	/**
+	 *	Prints part of some text with one of the text operations, PRINT
+	 *	to PRINT_PREFORMATTED. Sinks that can use the characters without
+	 *	making a String of them first should override this.
+	 *	@param operation	the number of the operation
+	 *	@param text			the text the part is in
+	 *	@param start		index of the first character to print
+	 *	@param end			index after the last character to print
+	 */
+	default void printText(int operation, CharSequence text, int start, int end)
+	{
+		String value = text.subSequence(start, end).toString();
+		switch(operation)
+		{
+			case PRINT: print(value); break;
+			case PRINT_BOLD: printBold(value); break;
+			case PRINT_ITALIC: printItalic(value); break;
+			case PRINT_HEADING1: printHeading1(value); break;
+			case PRINT_HEADING2: printHeading2(value); break;
+			case PRINT_HEADING3: printHeading3(value); break;
+			case PRINT_HEADING4: printHeading4(value); break;
+			case PRINT_HEADING5: printHeading5(value); break;
+			case PRINT_HEADING6: printHeading6(value); break;
+			case PRINT_PREFORMATTED: printPreformattedText(value); break;
+			default: throw new IllegalArgumentException("not a text operation: " + operation);
+		}
+	}
+
+	/**
+	 *	Writes out anything the sink is holding. Sinks that do not buffer
+	 *	do nothing.
+	 */
+	default void flush()
+	{
+	}
+}
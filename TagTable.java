@@ -0,0 +1,164 @@
+/**
+ *	TagTable
+ *	The symbol table of the HTML tags the renderer knows about. Each
+ *	tag name has a small integer ID, and an end tag is its ID with the
+ *	CLOSE bit set, so "<b>" is B and "</b>" is B | CLOSE. Unknown tags,
+ *	comments and declarations are UNKNOWN.
+ *
+ *	Names are found with a perfect hash of their length and first and
+ *	last letters, folded to lower case. The table size is picked when
+ *	the class loads so no two names share a slot, so a lookup is one
+ *	hash and one compare no matter how many tags are supported.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class TagTable {
+
+	// IDs of the tags
+	public static final int UNKNOWN = 0;
+	public static final int HTML = 1;
+	public static final int BODY = 2;
+	public static final int P = 3;
+	public static final int B = 4;
+	public static final int I = 5;
+	public static final int Q = 6;
+	public static final int BR = 7;
+	public static final int HR = 8;
+	public static final int PRE = 9;
+	public static final int H1 = 10;
+	public static final int H2 = 11;
+	public static final int H3 = 12;
+	public static final int H4 = 13;
+	public static final int H5 = 14;
+	public static final int H6 = 15;
+
+	// set on the ID of an end tag
+	public static final int CLOSE = 32;
+
+	// the name of each tag, indexed by ID
+	private static final String [] NAMES = { null, "html", "body", "p", "b", "i",
+			"q", "br", "hr", "pre", "h1", "h2", "h3", "h4", "h5", "h6" };
+
+	// the ID in each slot of the hash table, UNKNOWN if the slot is empty
+	private static final int [] SLOTS = buildSlots();
+
+	/**
+	 *	Finds the ID of a tag in the text. Attributes after the name are
+	 *	allowed, so "<p class=x>" is P.
+	 *	@param str			the text the tag is in
+	 *	@param start		index of the '<' of the tag
+	 *	@param end			index after the '>' of the tag
+	 *	@return				the ID of the tag, with CLOSE set for an end tag,
+	 *						or UNKNOWN
+	 */
+	public static int lookup(CharSequence str, int start, int end)
+	{
+		int nameStart = start + 1;
+		int close = 0;
+		if(nameStart < end && str.charAt(nameStart) == '/')
+		{
+			nameStart++;
+			close = CLOSE;
+		}
+
+		// The name runs to the first character that is not a letter or digit
+		int nameEnd = nameStart;
+		while(nameEnd < end && isNameChar(str.charAt(nameEnd)))
+			nameEnd++;
+		if(nameEnd == nameStart || nameEnd == end)
+			return UNKNOWN;
+
+		// Only a space, '/' or '>' may follow the name
+		char after = str.charAt(nameEnd);
+		if(after != '>' && after != '/' && !Character.isWhitespace(after))
+			return UNKNOWN;
+
+		int id = SLOTS[hash(str, nameStart, nameEnd, SLOTS.length)];
+		if(id == UNKNOWN || !sameName(NAMES[id], str, nameStart, nameEnd))
+			return UNKNOWN;
+		return id | close;
+	}
+
+	/**
+	 *	@param id			ID of a tag, with or without CLOSE
+	 *	@return				the name of the tag, or null if it is UNKNOWN
+	 */
+	public static String name(int id)
+	{
+		return NAMES[id & ~CLOSE];
+	}
+
+	/**
+	 *	Picks the smallest table size where every name has its own slot,
+	 *	then fills in the slots.
+	 *	@return				the ID in each slot
+	 */
+	private static int[] buildSlots()
+	{
+		for(int size = NAMES.length; ; size++)
+		{
+			int [] slots = new int[size];
+			boolean perfect = true;
+			for(int id = 1; id < NAMES.length && perfect; id++)
+			{
+				String name = NAMES[id];
+				int slot = hash(name, 0, name.length(), size);
+				if(slots[slot] != UNKNOWN)
+					perfect = false;
+				slots[slot] = id;
+			}
+			if(perfect)
+				return slots;
+		}
+	}
+
+	/**
+	 *	Hashes a tag name by its length and its first and last letters.
+	 *	@param str			the text the name is in
+	 *	@param start		index of the first character of the name
+	 *	@param end			index after the last character of the name
+	 *	@param size			the size of the table
+	 *	@return				the slot of the name
+	 */
+	private static int hash(CharSequence str, int start, int end, int size)
+	{
+		int first = lower(str.charAt(start));
+		int last = lower(str.charAt(end - 1));
+		return ((end - start) * 31 + first * 7 + last) % size;
+	}
+
+	/**
+	 *	Compares a name from the table to a name in the text, ignoring case.
+	 *	@return				true if the names are the same
+	 */
+	private static boolean sameName(String name, CharSequence str, int start, int end)
+	{
+		if(name.length() != end - start)
+			return false;
+		for(int k = 0; k < name.length(); k++)
+		{
+			if(lower(str.charAt(start + k)) != name.charAt(k))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 *	@return				true if the character can be part of a tag name
+	 */
+	private static boolean isNameChar(char c)
+	{
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+	}
+
+	/**
+	 *	@return				the character in lower case, for ASCII letters
+	 */
+	private static char lower(char c)
+	{
+		if(c >= 'A' && c <= 'Z')
+			return (char)(c + ('a' - 'A'));
+		return c;
+	}
+}
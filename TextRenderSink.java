@@ -0,0 +1,174 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ *	TextRenderSink
+ *	A sink that writes the renderer's output as plain text, with no
+ *	window, so it can run on a machine without a display. Text is
+ *	gathered in a character buffer, encoded into a byte buffer, and
+ *	written to an NIO channel only when the buffer is full or the sink
+ *	is flushed. In ANSI mode bold, italic and headings are shown with
+ *	terminal escape codes.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class TextRenderSink implements RenderSink {
+
+	// ANSI escape codes
+	private static final String ANSI_BOLD = "\u001b[1m";
+	private static final String ANSI_ITALIC = "\u001b[3m";
+	private static final String ANSI_UNDERLINE = "\u001b[4m";
+	private static final String ANSI_RESET = "\u001b[0m";
+
+	private static final int BUFFER_SIZE = 8192;	// characters held before writing
+	private static final int RULE_WIDTH = 80;		// width of a horizontal rule
+
+	private WritableByteChannel out;	// where the text is written
+	private CharsetEncoder encoder;		// turns the characters into bytes
+	private CharBuffer chars;			// characters not yet encoded
+	private ByteBuffer bytes;			// bytes not yet written
+	private boolean ansi;				// true to use escape codes for styles
+	private boolean lineStart;			// true if nothing is on the current line
+
+	/**
+	 *	Creates a sink that writes UTF-8 text.
+	 *	@param outIn		the channel to write to
+	 *	@param ansiIn		true to show styles with ANSI escape codes
+	 */
+	public TextRenderSink(WritableByteChannel outIn, boolean ansiIn)
+	{
+		this(outIn, StandardCharsets.UTF_8, ansiIn);
+	}
+
+	/**
+	 *	@param outIn		the channel to write to
+	 *	@param charset		the charset to write the text in
+	 *	@param ansiIn		true to show styles with ANSI escape codes
+	 */
+	public TextRenderSink(WritableByteChannel outIn, Charset charset, boolean ansiIn)
+	{
+		out = outIn;
+		encoder = charset.newEncoder()
+						 .onMalformedInput(CodingErrorAction.REPLACE)
+						 .onUnmappableCharacter(CodingErrorAction.REPLACE);
+		chars = CharBuffer.allocate(BUFFER_SIZE);
+		bytes = ByteBuffer.allocate((int)(BUFFER_SIZE * encoder.maxBytesPerChar()));
+		ansi = ansiIn;
+		lineStart = true;
+	}
+
+	public void print(String text) { write(text); }
+
+	public void printBold(String text) { styled(ANSI_BOLD, text); }
+
+	public void printItalic(String text) { styled(ANSI_ITALIC, text); }
+
+	public void printHeading1(String text) { styled(ANSI_BOLD + ANSI_UNDERLINE, text); }
+
+	public void printHeading2(String text) { styled(ANSI_BOLD + ANSI_UNDERLINE, text); }
+
+	public void printHeading3(String text) { styled(ANSI_BOLD, text); }
+
+	public void printHeading4(String text) { styled(ANSI_BOLD, text); }
+
+	public void printHeading5(String text) { styled(ANSI_BOLD, text); }
+
+	public void printHeading6(String text) { styled(ANSI_BOLD, text); }
+
+	public void printPreformattedText(String text) { write(text); }
+
+	public void printBreak() { write("\n"); }
+
+	public void println() { write("\n"); }
+
+	/**
+	 *	Prints a line of dashes on a line of its own.
+	 */
+	public void printHorizontalRule()
+	{
+		if(!lineStart)
+			write("\n");
+		for(int i = 0; i < RULE_WIDTH; i++)
+			write("-");
+		write("\n");
+	}
+
+	/**
+	 *	Writes text in a style, with escape codes around it in ANSI mode.
+	 *	@param code			the escape code of the style
+	 *	@param text			the text to write
+	 */
+	private void styled(String code, String text)
+	{
+		if(ansi)
+			write(code);
+		write(text);
+		if(ansi)
+			write(ANSI_RESET);
+	}
+
+	/**
+	 *	Adds text to the character buffer, emptying it to the channel
+	 *	whenever it fills up.
+	 *	@param text			the text to write
+	 */
+	private void write(String text)
+	{
+		int from = 0;
+		while(from < text.length())
+		{
+			if(!chars.hasRemaining())
+				drain();
+			int count = Math.min(chars.remaining(), text.length() - from);
+			chars.put(text, from, from + count);
+			from += count;
+		}
+		if(text.length() > 0)
+			lineStart = text.charAt(text.length() - 1) == '\n';
+	}
+
+	/**
+	 *	Encodes the buffered characters and writes the bytes to the
+	 *	channel. Half of a surrogate pair is kept for the next time.
+	 */
+	private void drain()
+	{
+		chars.flip();
+		try
+		{
+			while(chars.hasRemaining())
+			{
+				encoder.encode(chars, bytes, false);
+				bytes.flip();
+				while(bytes.hasRemaining())
+					out.write(bytes);
+				bytes.clear();
+				
+				// Only the first half of a surrogate pair is left
+				if(chars.remaining() == 1 && Character.isHighSurrogate(chars.get(chars.position())))
+					break;
+			}
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		chars.compact();
+	}
+
+	/**
+	 *	Writes out everything in the buffers.
+	 */
+	public void flush()
+	{
+		drain();
+	}
+}
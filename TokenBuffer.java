@@ -0,0 +1,270 @@
+/**
+ *	TokenBuffer
+ *	A growable list of tokens produced by HTMLUtilities. Each token is
+ *	stored as a kind and a start/end span into the source text, kept in
+ *	parallel int arrays, so tokenizing does not create any Strings. The
+ *	text of a token is only made into a String when it is asked for.
+ *	Tags also keep their TagTable ID, found while scanning. The span of
+ *	an entity is its character reference, like "&amp;", and the character
+ *	it stands for is read from the span by EntityTable when asked for.
+ *
+ *	The arrays start small and double whenever they fill up, so the cost
+ *	of tokenizing a line is proportional to the number of tokens in it
+ *	rather than a fixed maximum. A buffer can be cleared and handed back
+ *	to the tokenizer so repeated tokenizing reuses the same storage.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class TokenBuffer {
+
+	// Kinds of tokens
+	public static final int TAG = 0;		// an HTML tag, like <p> or </b>
+	public static final int WORD = 1;		// letters, may contain hyphens
+	public static final int NUMBER = 2;		// digits with an optional -, e and .
+	public static final int PUNCT = 3;		// a single punctuation character
+	public static final int PRE_TEXT = 4;	// preformatted text, as is
+	public static final int ENTITY = 5;		// a character reference, like &amp; or &#38;
+
+	private final int DEFAULT_CAPACITY = 16;	// starting size of the arrays
+
+	private CharSequence source;	// the text the spans point into
+	private long sourceOffset;		// where the source starts in the whole input
+	private int [] kinds;			// kind of each token
+	private int [] starts;			// index of the first character of each token
+	private int [] ends;			// index after the last character of each token
+	private int [] tagIds;			// TagTable ID of each tag, UNKNOWN otherwise
+	private int size;				// number of tokens currently stored
+
+	public TokenBuffer()
+	{
+		kinds = new int[DEFAULT_CAPACITY];
+		starts = new int[DEFAULT_CAPACITY];
+		ends = new int[DEFAULT_CAPACITY];
+		tagIds = new int[DEFAULT_CAPACITY];
+		size = 0;
+		source = null;
+		sourceOffset = 0;
+	}
+
+	/**
+	 *	Sets the text that the token spans point into. A buffer can only
+	 *	refer to one source at a time, so it has to be cleared before
+	 *	tokens from a different source are added.
+	 *	@param sourceIn		the text being tokenized
+	 */
+	public void setSource(CharSequence sourceIn)
+	{
+		if(size > 0 && source != sourceIn)
+			throw new IllegalArgumentException("buffer holds tokens of another source, clear it first");
+		source = sourceIn;
+	}
+
+	/**
+	 *	@return				the text that the token spans point into
+	 */
+	public CharSequence getSource()
+	{
+		return source;
+	}
+
+	/**
+	 *	Sets where the source starts in the whole input, for sources that
+	 *	are a window onto a longer stream of text. Zero if the source is
+	 *	the whole input.
+	 *	@param offset		index in the input of the first character of the source
+	 */
+	public void setSourceOffset(long offset)
+	{
+		sourceOffset = offset;
+	}
+
+	/**
+	 *	@return				index in the input of the first character of the
+	 *						source, add it to a start or end to get the index
+	 *						in the whole input
+	 */
+	public long getSourceOffset()
+	{
+		return sourceOffset;
+	}
+
+	/**
+	 *	Adds a token to the end of the buffer, growing the arrays if
+	 *	they are full.
+	 *	@param kind			the kind of token (TAG, WORD, NUMBER, PUNCT, PRE_TEXT, ENTITY)
+	 *	@param start		index of the first character of the token
+	 *	@param end			index after the last character of the token
+	 */
+	public void add(int kind, int start, int end)
+	{
+		add(kind, start, end, TagTable.UNKNOWN);
+	}
+
+	/**
+	 *	Adds a token with its tag ID to the end of the buffer, growing
+	 *	the arrays if they are full.
+	 *	@param kind			the kind of token (TAG, WORD, NUMBER, PUNCT, PRE_TEXT, ENTITY)
+	 *	@param start		index of the first character of the token
+	 *	@param end			index after the last character of the token
+	 *	@param tagId		the TagTable ID of a tag
+	 */
+	public void add(int kind, int start, int end, int tagId)
+	{
+		if(size == kinds.length)
+		{
+			int newLength = kinds.length * 2;
+			kinds = java.util.Arrays.copyOf(kinds, newLength);
+			starts = java.util.Arrays.copyOf(starts, newLength);
+			ends = java.util.Arrays.copyOf(ends, newLength);
+			tagIds = java.util.Arrays.copyOf(tagIds, newLength);
+		}
+		kinds[size] = kind;
+		starts[size] = start;
+		ends[size] = end;
+		tagIds[size] = tagId;
+		size++;
+	}
+
+	/**
+	 *	@param index		index of the token
+	 *	@return				the kind of the token
+	 */
+	public int getKind(int index)
+	{
+		checkIndex(index);
+		return kinds[index];
+	}
+
+	/**
+	 *	@param index		index of the token
+	 *	@return				the TagTable ID of a tag, with CLOSE set for an
+	 *						end tag, or UNKNOWN if it is not a known tag
+	 */
+	public int getTagId(int index)
+	{
+		checkIndex(index);
+		return tagIds[index];
+	}
+
+	/**
+	 *	@param index		index of the token
+	 *	@return				index of the first character of the token in the source
+	 */
+	public int getStart(int index)
+	{
+		checkIndex(index);
+		return starts[index];
+	}
+
+	/**
+	 *	@param index		index of the token
+	 *	@return				index after the last character of the token in the source
+	 */
+	public int getEnd(int index)
+	{
+		checkIndex(index);
+		return ends[index];
+	}
+
+	/**
+	 *	Finds the character an entity stands for from its span, without
+	 *	making any objects.
+	 *	@param index		index of the token
+	 *	@return				the code point of the character, or -1 if the
+	 *						token is not an entity
+	 */
+	public int getCodePoint(int index)
+	{
+		checkIndex(index);
+		if(kinds[index] != ENTITY)
+			return -1;
+		return EntityTable.decode(source, starts[index], ends[index]);
+	}
+
+	/**
+	 *	@param index		index of the token
+	 *	@return				the number of characters in the token
+	 */
+	public int length(int index)
+	{
+		checkIndex(index);
+		return ends[index] - starts[index];
+	}
+
+	/**
+	 *	Makes a String of the token's text. This is the only place a
+	 *	String is created, so only call it when the text is needed.
+	 *	@param index		index of the token
+	 *	@return				the text of the token
+	 */
+	public String getText(int index)
+	{
+		checkIndex(index);
+		return source.subSequence(starts[index], ends[index]).toString();
+	}
+
+	/**
+	 *	Compares the token's text to a String, ignoring case, without
+	 *	creating a String for the token.
+	 *	@param index		index of the token
+	 *	@param text			the text to compare to
+	 *	@return				true if the token's text matches
+	 */
+	public boolean equalsIgnoreCase(int index, String text)
+	{
+		checkIndex(index);
+		int start = starts[index];
+		if(ends[index] - start != text.length())
+			return false;
+		for(int k = 0; k < text.length(); k++)
+		{
+			char a = source.charAt(start + k);
+			char b = text.charAt(k);
+			if(a != b && Character.toUpperCase(a) != Character.toUpperCase(b)
+			   && Character.toLowerCase(a) != Character.toLowerCase(b))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 *	@return				the number of tokens in the buffer
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 *	Empties the buffer while keeping its storage for reuse.
+	 */
+	public void clear()
+	{
+		size = 0;
+		source = null;
+		sourceOffset = 0;
+	}
+
+	/**
+	 *	@return				an array of the text of every token, exactly the
+	 *						size of the number of tokens
+	 */
+	public String[] toArray()
+	{
+		String [] ans = new String[size];
+		for(int i = 0; i < size; i++)
+			ans[i] = getText(i);
+		return ans;
+	}
+
+	/**
+	 *	Throws an exception if the index is not a token in the buffer.
+	 *	@param index		index of the token
+	 */
+	private void checkIndex(int index)
+	{
+		if(index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("token " + index + " of " + size);
+	}
+}
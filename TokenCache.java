@@ -0,0 +1,308 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *	TokenCache
+ *	Remembers the tokens of lines that were tokenized before, so a line
+ *	seen again, like the header, navigation or footer of a page made
+ *	from a template, costs a hash lookup instead of a scan. A line's
+ *	tokens depend only on its text and the state the tokenizer was in
+ *	before it, so the two together are the key, and the cache keeps the
+ *	spans, kinds and tag IDs of the tokens and the state after the line.
+ *
+ *	The cache holds at most about maxBytes of lines and tokens. When it
+ *	is full the line used longest ago is dropped. It is shared by every
+ *	HTMLUtilities it is given to, from any thread. Give it to one with
+ *	HTMLUtilities.setCache.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class TokenCache {
+
+	// about how many bytes an entry takes besides its text and tokens
+	private static final int ENTRY_BYTES = 160;
+
+	// about how many bytes each token takes in the arrays of an entry
+	private static final int TOKEN_BYTES = 16;
+
+	private final long maxBytes;			// the most bytes the entries may take
+	private final LinkedHashMap<Key, Entry> entries;	// in order of last use
+	private final Key probe;				// the key looked up, reused
+	private long bytes;						// about how many bytes the entries take
+	private long hits;						// lookups that found the line
+	private long misses;					// lookups that did not
+	private long evictions;					// entries dropped to make room
+
+	/**
+	 *	@param maxBytesIn	about how many bytes the cache may hold
+	 */
+	public TokenCache(long maxBytesIn)
+	{
+		if(maxBytesIn < 0)
+			throw new IllegalArgumentException("negative size " + maxBytesIn);
+		maxBytes = maxBytesIn;
+		entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+		probe = new Key();
+		bytes = 0;
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+	}
+
+	/**
+	 *	Looks up the tokens of a line, and marks the line as just used.
+	 *	@param str			the line
+	 *	@param state		the tokenizer state before the line
+	 *	@return				the entry of the line, or null if it is not cached
+	 */
+	synchronized Entry find(CharSequence str, HTMLUtilities.TokenState state)
+	{
+		probe.set(str, state);
+		Entry entry = entries.get(probe);
+		probe.set(null, null);
+		if(entry == null)
+			misses++;
+		else
+			hits++;
+		return entry;
+	}
+
+	/**
+	 *	Adds the tokens of a line, dropping the lines used longest ago if
+	 *	there is no room for it. Lines too big for the whole cache are not
+	 *	added.
+	 *	@param str			the line
+	 *	@param state		the tokenizer state before the line
+	 *	@param tokens		the buffer holding the tokens of the line
+	 *	@param first		index of the first token of the line in the buffer
+	 *	@param exit			the tokenizer state after the line
+	 */
+	synchronized void add(CharSequence str, HTMLUtilities.TokenState state, TokenBuffer tokens,
+						int first, HTMLUtilities.TokenState exit)
+	{
+		Entry entry = new Entry(tokens, first, exit);
+		long size = ENTRY_BYTES + 2L * str.length() + (long)TOKEN_BYTES * entry.size;
+		if(size > maxBytes)
+			return;
+
+		Key key = new Key();
+		key.set(str.toString(), state);
+		entry.bytes = size;
+		entry.cached = true;
+		Entry old = entries.put(key, entry);
+		bytes += size;
+		if(old != null)
+		{
+			bytes -= old.bytes;
+			old.cached = false;
+		}
+		trim();
+	}
+
+	/**
+	 *	Counts the bytes of the Strings of an entry once they are made.
+	 *	@param entry		the entry
+	 *	@param size			about how many bytes the Strings take
+	 */
+	private synchronized void grow(Entry entry, long size)
+	{
+		if(entry.cached)
+		{
+			entry.bytes += size;
+			bytes += size;
+			trim();
+		}
+	}
+
+	/**
+	 *	Drops the entries used longest ago until the cache is under its
+	 *	size.
+	 */
+	private void trim()
+	{
+		Iterator<Map.Entry<Key, Entry>> oldest = entries.entrySet().iterator();
+		while(bytes > maxBytes && oldest.hasNext())
+		{
+			Entry entry = oldest.next().getValue();
+			bytes -= entry.bytes;
+			entry.cached = false;
+			oldest.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 *	Drops every entry. The statistics are kept.
+	 */
+	public synchronized void clear()
+	{
+		for(Entry entry : entries.values())
+			entry.cached = false;
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**	@return			the number of lookups that found the line */
+	public synchronized long getHits() { return hits; }
+
+	/**	@return			the number of lookups that did not find the line */
+	public synchronized long getMisses() { return misses; }
+
+	/**	@return			the number of entries dropped to make room */
+	public synchronized long getEvictions() { return evictions; }
+
+	/**	@return			the number of lines in the cache */
+	public synchronized int getEntries() { return entries.size(); }
+
+	/**	@return			about how many bytes the entries take */
+	public synchronized long getBytes() { return bytes; }
+
+	/**	@return			about how many bytes the cache may hold */
+	public long getMaxBytes() { return maxBytes; }
+
+	public synchronized String toString()
+	{
+		long lookups = hits + misses;
+		return "token cache: " + hits + " hits, " + misses + " misses"
+			   + String.format(" (%.1f%% hit)", lookups == 0 ? 0.0 : 100.0 * hits / lookups)
+			   + ", " + entries.size() + " lines in " + bytes + " of " + maxBytes + " bytes, "
+			   + evictions + " evicted";
+	}
+
+	/**
+	 *	A line and the state before it. The keys in the cache hold a copy
+	 *	of the line, the probe points at the line being looked up.
+	 */
+	private static final class Key {
+
+		private CharSequence text;			// the line
+		private HTMLUtilities.TokenState state;	// the state before it
+		private int hash;					// the hash of both
+
+		/**
+		 *	Points the key at a line.
+		 *	@param textIn		the line
+		 *	@param stateIn		the tokenizer state before it
+		 */
+		void set(CharSequence textIn, HTMLUtilities.TokenState stateIn)
+		{
+			text = textIn;
+			state = stateIn;
+			if(text == null)
+				return;
+
+			// The same hash as String's, which Strings keep once found
+			int h = 0;
+			if(text instanceof String)
+				h = text.hashCode();
+			else
+			{
+				for(int k = 0; k < text.length(); k++)
+					h = 31 * h + text.charAt(k);
+			}
+			hash = h * 3 + state.ordinal();
+		}
+
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		public boolean equals(Object other)
+		{
+			if(!(other instanceof Key))
+				return false;
+			Key key = (Key)other;
+			if(hash != key.hash || state != key.state || text.length() != key.text.length())
+				return false;
+			for(int k = 0; k < text.length(); k++)
+			{
+				if(text.charAt(k) != key.text.charAt(k))
+					return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 *	The tokens of a line and the state after it. The spans are
+	 *	indexes into the line, so they are the same for every copy of it.
+	 */
+	final class Entry {
+
+		private final int size;				// number of tokens
+		private final int [] kinds;			// kind of each token
+		private final int [] starts;		// start of each token in the line
+		private final int [] ends;			// end of each token in the line
+		private final int [] tagIds;		// TagTable ID of each token
+		private final HTMLUtilities.TokenState exit;	// the state after the line
+		private volatile String [] array;	// the text of each token, once asked for
+		private long bytes;					// about how many bytes the entry takes
+		private boolean cached;				// true while the entry is in the cache
+
+		/**
+		 *	Copies the tokens of a line out of a buffer.
+		 *	@param tokens		the buffer
+		 *	@param first		index of the first token of the line
+		 *	@param exitIn		the tokenizer state after the line
+		 */
+		private Entry(TokenBuffer tokens, int first, HTMLUtilities.TokenState exitIn)
+		{
+			size = tokens.size() - first;
+			kinds = new int[size];
+			starts = new int[size];
+			ends = new int[size];
+			tagIds = new int[size];
+			for(int i = 0; i < size; i++)
+			{
+				kinds[i] = tokens.getKind(first + i);
+				starts[i] = tokens.getStart(first + i);
+				ends[i] = tokens.getEnd(first + i);
+				tagIds[i] = tokens.getTagId(first + i);
+			}
+			exit = exitIn;
+		}
+
+		/**
+		 *	Adds the tokens to a buffer whose source is a copy of the line.
+		 *	@param tokens		the buffer
+		 */
+		void addTo(TokenBuffer tokens)
+		{
+			for(int i = 0; i < size; i++)
+				tokens.add(kinds[i], starts[i], ends[i], tagIds[i]);
+		}
+
+		/**
+		 *	Makes the text of each token the first time it is asked for,
+		 *	and keeps it for the next time.
+		 *	@param str			a copy of the line
+		 *	@return				a new array of the text of each token
+		 */
+		String[] toArray(CharSequence str)
+		{
+			String [] texts = array;
+			if(texts == null)
+			{
+				texts = new String[size];
+				long extra = TOKEN_BYTES * size;
+				for(int i = 0; i < size; i++)
+				{
+					texts[i] = str.subSequence(starts[i], ends[i]).toString();
+					extra += 48 + 2 * texts[i].length();
+				}
+				array = texts;
+				grow(this, extra);
+			}
+			return texts.clone();
+		}
+
+		/**	@return			the tokenizer state after the line */
+		HTMLUtilities.TokenState getExit()
+		{
+			return exit;
+		}
+	}
+}
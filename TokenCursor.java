@@ -0,0 +1,303 @@
+/**
+ *	TokenCursor
+ *	Pulls tokens from an HTML document one at a time. Each call to
+ *	next() runs the HTMLUtilities tokenizer only far enough to find
+ *	the next token, so a consumer that stops early never pays for the
+ *	rest of the document. The current token is read through its kind
+ *	span and tag ID, and a String is only made when text() is called.
+ *	skipElement() moves past a whole element without tokenizing it.
+ *
+ *	Example:	TokenCursor cursor = new TokenCursor(document);
+ *				while (cursor.next())
+ *					if (cursor.is("<script>")) cursor.skipElement();
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class TokenCursor {
+
+	// tags that never have an end tag, so there is nothing to skip
+	private static final String [] VOID_TAGS = { "br", "hr", "img", "input", 
+								"meta", "link", "area", "base", "col", "wbr" };
+
+	private HTMLUtilities util;		// the tokenizer and its state
+	private CharSequence doc;		// the document being read
+	private TokenBuffer pending;	// tokens found by the last scan
+	private int index;				// index of the current token in pending
+	private int pos;				// index of the first character not yet scanned
+
+	/**
+	 *	Creates a cursor before the first token of the document.
+	 *	@param docIn		the HTML document
+	 */
+	public TokenCursor(CharSequence docIn)
+	{
+		util = new HTMLUtilities();
+		doc = docIn;
+		pending = new TokenBuffer();
+		index = -1;
+		pos = 0;
+	}
+
+	/**
+	 *	Moves to the next token.
+	 *	@return				true if there is a token, false at the end
+	 */
+	public boolean next()
+	{
+		index++;
+		if(index < pending.size())
+			return true;
+
+		// Scan just far enough to find the next token
+		pending.clear();
+		pending.setSource(doc);
+		index = 0;
+		if(pos < doc.length())
+			pos = util.scan(doc, pos, doc.length(), true, pending, 1);
+		return pending.size() > 0;
+	}
+
+	/**
+	 *	@return				the kind of the current token, one of the
+	 *						TokenBuffer kinds
+	 */
+	public int kind()
+	{
+		checkToken();
+		return pending.getKind(index);
+	}
+
+	/**
+	 *	@return				index of the first character of the current token
+	 */
+	public int start()
+	{
+		checkToken();
+		return pending.getStart(index);
+	}
+
+	/**
+	 *	@return				index after the last character of the current token
+	 */
+	public int end()
+	{
+		checkToken();
+		return pending.getEnd(index);
+	}
+
+	/**
+	 *	@return				the number of characters in the current token
+	 */
+	public int length()
+	{
+		checkToken();
+		return pending.length(index);
+	}
+
+	/**
+	 *	@return				the text of the current token
+	 */
+	public String text()
+	{
+		checkToken();
+		return pending.getText(index);
+	}
+
+	/**
+	 *	@return				the TagTable ID of the current token, with CLOSE
+	 *						set for an end tag, or UNKNOWN
+	 */
+	public int tagId()
+	{
+		checkToken();
+		return pending.getTagId(index);
+	}
+
+	/**
+	 *	Compares the current token to a String, ignoring case, without
+	 *	making a String of the token.
+	 *	@param text			the text to compare to
+	 *	@return				true if the current token's text matches
+	 */
+	public boolean is(String text)
+	{
+		checkToken();
+		return pending.equalsIgnoreCase(index, text);
+	}
+
+	/**
+	 *	If the current token is a start tag, moves past everything inside
+	 *	the element so its end tag becomes the current token. The skipped
+	 *	text is only searched for tags, comments and preformatted blocks,
+	 *	it is not tokenized. If there is no end tag the cursor moves to the
+	 *	end of the document.
+	 *	@return				true if an element was skipped, false if the
+	 *						current token is not a start tag with an end tag
+	 */
+	public boolean skipElement()
+	{
+		checkToken();
+		int tagStart = start();
+		int tagEnd = end();
+		if(kind() != TokenBuffer.TAG || tagEnd - tagStart < 3)
+			return false;
+		char first = doc.charAt(tagStart + 1);
+		if(first == '/' || first == '!' || doc.charAt(tagEnd - 2) == '/')
+			return false;
+		int nameStart = tagStart + 1;
+		int nameEnd = nameEnd(nameStart, tagEnd);
+		if(nameEnd == nameStart || isVoidTag(nameStart, nameEnd))
+			return false;
+
+		int length = doc.length();
+		int depth = 1;		// number of elements with the name still open
+		boolean inPre = util.getState() == HTMLUtilities.TokenState.PREFORMAT;
+		int i = tagEnd;
+		while(i < length)
+		{
+			if(doc.charAt(i) != '<')
+			{
+				i++;
+				continue;
+			}
+
+			// Skip comments as a whole
+			if(!inPre && startsWith(i, "<!--"))
+			{
+				int close = indexOf("-->", i + 4);
+				i = close == -1 ? length : close + 3;
+				continue;
+			}
+
+			int close = indexOf(">", i);
+			int end = close == -1 ? length : close + 1;
+			int id = TagTable.lookup(doc, i, end);
+
+			// Inside preformatted text only its end tag counts
+			if(inPre && id != (TagTable.PRE | TagTable.CLOSE))
+			{
+				i++;
+				continue;
+			}
+			inPre = id == TagTable.PRE;
+			boolean endTag = i + 1 < length && doc.charAt(i + 1) == '/';
+			int otherStart = endTag ? i + 2 : i + 1;
+			int otherEnd = nameEnd(otherStart, end);
+			if(sameName(nameStart, nameEnd, otherStart, otherEnd))
+			{
+				if(endTag)
+					depth--;
+				else if(doc.charAt(end - 2) != '/')
+					depth++;
+
+				// Found the matching end tag, make it the current token
+				if(depth == 0)
+				{
+					pending.clear();
+					pending.setSource(doc);
+					pending.add(TokenBuffer.TAG, i, end, TagTable.lookup(doc, i, end));
+					index = 0;
+					pos = end;
+					util.setState(HTMLUtilities.TokenState.NONE);
+					return true;
+				}
+			}
+			i = end;
+		}
+
+		// No end tag, the element runs to the end of the document
+		pending.clear();
+		index = 0;
+		pos = length;
+		return true;
+	}
+
+	/**
+	 *	Finds where a tag name ends.
+	 *	@param from			index of the first character of the name
+	 *	@param to			index of the end of the tag
+	 *	@return				index after the last character of the name
+	 */
+	private int nameEnd(int from, int to)
+	{
+		int i = from;
+		while(i < to && Character.isLetterOrDigit(doc.charAt(i)))
+			i++;
+		return i;
+	}
+
+	/**
+	 *	Compares two tag names in the document, ignoring case.
+	 *	@return				true if the names are the same
+	 */
+	private boolean sameName(int aStart, int aEnd, int bStart, int bEnd)
+	{
+		if(aEnd - aStart != bEnd - bStart)
+			return false;
+		for(int k = 0; k < aEnd - aStart; k++)
+		{
+			if(Character.toLowerCase(doc.charAt(aStart + k)) 
+			   != Character.toLowerCase(doc.charAt(bStart + k)))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 *	Checks if a tag name is one that never has an end tag.
+	 *	@return				true if the tag has no end tag
+	 */
+	private boolean isVoidTag(int nameStart, int nameEnd)
+	{
+		for(int v = 0; v < VOID_TAGS.length; v++)
+		{
+			String name = VOID_TAGS[v];
+			if(name.length() != nameEnd - nameStart)
+				continue;
+			boolean same = true;
+			for(int k = 0; k < name.length() && same; k++)
+				same = Character.toLowerCase(doc.charAt(nameStart + k)) == name.charAt(k);
+			if(same)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 *	@return				true if the text at the index starts with prefix
+	 */
+	private boolean startsWith(int index, String prefix)
+	{
+		if(index + prefix.length() > doc.length())
+			return false;
+		for(int k = 0; k < prefix.length(); k++)
+		{
+			if(doc.charAt(index + k) != prefix.charAt(k))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 *	@return				index of text in the document, or -1 if not found
+	 */
+	private int indexOf(String text, int from)
+	{
+		for(int i = from; i + text.length() <= doc.length(); i++)
+		{
+			if(startsWith(i, text))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 *	Throws an exception if there is no current token.
+	 */
+	private void checkToken()
+	{
+		if(index < 0 || index >= pending.size())
+			throw new IllegalStateException("no current token");
+	}
+}
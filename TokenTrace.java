@@ -0,0 +1,176 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ *	TokenTrace
+ *	Writes every token it is given as one line of JSON, with the index
+ *	of its first character in the whole input, its kind and its text:
+ *		{"offset":120,"kind":"tag","text":"<p>"}
+ *	The text of an entity is the reference as it is in the input.
+ *	Two traces of the same input can be compared with diff to find where
+ *	the tokens changed. The lines are gathered into blocks in memory and
+ *	written through a BufferedWriter, not a print per token, so tracing
+ *	a large file costs little more than reading it.
+ *
+ *	A trace is a handler for HTMLUtilities.tokenizeDocument and
+ *	tokenizeStream. It can't throw an IOException from accept, so a
+ *	failed write is thrown as an UncheckedIOException.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class TokenTrace implements Consumer<TokenBuffer>, Closeable {
+
+	// how many characters are gathered before they are written
+	private static final int BLOCK_SIZE = 1 << 16;
+
+	// name of each kind of token, indexed by kind
+	private static final String [] KIND_NAMES = { "tag", "word", "number", "punct", "pre", "entity" };
+
+	private static final char [] HEX = "0123456789abcdef".toCharArray();
+
+	private Writer out;				// where the lines are written
+	private boolean closeOut;		// true if closing the trace closes out
+	private StringBuilder block;	// the lines not yet written
+	private char [] chars;			// the block copied out to be written
+	private long tokens;			// number of tokens written
+
+	/**
+	 *	@param outIn		the stream to write the trace to, as UTF-8
+	 *	@param closeOutIn	true if closing the trace should close the stream
+	 */
+	public TokenTrace(OutputStream outIn, boolean closeOutIn)
+	{
+		out = new BufferedWriter(new OutputStreamWriter(outIn, StandardCharsets.UTF_8), BLOCK_SIZE);
+		closeOut = closeOutIn;
+		block = new StringBuilder(BLOCK_SIZE + 256);
+		chars = new char[0];
+		tokens = 0;
+	}
+
+	/**
+	 *	Opens a trace to a file, or to standard output if the name is "-".
+	 *	@param fileName		name of the file to write
+	 *	@return				the trace
+	 *	@throws IOException	if the file cannot be created
+	 */
+	public static TokenTrace open(String fileName) throws IOException
+	{
+		if(fileName.equals("-"))
+			return new TokenTrace(System.out, false);
+		return new TokenTrace(new FileOutputStream(fileName), true);
+	}
+
+	/**
+	 *	Writes a line for every token in the buffer.
+	 *	@param buffer		the tokens
+	 *	@throws UncheckedIOException	if the trace cannot be written
+	 */
+	public void accept(TokenBuffer buffer)
+	{
+		CharSequence source = buffer.getSource();
+		long offset = buffer.getSourceOffset();
+		for(int i = 0; i < buffer.size(); i++)
+		{
+			block.append("{\"offset\":").append(offset + buffer.getStart(i))
+				 .append(",\"kind\":\"").append(KIND_NAMES[buffer.getKind(i)])
+				 .append("\",\"text\":\"");
+			appendEscaped(source, buffer.getStart(i), buffer.getEnd(i));
+			block.append("\"}\n");
+			if(block.length() >= BLOCK_SIZE)
+				writeBlock();
+		}
+		tokens += buffer.size();
+	}
+
+	/**
+	 *	Adds text to the block as the inside of a JSON string.
+	 *	@param text			the text the part is in
+	 *	@param start		index of the first character to add
+	 *	@param end			index after the last character to add
+	 */
+	private void appendEscaped(CharSequence text, int start, int end)
+	{
+		for(int k = start; k < end; k++)
+		{
+			char c = text.charAt(k);
+			if(c == '"' || c == '\\')
+				block.append('\\').append(c);
+			else if(c == '\n')
+				block.append("\\n");
+			else if(c == '\r')
+				block.append("\\r");
+			else if(c == '\t')
+				block.append("\\t");
+			else if(c < ' ')
+				block.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 15]);
+			else
+				block.append(c);
+		}
+	}
+
+	/**
+	 *	Writes the lines gathered so far.
+	 *	@throws UncheckedIOException	if the trace cannot be written
+	 */
+	private void writeBlock()
+	{
+		int length = block.length();
+		if(chars.length < length)
+			chars = new char[Math.max(length, BLOCK_SIZE + 256)];
+		block.getChars(0, length, chars, 0);
+		block.setLength(0);
+		try
+		{
+			out.write(chars, 0, length);
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 *	Writes out every line still held.
+	 *	@throws IOException	if the trace cannot be written
+	 */
+	public void flush() throws IOException
+	{
+		try
+		{
+			writeBlock();
+		}
+		catch(UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+		out.flush();
+	}
+
+	/**
+	 *	Writes out every line still held, and closes the file.
+	 *	@throws IOException	if the trace cannot be written
+	 */
+	public void close() throws IOException
+	{
+		flush();
+		if(closeOut)
+			out.close();
+	}
+
+	/**
+	 *	@return				the number of tokens written
+	 */
+	public long getTokens()
+	{
+		return tokens;
+	}
+}
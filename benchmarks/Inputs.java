@@ -0,0 +1,194 @@
+package benchmarks;
+
+import java.util.Random;
+
+/**
+ *	Inputs
+ *	Makes the documents the benchmarks run on. Each kind stresses a
+ *	different path of the tokenizer and renderer, and is made from a
+ *	fixed seed so every run measures the same text.
+ *
+ *		PROSE		paragraphs and headings of words and punctuation
+ *		NUMBERS		signed numbers, decimals, exponents and "- 5", which
+ *					go through the hyphen, 'e' and period number scanner
+ *		NESTED		b and i nested many levels deep inside paragraphs
+ *		PRE			long preformatted blocks
+ *		COMMENTS	short text between many comments, some over lines
+ *		LONG_LINE	prose with no line breaks at all
+ *		ENTITIES	code and math full of named and numeric character
+ *					references, in paragraphs and preformatted blocks
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+final class Inputs {
+
+	// about how many characters each document has
+	static final int SIZE = 64 * 1024;
+
+	private static final String [] WORDS = { "the", "moon", "goodnight", "stars",
+			"well-known", "phrase", "render", "window", "quiet", "house", "e-mail",
+			"a", "of", "and", "brush", "comb", "bowl", "mush", "air", "everywhere" };
+
+	private static final char [] PUNCTUATION = { '.', ',', ';', ':', '!', '?', '(', ')' };
+
+	private static final String [] ENTITIES = { "&lt;", "&gt;", "&amp;", "&quot;", "&le;",
+			"&ge;", "&ne;", "&sum;", "&pi;", "&infin;", "&#8212;", "&#x2192;", "&eacute;" };
+
+	private Inputs()
+	{
+	}
+
+	/**
+	 *	@param kind			one of the kinds above
+	 *	@return				the document, wrapped in html and body
+	 */
+	static String make(String kind)
+	{
+		Random random = new Random(42);
+		StringBuilder doc = new StringBuilder("<html>\n<body>\n");
+		while (doc.length() < SIZE)
+		{
+			switch (kind)
+			{
+				case "PROSE":		prose(doc, random, true); break;
+				case "NUMBERS":		numbers(doc, random); break;
+				case "NESTED":		nested(doc, random); break;
+				case "PRE":			pre(doc, random); break;
+				case "COMMENTS":	comments(doc, random); break;
+				case "LONG_LINE":	prose(doc, random, false); break;
+				case "ENTITIES":	entities(doc, random); break;
+				default: throw new IllegalArgumentException("unknown input " + kind);
+			}
+		}
+		return doc.append("</body>\n</html>\n").toString();
+	}
+
+	/**
+	 *	Adds a heading and a paragraph of words and punctuation, with a
+	 *	line break about every 70 characters if lines is true.
+	 */
+	private static void prose(StringBuilder doc, Random random, boolean lines)
+	{
+		char end = lines ? '\n' : ' ';
+		int level = 1 + random.nextInt(6);
+		doc.append("<h").append(level).append(">");
+		words(doc, random, 2 + random.nextInt(5), lines);
+		doc.append("</h").append(level).append(">").append(end).append("<p>");
+		words(doc, random, 40 + random.nextInt(80), lines);
+		doc.append("</p>").append(end);
+	}
+
+	/**
+	 *	Adds a paragraph where most tokens are numbers.
+	 */
+	private static void numbers(StringBuilder doc, Random random)
+	{
+		doc.append("<p>");
+		for (int k = 0; k < 60; k++)
+		{
+			switch (random.nextInt(6))
+			{
+				case 0: doc.append(random.nextInt(100000)); break;
+				case 1: doc.append('-').append(random.nextInt(1000)).append('.').append(random.nextInt(100)); break;
+				case 2: doc.append(random.nextInt(10)).append('e').append(random.nextInt(20)); break;
+				case 3: doc.append("-2.5e-").append(random.nextInt(9)); break;
+				case 4: doc.append("- ").append(random.nextInt(100)); break;
+				default: doc.append(WORDS[random.nextInt(WORDS.length)]);
+			}
+			doc.append(k % 10 == 9 ? '\n' : ' ');
+		}
+		doc.append("</p>\n");
+	}
+
+	/**
+	 *	Adds a paragraph with b and i nested up to 32 levels deep.
+	 */
+	private static void nested(StringBuilder doc, Random random)
+	{
+		int depth = 1 + random.nextInt(32);
+		doc.append("<p>");
+		for (int d = 0; d < depth; d++)
+		{
+			doc.append(d % 2 == 0 ? "<b>" : "<i>");
+			words(doc, random, 1 + random.nextInt(3), false);
+		}
+		for (int d = depth - 1; d >= 0; d--)
+		{
+			doc.append(d % 2 == 0 ? "</b>" : "</i>");
+			words(doc, random, random.nextInt(2), false);
+		}
+		doc.append("</p>\n");
+	}
+
+	/**
+	 *	Adds a preformatted block of 200 lines.
+	 */
+	private static void pre(StringBuilder doc, Random random)
+	{
+		doc.append("<pre>\n");
+		for (int k = 0; k < 200; k++)
+		{
+			doc.append("    ");
+			for (int w = random.nextInt(8); w >= 0; w--)
+				doc.append(WORDS[random.nextInt(WORDS.length)]).append(" < ").append(k);
+			doc.append('\n');
+		}
+		doc.append("</pre>\n");
+	}
+
+	/**
+	 *	Adds a paragraph of words joined by character references, then a
+	 *	short preformatted block of escaped code.
+	 */
+	private static void entities(StringBuilder doc, Random random)
+	{
+		doc.append("<p>");
+		for (int k = 0; k < 40; k++)
+		{
+			doc.append(WORDS[random.nextInt(WORDS.length)]);
+			doc.append(random.nextBoolean() ? " " : "").append(ENTITIES[random.nextInt(ENTITIES.length)]);
+			doc.append(k % 8 == 7 ? '\n' : ' ');
+		}
+		doc.append("</p>\n<pre>\n");
+		for (int k = 0; k < 10; k++)
+			doc.append("    if (a &lt; ").append(k).append(" &amp;&amp; b &gt;= a) f(&quot;")
+			   .append(WORDS[random.nextInt(WORDS.length)]).append("&quot;);\n");
+		doc.append("</pre>\n");
+	}
+
+	/**
+	 *	Adds comments, some over several lines, with a little text between.
+	 */
+	private static void comments(StringBuilder doc, Random random)
+	{
+		doc.append("<!-- ");
+		words(doc, random, 5 + random.nextInt(20), random.nextBoolean());
+		doc.append(" - - -->\n<p>");
+		words(doc, random, 1 + random.nextInt(5), false);
+		doc.append("</p>\n");
+	}
+
+	/**
+	 *	Adds words with a punctuation mark about every sixth word.
+	 */
+	private static void words(StringBuilder doc, Random random, int count, boolean lines)
+	{
+		int line = 0;
+		for (int k = 0; k < count; k++)
+		{
+			int before = doc.length();
+			doc.append(WORDS[random.nextInt(WORDS.length)]);
+			if (random.nextInt(6) == 0)
+				doc.append(PUNCTUATION[random.nextInt(PUNCTUATION.length)]);
+			line += doc.length() - before + 1;
+			if (lines && line > 70)
+			{
+				doc.append('\n');
+				line = 0;
+			}
+			else
+				doc.append(' ');
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *	RendererBenchmark
+ *	Measures HTMLRender on each kind of input. The document is tokenized
+ *	once in setup, so renderTokens measures only the renderer, layout and
+ *	coalescing into a CountingRenderSink, which does no output. Headings
+ *	are rendered along with the rest of PROSE. tokenizeAndRender measures
+ *	the whole pipeline.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RendererBenchmark {
+
+	@Param({ "PROSE", "NUMBERS", "NESTED", "PRE", "COMMENTS", "LONG_LINE", "ENTITIES" })
+	public String input;
+
+	private Object doc;			// the document, as a CharSequence
+	private Object tokens;		// the TokenBuffer of the whole document
+	private String [] words;	// the tokens as Strings, for isPunctuation
+	private Object renderer;	// the HTMLRender isPunctuation is called on
+
+	@Setup
+	public void setup() throws Throwable
+	{
+		doc = Inputs.make(input);
+		Object util = (Object) Repo.NEW_UTILITIES.invokeExact();
+		tokens = (Object) Repo.NEW_BUFFER.invokeExact();
+		int count = (int) Repo.TOKENIZE.invokeExact(util, doc, tokens);
+		words = (String []) (Object) Repo.TOKENIZE_TO_ARRAY.invokeExact(util, doc);
+		renderer = (Object) Repo.NEW_RENDER.invokeExact((Object) Repo.NEW_COUNTING_SINK.invokeExact());
+	}
+
+	/**
+	 *	Renders the tokens of the document with a new renderer.
+	 */
+	@Benchmark
+	public Object renderTokens() throws Throwable
+	{
+		Object sink = (Object) Repo.NEW_COUNTING_SINK.invokeExact();
+		Object render = (Object) Repo.NEW_RENDER.invokeExact(sink);
+		Repo.RENDER_TOKENS.invokeExact(render, tokens);
+		Repo.FLUSH.invokeExact(render);
+		return sink;
+	}
+
+	/**
+	 *	Tokenizes and renders the document.
+	 */
+	@Benchmark
+	public Object tokenizeAndRender() throws Throwable
+	{
+		Object util = (Object) Repo.NEW_UTILITIES.invokeExact();
+		Object buffer = (Object) Repo.NEW_BUFFER.invokeExact();
+		int count = (int) Repo.TOKENIZE.invokeExact(util, doc, buffer);
+		Object sink = (Object) Repo.NEW_COUNTING_SINK.invokeExact();
+		Object render = (Object) Repo.NEW_RENDER.invokeExact(sink);
+		Repo.RENDER_TOKENS.invokeExact(render, buffer);
+		Repo.FLUSH.invokeExact(render);
+		return sink;
+	}
+
+	/**
+	 *	Checks every token for punctuation the way the renderer does for
+	 *	arrays of Strings.
+	 */
+	@Benchmark
+	public int isPunctuation() throws Throwable
+	{
+		int count = 0;
+		for (int i = 0; i < words.length; i++)
+		{
+			if ((boolean) Repo.IS_PUNCTUATION_STRING.invokeExact(renderer, (Object) words[i]))
+				count++;
+		}
+		return count;
+	}
+}
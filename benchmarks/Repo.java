@@ -0,0 +1,98 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ *	Repo
+ *	Handles to the renderer's classes for the benchmarks. The renderer
+ *	is in the default package, which JMH does not allow benchmarks in and
+ *	which code in a package cannot import, so it is reached through
+ *	method handles. The handles are static final, so the JIT treats them
+ *	as constants and inlines the calls like direct ones.
+ *
+ *	Every handle takes and returns Object for the renderer's own types.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+final class Repo {
+
+	// () -> HTMLUtilities
+	static final MethodHandle NEW_UTILITIES;
+	// (HTMLUtilities, String) -> String[]
+	static final MethodHandle TOKENIZE_TO_ARRAY;
+	// (HTMLUtilities, CharSequence, TokenBuffer) -> int
+	static final MethodHandle TOKENIZE;
+	// (HTMLUtilities, char) -> boolean
+	static final MethodHandle IS_PUNCTUATION;
+
+	// () -> TokenBuffer
+	static final MethodHandle NEW_BUFFER;
+	// (TokenBuffer) -> void
+	static final MethodHandle CLEAR;
+
+	// () -> CountingRenderSink
+	static final MethodHandle NEW_COUNTING_SINK;
+	// (RenderSink) -> HTMLRender
+	static final MethodHandle NEW_RENDER;
+	// (HTMLRender, TokenBuffer) -> void
+	static final MethodHandle RENDER_TOKENS;
+	// (HTMLRender) -> void
+	static final MethodHandle FLUSH;
+	// (HTMLRender, String) -> boolean
+	static final MethodHandle IS_PUNCTUATION_STRING;
+
+	static
+	{
+		try
+		{
+			MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			Class<?> utilities = Class.forName("HTMLUtilities");
+			Class<?> buffer = Class.forName("TokenBuffer");
+			Class<?> sink = Class.forName("RenderSink");
+			Class<?> counting = Class.forName("CountingRenderSink");
+			Class<?> render = Class.forName("HTMLRender");
+
+			NEW_UTILITIES = erase(lookup.findConstructor(utilities,
+					MethodType.methodType(void.class)));
+			TOKENIZE_TO_ARRAY = erase(lookup.findVirtual(utilities, "tokenizeHTMLString",
+					MethodType.methodType(String[].class, String.class)));
+			TOKENIZE = erase(lookup.findVirtual(utilities, "tokenizeHTMLString",
+					MethodType.methodType(int.class, CharSequence.class, buffer)));
+			IS_PUNCTUATION = erase(lookup.findVirtual(utilities, "isPunctuation",
+					MethodType.methodType(boolean.class, char.class)));
+
+			NEW_BUFFER = erase(lookup.findConstructor(buffer, MethodType.methodType(void.class)));
+			CLEAR = erase(lookup.findVirtual(buffer, "clear", MethodType.methodType(void.class)));
+
+			NEW_COUNTING_SINK = erase(lookup.findConstructor(counting,
+					MethodType.methodType(void.class)));
+			NEW_RENDER = erase(lookup.findConstructor(render,
+					MethodType.methodType(void.class, sink)));
+			RENDER_TOKENS = erase(lookup.findVirtual(render, "renderTokens",
+					MethodType.methodType(void.class, buffer)));
+			FLUSH = erase(lookup.findVirtual(render, "flush", MethodType.methodType(void.class)));
+			IS_PUNCTUATION_STRING = erase(lookup.findVirtual(render, "isPunctuation",
+					MethodType.methodType(boolean.class, String.class)));
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private Repo()
+	{
+	}
+
+	/**
+	 *	Changes the renderer's own types in a handle to Object, so it can
+	 *	be called with invokeExact from here.
+	 */
+	private static MethodHandle erase(MethodHandle handle)
+	{
+		return handle.asType(handle.type().erase());
+	}
+}
@@ -0,0 +1,83 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ *	TokenizerBenchmark
+ *	Measures HTMLUtilities on each kind of input: tokenizing into a
+ *	reused TokenBuffer, the older tokenizeHTMLString that returns an
+ *	array of Strings, and isPunctuation over every character. One
+ *	operation is one whole document of about Inputs.SIZE characters.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizerBenchmark {
+
+	@Param({ "PROSE", "NUMBERS", "NESTED", "PRE", "COMMENTS", "LONG_LINE", "ENTITIES" })
+	public String input;
+
+	private Object doc;			// the document, as a CharSequence
+	private Object util;		// the HTMLUtilities
+	private Object buffer;		// the TokenBuffer reused for each document
+	private char [] chars;		// the characters of the document
+
+	@Setup
+	public void setup() throws Throwable
+	{
+		String text = Inputs.make(input);
+		doc = text;
+		chars = text.toCharArray();
+		util = (Object) Repo.NEW_UTILITIES.invokeExact();
+		buffer = (Object) Repo.NEW_BUFFER.invokeExact();
+	}
+
+	/**
+	 *	Tokenizes the document into the reused buffer, which makes no
+	 *	Strings and, once the buffer has grown, allocates nothing.
+	 */
+	@Benchmark
+	public int tokenizeIntoBuffer() throws Throwable
+	{
+		Repo.CLEAR.invokeExact(buffer);
+		return (int) Repo.TOKENIZE.invokeExact(util, doc, buffer);
+	}
+
+	/**
+	 *	Tokenizes the document into an array of Strings.
+	 */
+	@Benchmark
+	public Object tokenizeToArray() throws Throwable
+	{
+		return (Object) Repo.TOKENIZE_TO_ARRAY.invokeExact(util, doc);
+	}
+
+	/**
+	 *	Checks every character of the document for punctuation.
+	 */
+	@Benchmark
+	public void isPunctuation(Blackhole blackhole) throws Throwable
+	{
+		for (int i = 0; i < chars.length; i++)
+			blackhole.consume((boolean) Repo.IS_PUNCTUATION.invokeExact(util, chars[i]));
+	}
+}
@@ -0,0 +1,64 @@
+import java.util.Objects;
+
+/**
+ *	Check
+ *	The checks the regression tests make. Each check that fails is
+ *	printed with what was expected and what was found, and done ends
+ *	the test with a non-zero exit status if any failed, so a script can
+ *	run every test and stop at the first that fails.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+final class Check {
+
+	private static int checks;		// checks made
+	private static int failures;		// checks that failed
+
+	private Check()
+	{
+	}
+
+	/**
+	 *	Checks that something is true.
+	 *	@param ok			the result of the check
+	 *	@param what			what was checked, printed if it failed
+	 */
+	static void that(boolean ok, String what)
+	{
+		checks++;
+		if(!ok)
+		{
+			failures++;
+			System.out.println("FAILED: " + what);
+		}
+	}
+
+	/**
+	 *	Checks that a value is the one expected.
+	 *	@param expected		the value expected
+	 *	@param actual		the value found
+	 *	@param what			what was checked, printed if it failed
+	 */
+	static void equal(Object expected, Object actual, String what)
+	{
+		checks++;
+		if(!Objects.equals(expected, actual))
+		{
+			failures++;
+			System.out.println("FAILED: " + what + "\n  expected: " + expected
+							   + "\n  found:    " + actual);
+		}
+	}
+
+	/**
+	 *	Prints how many checks failed and ends the test, with exit status
+	 *	1 if any did.
+	 *	@param test			the name of the test
+	 */
+	static void done(String test)
+	{
+		System.out.println(test + ": " + checks + " checks, " + failures + " failed");
+		System.exit(failures == 0 ? 0 : 1);
+	}
+}
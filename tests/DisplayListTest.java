@@ -0,0 +1,162 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ *	DisplayListTest
+ *	Regression tests for the display list and its file format: runs in
+ *	the same style are joined, a list written with writeTo reads back
+ *	to the same calls, text that UTF-8 cannot hold survives the trip,
+ *	a list larger than its starting size grows and reads back the same,
+ *	and a damaged or foreign file is refused instead of replayed.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class DisplayListTest {
+
+	public static void main(String[] args) throws IOException
+	{
+		Path folder = Files.createTempDirectory("displaylist");
+		try
+		{
+			testRecord();
+			testRoundTrip(folder);
+			testLarge(folder);
+			testDamaged(folder);
+		}
+		finally
+		{
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(folder))
+			{
+				for(Path file : files)
+					Files.delete(file);
+			}
+			Files.delete(folder);
+		}
+		Check.done("DisplayListTest");
+	}
+
+	/**
+	 *	Text in the same style is joined into one call, as a
+	 *	CoalescingRenderSink would.
+	 */
+	private static void testRecord()
+	{
+		DisplayList list = new DisplayList();
+		list.print("a ");
+		list.printText(RenderSink.PRINT, "xbcx", 1, 3);
+		list.printBold("bold");
+		list.println();
+		list.printHorizontalRule();
+		list.flush();
+		Check.equal("print[a bc]\nbold[bold]\nprintln\nrule\n", Transcript.of(list), "recorded calls");
+		Check.equal(4, list.getOperationCount(), "operations after joining");
+
+		list.clear();
+		Check.equal("", Transcript.of(list), "cleared list");
+	}
+
+	/**
+	 *	Lists with ASCII, other scripts, characters outside the BMP, an
+	 *	unpaired surrogate and no text at all read back the same.
+	 */
+	private static void testRoundTrip(Path folder) throws IOException
+	{
+		String [] texts = { "plain text", "caf\u00e9 \u2014 \u65e5\u672c", "emoji \ud83d\ude00 ok",
+							"lone \ud800 surrogate", "" };
+		for(int k = 0; k < texts.length; k++)
+		{
+			DisplayList list = new DisplayList();
+			list.printHeading2(texts[k]);
+			list.println();
+			list.printPreformattedText("  kept  ");
+			list.printBreak();
+			list.flush();
+
+			Path file = folder.resolve("list" + k + ".hdl");
+			list.writeTo(file);
+			DisplayList read = DisplayList.readFrom(file);
+			Check.equal(Transcript.of(list), Transcript.of(read), "round trip of \"" + texts[k] + "\"");
+		}
+	}
+
+	/**
+	 *	A list far past the starting size of its arrays, in every style,
+	 *	grows as it is recorded and reads back the same.
+	 */
+	private static void testLarge(Path folder) throws IOException
+	{
+		int [] styles = { RenderSink.PRINT, RenderSink.PRINT_BOLD, RenderSink.PRINT_ITALIC,
+						  RenderSink.PRINT_HEADING1, RenderSink.PRINT_HEADING6,
+						  RenderSink.PRINT_PREFORMATTED };
+		DisplayList list = new DisplayList();
+		StringBuilder text = new StringBuilder();
+		for(int k = 0; k < 5000; k++)
+		{
+			text.setLength(0);
+			text.append("run ").append(k).append(k % 7 == 0 ? " \u00fc\u00df " : " ");
+			list.printText(styles[k % styles.length], text, 0, text.length());
+			if(k % 3 == 0)
+				list.println();
+		}
+		list.printHorizontalRule();
+		list.flush();
+		Check.equal(5000 + 1667 + 1, list.getOperationCount(), "operations of a large list");
+
+		Path file = folder.resolve("large.hdl");
+		list.writeTo(file);
+		Check.equal(Transcript.of(list), Transcript.of(DisplayList.readFrom(file)),
+					"round trip of a large list");
+	}
+
+	/**
+	 *	A file that is cut short, has a changed byte in its header or is
+	 *	not a display list at all is refused with an IOException.
+	 */
+	private static void testDamaged(Path folder) throws IOException
+	{
+		DisplayList list = new DisplayList();
+		list.print("some text to damage");
+		list.println();
+		list.flush();
+		Path file = folder.resolve("good.hdl");
+		list.writeTo(file);
+		byte [] good = Files.readAllBytes(file);
+
+		Path damaged = folder.resolve("damaged.hdl");
+		Files.write(damaged, Arrays.copyOf(good, good.length - 3));
+		Check.that(refused(damaged), "file cut short");
+
+		byte [] bytes = good.clone();
+		bytes[0] ^= 1;
+		Files.write(damaged, bytes);
+		Check.that(refused(damaged), "changed magic number");
+
+		bytes = good.clone();
+		bytes[7]++;
+		Files.write(damaged, bytes);
+		Check.that(refused(damaged), "other version");
+
+		Files.write(damaged, "<p>not a display list</p>".getBytes("US-ASCII"));
+		Check.that(refused(damaged), "HTML file");
+	}
+
+	/**
+	 *	@return				true if reading the file throws an IOException
+	 */
+	private static boolean refused(Path file)
+	{
+		try
+		{
+			DisplayList.readFrom(file);
+			return false;
+		}
+		catch(IOException e)
+		{
+			return true;
+		}
+	}
+}
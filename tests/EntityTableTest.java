@@ -0,0 +1,89 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *	EntityTableTest
+ *	Regression tests for character references: EntityTable on its own,
+ *	names that share a start or are cut off, numbers out of range, and
+ *	the one token the tokenizer makes of each reference.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class EntityTableTest {
+
+	// names of the TokenBuffer kinds, by kind
+	private static final String [] KINDS = { "tag", "word", "number", "punct", "pre", "entity" };
+
+	public static void main(String[] args)
+	{
+		testTable();
+		testNames();
+		testTokens();
+		Check.done("EntityTableTest");
+	}
+
+	/**
+	 *	EntityTable on its own.
+	 */
+	private static void testTable()
+	{
+		Check.equal(5, EntityTable.end("&amp;", 0, 5), "end of &amp;");
+		Check.equal(-1, EntityTable.end("&amp", 0, 4), "no end without ';'");
+		Check.equal((int)'&', EntityTable.decode("&amp;", 0, 5), "decode &amp;");
+		Check.equal(0x2014, EntityTable.decode("&#x2014;", 0, 8), "decode &#x2014;");
+		Check.equal(0x2014, EntityTable.decode("a&#8212;b", 1, 8), "decode inside text");
+		Check.equal(-1, EntityTable.decode("&amp;x", 0, 6), "more than one reference");
+	}
+
+	/**
+	 *	Names that are the start of other names, names that differ only
+	 *	in case and the longest names.
+	 */
+	private static void testNames()
+	{
+		Check.equal(0xac, EntityTable.decode("&not;", 0, 5), "&not;");
+		Check.equal(0x2209, EntityTable.decode("&notin;", 0, 7), "&notin;, which starts with not");
+		Check.equal(0x2020, EntityTable.decode("&dagger;", 0, 8), "&dagger;");
+		Check.equal(0x2021, EntityTable.decode("&Dagger;", 0, 8), "&Dagger;");
+		Check.equal(977, EntityTable.decode("&thetasym;", 0, 10), "longest name");
+		Check.equal(-1, EntityTable.end("&thetasym;", 0, 9), "cut off before its ';'");
+		Check.equal(10, EntityTable.end("&#x10FFFF;", 0, 10), "longest number");
+		Check.equal(-1, EntityTable.end("&#x110000000;", 0, 13), "too many digits");
+	}
+
+	/**
+	 *	References become one token holding their character; text that
+	 *	only looks like one is left as words and punctuation.
+	 */
+	private static void testTokens()
+	{
+		Check.equal("word caf, entity &eacute;=e9", tokens("caf&eacute;"), "named reference");
+		Check.equal("entity &#38;=26, entity &#x26;=26", tokens("&#38;&#x26;"),
+					"decimal and hex references");
+		Check.equal("word x, entity &lt;=3c, word y", tokens("x&lt;y"), "reference between words");
+		Check.equal("punct &, word amp", tokens("&amp"), "no ';' is not a reference");
+		Check.equal("punct &, word ampx, punct ;", tokens("&ampx;"), "unknown name");
+		Check.equal("entity &#xD800;=fffd", tokens("&#xD800;"), "surrogate is replaced");
+		Check.equal("entity &#1114112;=fffd", tokens("&#1114112;"), "past the last code point");
+	}
+
+	/**
+	 *	@return				the tokens of a string, as each kind and text,
+	 *						and the code point in hex of a reference
+	 */
+	private static String tokens(String str)
+	{
+		TokenBuffer tokens = new TokenBuffer();
+		new HTMLUtilities().tokenizeHTMLString(str, tokens);
+		List<String> found = new ArrayList<String>();
+		for(int i = 0; i < tokens.size(); i++)
+		{
+			String text = KINDS[tokens.getKind(i)] + " " + tokens.getText(i);
+			if(tokens.getKind(i) == TokenBuffer.ENTITY)
+				text += "=" + Integer.toHexString(tokens.getCodePoint(i));
+			found.add(text);
+		}
+		return String.join(", ", found);
+	}
+}
@@ -0,0 +1,208 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ *	HTMLReaderTest
+ *	Regression tests for reading HTML bytes: the charset is sniffed from
+ *	a byte order mark, then a meta tag near the start, then the fallback;
+ *	a byte order mark is not part of the text; characters cut across the
+ *	reader's buffers and bad bytes are decoded as String would; and a
+ *	mapped file reads the same as a streamed one.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class HTMLReaderTest {
+
+	private static final Charset WINDOWS_1252 = Charset.forName("windows-1252");
+
+	public static void main(String[] args) throws IOException
+	{
+		Path folder = Files.createTempDirectory("htmlreader");
+		try
+		{
+			testSniff();
+			testByteOrderMarks(folder);
+			testLongText(folder);
+			testBadBytes();
+		}
+		finally
+		{
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(folder))
+			{
+				for(Path file : files)
+					Files.delete(file);
+			}
+			Files.delete(folder);
+		}
+		Check.done("HTMLReaderTest");
+	}
+
+	/**
+	 *	A byte order mark wins over a meta tag, which wins over the
+	 *	fallback, and a meta tag past PRESCAN_SIZE is not seen.
+	 */
+	private static void testSniff()
+	{
+		Charset fallback = StandardCharsets.ISO_8859_1;
+		Check.equal(StandardCharsets.UTF_8, sniff(bytes(0xEF, 0xBB, 0xBF, '<', 'p', '>'), fallback),
+					"UTF-8 byte order mark");
+		Check.equal(StandardCharsets.UTF_16BE, sniff(bytes(0xFE, 0xFF, 0, '<'), fallback),
+					"UTF-16BE byte order mark");
+		Check.equal(StandardCharsets.UTF_16LE, sniff(bytes(0xFF, 0xFE, '<', 0), fallback),
+					"UTF-16LE byte order mark");
+		Check.equal(WINDOWS_1252, sniff(ascii("<head><meta charset=\"windows-1252\">"), fallback),
+					"meta charset");
+		Check.equal(StandardCharsets.UTF_8, sniff(ascii("<META HTTP-EQUIV=\"Content-Type\" "
+					+ "CONTENT=\"text/html; charset=utf-8\">"), fallback), "meta http-equiv in upper case");
+		Check.equal(StandardCharsets.UTF_8, sniff(ascii("<meta charset='utf-16'>"), fallback),
+					"meta UTF-16 in ASCII is UTF-8");
+		Check.equal(fallback, sniff(ascii("<meta charset=\"no-such-charset\">"), fallback),
+					"unknown charset");
+		Check.equal(fallback, sniff(ascii("<p>no meta tag</p>"), fallback), "no meta tag");
+
+		StringBuilder late = new StringBuilder();
+		while(late.length() < HTMLReader.PRESCAN_SIZE)
+			late.append("<p>text</p>\n");
+		late.append("<meta charset=\"windows-1252\">");
+		Check.equal(fallback, sniff(ascii(late.toString()), fallback), "meta tag past the prescan");
+
+		ByteBuffer head = ascii("<meta charset=\"windows-1252\">");
+		head.position(1);
+		sniff(head, fallback);
+		Check.equal(1, head.position(), "sniff does not move the buffer");
+	}
+
+	/**
+	 *	Files with a byte order mark read without it, streamed or mapped,
+	 *	and a file in windows-1252 reads its own characters.
+	 */
+	private static void testByteOrderMarks(Path folder) throws IOException
+	{
+		String text = "<p>caf\u00e9 \u2014 \u65e5\u672c \ud83d\ude00</p>";
+		Path utf8 = write(folder, "utf8.html", bytes(0xEF, 0xBB, 0xBF), text, StandardCharsets.UTF_8);
+		Check.equal(text, read(utf8), "UTF-8 with a byte order mark");
+		Check.equal(text, FileUtils.mapToRead(utf8.toString()).toString(), "UTF-8 mapped");
+
+		Path utf16 = write(folder, "utf16.html", bytes(0xFF, 0xFE), text, StandardCharsets.UTF_16LE);
+		Check.equal(text, read(utf16), "UTF-16LE with a byte order mark");
+		Check.equal(text, FileUtils.mapToRead(utf16.toString()).toString(), "UTF-16LE mapped");
+
+		String western = "<meta charset=\"windows-1252\"><p>\u20ac 5 \u2013 na\u00efve</p>";
+		Path cp1252 = write(folder, "cp1252.html", new byte[0], western, WINDOWS_1252);
+		Check.equal(western, read(cp1252), "windows-1252 from its meta tag");
+		try (HTMLReader reader = HTMLReader.open(cp1252))
+		{
+			Check.equal(WINDOWS_1252, reader.getCharset(), "charset of the reader");
+		}
+	}
+
+	/**
+	 *	A file longer than the reader's buffers, with characters of two
+	 *	to four bytes cut at every place, reads the same a few characters
+	 *	at a time as String decodes it, and as decode does.
+	 */
+	private static void testLongText(Path folder) throws IOException
+	{
+		StringBuilder text = new StringBuilder("<meta charset=\"utf-8\">\n");
+		for(int k = 0; text.length() < 300000; k++)
+			text.append("<p>line ").append(k).append(" \u00e9\u00e8 \u4e2d\u6587 \ud83d\ude00</p>\n");
+		Path file = write(folder, "long.html", new byte[0], text.toString(), StandardCharsets.UTF_8);
+
+		StringBuilder found = new StringBuilder();
+		char [] buffer = new char[3];
+		try (Reader reader = HTMLReader.open(file))
+		{
+			int count;
+			while((count = reader.read(buffer, 0, buffer.length)) != -1)
+				found.append(buffer, 0, count);
+		}
+		Check.equal(text.toString(), found.toString(), "long UTF-8 text read three characters at a time");
+		Check.equal(text.toString(), HTMLReader.decode(ByteBuffer.wrap(Files.readAllBytes(file)),
+					StandardCharsets.UTF_8).toString(), "long UTF-8 text decoded whole");
+	}
+
+	/**
+	 *	Bytes that are not valid in the charset become U+FFFD, as they do
+	 *	in String, including a character cut off by an ASCII byte.
+	 */
+	private static void testBadBytes()
+	{
+		byte [] bad = { 'a', (byte)0xC3, 'b', (byte)0xFF, (byte)0xE2, (byte)0x82, ' ', (byte)0xF0, (byte)0x9F };
+		Check.equal(new String(bad, StandardCharsets.UTF_8),
+					HTMLReader.decode(ByteBuffer.wrap(bad), StandardCharsets.UTF_8).toString(), "bad UTF-8 bytes");
+	}
+
+	/**
+	 *	@return				the charset sniffed from the bytes
+	 */
+	private static Charset sniff(ByteBuffer head, Charset fallback)
+	{
+		return HTMLReader.sniff(head, fallback);
+	}
+
+	/**
+	 *	@return				a buffer of the given bytes
+	 */
+	private static ByteBuffer bytes(int... values)
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(values.length);
+		for(int value : values)
+			buffer.put((byte)value);
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 *	@return				a buffer of the ASCII bytes of a String
+	 */
+	private static ByteBuffer ascii(String text)
+	{
+		return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 *	Writes a file of the bytes of a mark, then the text in a charset.
+	 *	@return				the file
+	 */
+	private static Path write(Path folder, String name, ByteBuffer mark, String text, Charset charset)
+		throws IOException
+	{
+		byte [] encoded = text.getBytes(charset);
+		ByteBuffer bytes = ByteBuffer.allocate(mark.remaining() + encoded.length);
+		bytes.put(mark).put(encoded);
+		return Files.write(folder.resolve(name), bytes.array());
+	}
+
+	/**
+	 *	Writes a file of the text in a charset.
+	 *	@return				the file
+	 */
+	private static Path write(Path folder, String name, byte [] mark, String text, Charset charset)
+		throws IOException
+	{
+		return write(folder, name, ByteBuffer.wrap(mark), text, charset);
+	}
+
+	/**
+	 *	@return				the whole text of a file read with HTMLReader
+	 */
+	private static String read(Path file) throws IOException
+	{
+		StringBuilder text = new StringBuilder();
+		char [] buffer = new char[1024];
+		try (Reader reader = HTMLReader.open(file))
+		{
+			int count;
+			while((count = reader.read(buffer)) != -1)
+				text.append(buffer, 0, count);
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,104 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ *	HTMLWatcherTest
+ *	Regression tests for re-rendering after an edit: a watcher that is
+ *	updated with random line edits, one after another, prints the same
+ *	as a new watcher given the edited document at once, and an edit to
+ *	one line of a long document renders only a few lines.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class HTMLWatcherTest {
+
+	// lines the documents and the edits are made of, some change the state of the lines after them
+	private static final String [] LINES = {
+		"<p>A paragraph of plain words that is long enough to wrap at the limit of eighty", "characters, with a number -12.5 and caf&eacute; &amp; more.</p>",
+		"<h1>Heading one</h1>", "<h3>Heading three is here</h3>", "<b>bold starts", "and ends</b> here",
+		"<i>italic</i> and <q>a quote</q>", "<br>", "<hr>", "", "<p>", "</p>", "word", "<!-- a comment",
+		"that ends -->", "<pre>", "  preformatted   text", "</pre>", "<pre>one line</pre>",
+		"<p>Another paragraph with some more text in it.</p>" };
+
+	public static void main(String[] args)
+	{
+		testRandomEdits();
+		testOneLine();
+		Check.done("HTMLWatcherTest");
+	}
+
+	/**
+	 *	Changes, inserts and deletes random lines, and after each edit
+	 *	compares the watcher to a new one.
+	 */
+	private static void testRandomEdits()
+	{
+		Random random = new Random(11);
+		List<String> lines = new ArrayList<String>();
+		for(int k = 0; k < 40; k++)
+			lines.add(LINES[random.nextInt(LINES.length)]);
+
+		Transcript printed = new Transcript();
+		HTMLWatcher watcher = new HTMLWatcher(printed);
+		watcher.update(String.join("\n", lines));
+		for(int edit = 0; edit < 300; edit++)
+		{
+			int k = random.nextInt(lines.size());
+			String line = LINES[random.nextInt(LINES.length)];
+			switch(random.nextInt(4))
+			{
+				case 0:		lines.set(k, line); break;
+				case 1:		lines.add(k, line); break;
+				case 2:		if(lines.size() > 1) lines.remove(k); break;
+				default:	lines.set(k, lines.get(k) + " " + line); break;
+			}
+			String doc = String.join("\n", lines);
+			watcher.update(doc);
+			Check.equal(rendered(doc), emitted(watcher, printed), "after edit " + edit);
+		}
+	}
+
+	/**
+	 *	A word added to one line renders just that line, the same text
+	 *	again renders nothing.
+	 */
+	private static void testOneLine()
+	{
+		String [] lines = new String[200];
+		for(int k = 0; k < lines.length; k++)
+			lines[k] = "<p>Paragraph " + k + " of the document.</p>";
+		HTMLWatcher watcher = new HTMLWatcher(new Transcript());
+		watcher.update(String.join("\n", lines));
+		Check.equal(200, watcher.getLinesRendered(), "first version renders every line");
+
+		lines[100] = "<p>Paragraph 100 of the edited document.</p>";
+		Check.that(watcher.update(String.join("\n", lines)), "an edit is a change");
+		Check.that(watcher.getLinesRendered() <= 2, "lines rendered after one edit: "
+				   + watcher.getLinesRendered());
+		Check.that(!watcher.update(String.join("\n", lines)), "the same text is no change");
+	}
+
+	/**
+	 *	@return				what a new watcher prints for the document
+	 */
+	private static String rendered(String doc)
+	{
+		Transcript printed = new Transcript();
+		HTMLWatcher watcher = new HTMLWatcher(printed);
+		watcher.update(doc);
+		watcher.emit();
+		return printed.toString();
+	}
+
+	/**
+	 *	@return				what the watcher prints now
+	 */
+	private static String emitted(HTMLWatcher watcher, Transcript printed)
+	{
+		printed.clear();
+		watcher.emit();
+		return printed.toString();
+	}
+}
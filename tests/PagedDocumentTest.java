@@ -0,0 +1,158 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ *	PagedDocumentTest
+ *	Regression tests for paging: scrolling shows the page of the line
+ *	and the margin pages around it, prints a new window only when those
+ *	pages change, keeps the line inside the document, and every window
+ *	prints the same as the lines of its pages, also after the lists of
+ *	dropped pages are reused.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class PagedDocumentTest {
+
+	public static void main(String[] args)
+	{
+		testWindows();
+		testRandomScrolls();
+		testBadSizes();
+		Check.done("PagedDocumentTest");
+	}
+
+	/**
+	 *	Scrolling inside the middle page prints nothing, past it prints
+	 *	the pages around the new page, and lines past either end stop at
+	 *	the first or last line.
+	 */
+	private static void testWindows()
+	{
+		HTMLLayout layout = layout(250);
+		List<Transcript> windows = new ArrayList<Transcript>();
+		PagedDocument pages = new PagedDocument(layout, 100, 1, () -> newWindow(windows));
+		Check.equal(250, pages.getLineCount(), "lines");
+		Check.equal(3, pages.getPageCount(), "pages, the last one short");
+		Check.equal(-1, pages.getFirstPage(), "no page before the first window");
+
+		Check.that(pages.scrollTo(0), "first window printed");
+		checkShown(pages, layout, windows, 0, 1, "top of the document");
+		Check.that(!pages.scrollTo(50), "scrolling inside the pages shown");
+		Check.equal(1, windows.size(), "no window for a scroll inside them");
+
+		Check.that(pages.scrollTo(150), "scrolling to the next page");
+		checkShown(pages, layout, windows, 0, 2, "middle of the document");
+
+		Check.that(pages.scrollTo(10000), "scrolling past the end");
+		Check.equal(249, pages.getTopLine(), "stops at the last line");
+		checkShown(pages, layout, windows, 1, 2, "end of the document");
+
+		Check.that(pages.scrollBy(-1000), "scrolling back past the start");
+		Check.equal(0, pages.getTopLine(), "stops at the first line");
+		checkShown(pages, layout, windows, 0, 1, "back at the top");
+
+		pages.scrollBy(Integer.MAX_VALUE);
+		Check.equal(249, pages.getTopLine(), "a large scroll does not overflow");
+	}
+
+	/**
+	 *	Random scrolls with small pages and a margin of two each show the
+	 *	right pages, with the right lines on them.
+	 */
+	private static void testRandomScrolls()
+	{
+		HTMLLayout layout = layout(500);
+		List<Transcript> windows = new ArrayList<Transcript>();
+		PagedDocument pages = new PagedDocument(layout, 7, 2, () -> newWindow(windows));
+		Random random = new Random(24);
+		for(int k = 0; k < 300; k++)
+		{
+			int firstBefore = pages.getFirstPage();
+			int lastBefore = pages.getLastPage();
+			int count = windows.size();
+			boolean printed = random.nextBoolean() ? pages.scrollTo(random.nextInt(520) - 10)
+												   : pages.scrollBy(random.nextInt(61) - 30);
+			int page = pages.getTopLine() / 7;
+			int first = Math.max(0, page - 2);
+			int last = Math.min(pages.getPageCount() - 1, page + 2);
+			Check.equal(first != firstBefore || last != lastBefore, printed, "printed after scroll " + k);
+			Check.equal(count + (printed ? 1 : 0), windows.size(), "windows after scroll " + k);
+			checkShown(pages, layout, windows, first, last, "scroll " + k);
+		}
+	}
+
+	/**
+	 *	Pages of no lines and negative margins are refused.
+	 */
+	private static void testBadSizes()
+	{
+		Check.that(refused(0, 1), "page of no lines");
+		Check.that(refused(10, -1), "negative margin");
+	}
+
+	/**
+	 *	Checks the pages shown, and that the last window printed the
+	 *	lines of those pages.
+	 */
+	private static void checkShown(PagedDocument pages, HTMLLayout layout, List<Transcript> windows,
+								   int first, int last, String what)
+	{
+		Check.equal(first, pages.getFirstPage(), what + ": first page");
+		Check.equal(last, pages.getLastPage(), what + ": last page");
+
+		List<LineBox> lines = layout.getLines();
+		Transcript expected = new Transcript();
+		CoalescingRenderSink joined = new CoalescingRenderSink(expected);
+		int end = Math.min(lines.size(), (last + 1) * pages.getPageLines());
+		for(int k = first * pages.getPageLines(); k < end; k++)
+			lines.get(k).emit(joined);
+		joined.flush();
+		Check.equal(expected.toString(), windows.get(windows.size() - 1).toString(), what + ": window");
+	}
+
+	/**
+	 *	@return				a laid out document of lines in a few styles
+	 */
+	private static HTMLLayout layout(int lineCount)
+	{
+		int [] styles = { RenderSink.PRINT, RenderSink.PRINT_BOLD, RenderSink.PRINT_HEADING2 };
+		HTMLLayout layout = new HTMLLayout(null);
+		for(int k = 0; k < lineCount; k++)
+		{
+			String text = "line " + k;
+			layout.addWord(styles[k % styles.length], text, 0, text.length(), false, HTMLLayout.BODY);
+			layout.addControl(RenderSink.PRINTLN);
+		}
+		layout.finish();
+		return layout;
+	}
+
+	/**
+	 *	@return				a new window, added to the list of windows
+	 */
+	private static RenderSink newWindow(List<Transcript> windows)
+	{
+		Transcript window = new Transcript();
+		windows.add(window);
+		return window;
+	}
+
+	/**
+	 *	@return				true if paging with the sizes throws an
+	 *						IllegalArgumentException
+	 */
+	private static boolean refused(int pageLines, int margin)
+	{
+		try
+		{
+			new PagedDocument(layout(1), pageLines, margin, Transcript::new);
+			return false;
+		}
+		catch(IllegalArgumentException e)
+		{
+			return true;
+		}
+	}
+}
@@ -0,0 +1,113 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *	ParallelTokenizerTest
+ *	Regression tests for the parallel tokenizer: documents cut into
+ *	chunks of a few characters, with comments, preformatted text and
+ *	tags that run over line breaks and chunks, give the same tokens at
+ *	the same places as tokenizing the whole document at once, whatever
+ *	the chunk size and the number of threads.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class ParallelTokenizerTest {
+
+	// pieces the documents are made of, some run over lines and fool the guess
+	private static final String [] PIECES = {
+		"<p>", "</p>\n", "word ", "-12.5e3 ", "well-known ", "caf&eacute; ", "&amp; ",
+		"<b>bold</b> ", "\n", "<!-- a comment -->", "<!-- <pre> in a\ncomment\n-->\n",
+		"<pre>  pre text\n  <b>not a tag</b>\n--> not an end\n</pre>\n",
+		"<PRE class=\"x\">\n  upper\n</Pre >\n", "<a\nhref=\"x\">link</a>\n", "--> ", "- 5 " };
+
+	public static void main(String[] args)
+	{
+		ForkJoinPool [] pools = { new ForkJoinPool(1), new ForkJoinPool(3) };
+		Random random = new Random(12);
+		for(int d = 0; d < 20; d++)
+		{
+			String doc = document(random, 50 + random.nextInt(400));
+			String whole = sequential(doc);
+			for(ForkJoinPool pool : pools)
+			{
+				for(int size : new int[] { 1, 7, 64, 1000 })
+				{
+					Check.equal(whole, parallel(doc, pool, size), "document " + d + " in chunks of "
+								+ size + " on " + pool.getParallelism() + " threads");
+				}
+			}
+		}
+		testRepairs(pools[1]);
+		for(ForkJoinPool pool : pools)
+			pool.shutdown();
+		Check.done("ParallelTokenizerTest");
+	}
+
+	/**
+	 *	A comment over many chunks makes the guesses of the chunks inside
+	 *	it wrong, and they are tokenized again.
+	 */
+	private static void testRepairs(ForkJoinPool pool)
+	{
+		StringBuilder doc = new StringBuilder("<p>before</p>\n<!--\n");
+		for(int k = 0; k < 50; k++)
+			doc.append("<p>inside ").append(k).append("</p>\n");
+		doc.append("-->\n<p>after</p>\n");
+		ParallelTokenizer tokenizer = new ParallelTokenizer(pool, 16);
+		List<String> found = new ArrayList<String>();
+		tokenizer.tokenize(doc, chunk -> add(chunk, found));
+		Check.equal(sequential(doc.toString()), String.join(", ", found), "long comment");
+		Check.that(tokenizer.getChunkCount() > 1, "more than one chunk");
+		Check.that(tokenizer.getRepairCount() > 0, "wrong guesses repaired");
+	}
+
+	/**
+	 *	@return				a document of random pieces
+	 */
+	private static String document(Random random, int pieces)
+	{
+		StringBuilder doc = new StringBuilder();
+		for(int k = 0; k < pieces; k++)
+			doc.append(PIECES[random.nextInt(PIECES.length)]);
+		return doc.toString();
+	}
+
+	/**
+	 *	@return				the tokens of the whole document at once
+	 */
+	private static String sequential(String doc)
+	{
+		TokenBuffer tokens = new TokenBuffer();
+		new HTMLUtilities().tokenizeHTMLString(doc, tokens);
+		List<String> found = new ArrayList<String>();
+		add(tokens, found);
+		return String.join(", ", found);
+	}
+
+	/**
+	 *	@return				the tokens of the document tokenized in parallel
+	 */
+	private static String parallel(String doc, ForkJoinPool pool, int chunkSize)
+	{
+		List<String> found = new ArrayList<String>();
+		new ParallelTokenizer(pool, chunkSize).tokenize(doc, chunk -> add(chunk, found));
+		return String.join(", ", found);
+	}
+
+	/**
+	 *	Adds each token of a buffer as its kind, where it is in the
+	 *	document and its tag id.
+	 */
+	private static void add(TokenBuffer tokens, List<String> found)
+	{
+		for(int i = 0; i < tokens.size(); i++)
+		{
+			long start = tokens.getSourceOffset() + tokens.getStart(i);
+			found.add(tokens.getKind(i) + "@" + start + "-" + (start + tokens.getEnd(i) - tokens.getStart(i))
+					  + (tokens.getKind(i) == TokenBuffer.TAG ? "#" + tokens.getTagId(i) : ""));
+		}
+	}
+}
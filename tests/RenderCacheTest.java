@@ -0,0 +1,218 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *	RenderCacheTest
+ *	Regression tests for the render cache and its entries: a stored list
+ *	loads back the same, an entry of a file that changed, even with the
+ *	same size and modified time, or an entry that was damaged is not
+ *	used and is deleted, temporary files left by
+ *	a store that never finished are swept when the cache opens, and
+ *	eviction keeps the folder under its size with the newest entries.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class RenderCacheTest {
+
+	public static void main(String[] args) throws IOException
+	{
+		Path folder = Files.createTempDirectory("rendercache");
+		try
+		{
+			testStoreAndLoad(folder.resolve("load"));
+			testChangedFile(folder.resolve("changed"));
+			testSameSizeAndTime(folder.resolve("same"));
+			testDamagedEntry(folder.resolve("damaged"));
+			testTempSweep(folder.resolve("sweep"));
+			testEviction(folder.resolve("evict"));
+		}
+		finally
+		{
+			delete(folder);
+		}
+		Check.done("RenderCacheTest");
+	}
+
+	/**
+	 *	A stored list loads back to the same calls, and is counted as a hit.
+	 */
+	private static void testStoreAndLoad(Path folder) throws IOException
+	{
+		RenderCache cache = new RenderCache(folder.resolve("cache"));
+		Path file = write(folder, "a.html", "<p>a</p>");
+		RenderCache.Key key = cache.keyOf(file);
+		Check.that(cache.load(key) == null, "no entry before a store");
+
+		DisplayList list = list("rendered \u00e9 \ud83d\ude00 text");
+		Check.that(cache.store(key, list), "store");
+		DisplayList loaded = cache.load(key);
+		Check.that(loaded != null, "entry after a store");
+		if(loaded != null)
+			Check.equal(Transcript.of(list), Transcript.of(loaded), "loaded list");
+		Check.equal(1L, cache.getHits(), "hits");
+		Check.equal(1L, cache.getMisses(), "misses");
+		Check.equal(1L, cache.getStores(), "stores");
+	}
+
+	/**
+	 *	An entry made from an older version of the file is not used and
+	 *	is deleted.
+	 */
+	private static void testChangedFile(Path folder) throws IOException
+	{
+		Path entries = folder.resolve("cache");
+		RenderCache cache = new RenderCache(entries);
+		Path file = write(folder, "b.html", "<p>before</p>");
+		cache.store(cache.keyOf(file), list("before"));
+
+		write(folder, "b.html", "<p>after, longer</p>");
+		Check.that(cache.load(cache.keyOf(file)) == null, "entry of the old file");
+		Check.equal(0, entries(entries).size(), "stale entry deleted");
+	}
+
+	/**
+	 *	A file changed without changing its size or modified time is
+	 *	still found by the CRC of its contents.
+	 */
+	private static void testSameSizeAndTime(Path folder) throws IOException
+	{
+		RenderCache cache = new RenderCache(folder.resolve("cache"));
+		Path file = write(folder, "s.html", "<p>aaaa</p>");
+		FileTime modified = Files.getLastModifiedTime(file);
+		cache.store(cache.keyOf(file), list("aaaa"));
+
+		write(folder, "s.html", "<p>bbbb</p>");
+		Files.setLastModifiedTime(file, modified);
+		Check.that(cache.load(cache.keyOf(file)) == null, "entry of other contents");
+	}
+
+	/**
+	 *	An entry with a changed byte fails its CRC, so it is not used and
+	 *	is deleted.
+	 */
+	private static void testDamagedEntry(Path folder) throws IOException
+	{
+		Path entries = folder.resolve("cache");
+		RenderCache cache = new RenderCache(entries);
+		Path file = write(folder, "c.html", "<p>c</p>");
+		RenderCache.Key key = cache.keyOf(file);
+		cache.store(key, list("to be damaged"));
+
+		Path entry = entries(entries).get(0);
+		byte [] bytes = Files.readAllBytes(entry);
+		bytes[bytes.length / 2] ^= 0x20;
+		Files.write(entry, bytes);
+		Check.that(cache.load(key) == null, "damaged entry");
+		Check.that(!Files.exists(entry), "damaged entry deleted");
+	}
+
+	/**
+	 *	Opening a cache deletes old temporary files, but not one another
+	 *	renderer may still be writing or files that are not its own.
+	 */
+	private static void testTempSweep(Path folder) throws IOException
+	{
+		Files.createDirectories(folder);
+		Path old = write(folder, "entry1.tmp", "half written");
+		Files.setLastModifiedTime(old, FileTime.fromMillis(0));
+		Path fresh = write(folder, "entry2.tmp", "being written");
+		Path other = write(folder, "notes.tmp", "not an entry");
+		Files.setLastModifiedTime(other, FileTime.fromMillis(0));
+
+		new RenderCache(folder);
+		Check.that(!Files.exists(old), "old temporary file deleted");
+		Check.that(Files.exists(fresh), "new temporary file kept");
+		Check.that(Files.exists(other), "other file kept");
+	}
+
+	/**
+	 *	Storing past the size deletes the oldest entries, so the folder
+	 *	stays under it and the newest entry is still there. A cache opened
+	 *	on the folder counts the same bytes.
+	 */
+	private static void testEviction(Path folder) throws IOException
+	{
+		long maxBytes = 16 * 1024;
+		Path entries = folder.resolve("cache");
+		RenderCache cache = new RenderCache(entries, maxBytes);
+		RenderCache.Key last = null;
+		for(int k = 0; k < 200; k++)
+		{
+			Path file = write(folder, "doc" + k + ".html", "<p>document " + k + "</p>");
+			last = cache.keyOf(file);
+			StringBuilder text = new StringBuilder();
+			for(int w = 0; w < 40; w++)
+				text.append("word ").append(k).append(' ');
+			cache.store(last, list(text.toString()));
+		}
+
+		long total = 0;
+		for(Path entry : entries(entries))
+			total += Files.size(entry);
+		Check.that(total <= maxBytes, "entries take " + total + " bytes, at most " + maxBytes);
+		Check.that(cache.load(last) != null, "newest entry kept");
+		Check.that(cache.toString().endsWith(", " + total + " bytes"),
+				   "bytes counted as stored: " + cache);
+		Check.that(new RenderCache(entries, maxBytes).toString().endsWith(", " + total + " bytes"),
+				   "bytes counted when opened");
+	}
+
+	/**
+	 *	@return				a display list that prints a paragraph of text
+	 */
+	private static DisplayList list(String text)
+	{
+		DisplayList list = new DisplayList();
+		list.print(text);
+		list.println();
+		list.println();
+		list.flush();
+		return list;
+	}
+
+	/**
+	 *	Writes a file in a folder, making the folder if it is missing.
+	 *	@return				the file
+	 */
+	private static Path write(Path folder, String name, String text) throws IOException
+	{
+		Files.createDirectories(folder);
+		return Files.write(folder.resolve(name), text.getBytes("UTF-8"));
+	}
+
+	/**
+	 *	@return				the entries in a cache folder
+	 */
+	private static List<Path> entries(Path folder) throws IOException
+	{
+		List<Path> found = new ArrayList<Path>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, "*.render"))
+		{
+			for(Path file : files)
+				found.add(file);
+		}
+		return found;
+	}
+
+	/**
+	 *	Deletes a folder and everything in it.
+	 */
+	private static void delete(Path path) throws IOException
+	{
+		if(Files.isDirectory(path))
+		{
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(path))
+			{
+				for(Path file : files)
+					delete(file);
+			}
+		}
+		Files.delete(path);
+	}
+}
@@ -0,0 +1,158 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ *	TokenCacheTest
+ *	Regression tests for the cache of tokenized lines: a line found in
+ *	the cache gives the same tokens and state after it as scanning it,
+ *	the state before a line is part of its key, the cache stays under
+ *	its size by dropping the line used longest ago, and it gives the
+ *	same tokens when shared by tokenizers on several threads.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class TokenCacheTest {
+
+	// lines of a page made from a template, repeated many times
+	private static final String [] LINES = {
+		"<p>Header of the page &amp; its menu</p>", "<b>Home</b> | <i>About</i> | -5 items",
+		"<!-- a comment", "over two lines -->", "<pre>", "  kept   as is", "</pre>",
+		"<h2>Title</h2>", "x --> y", "<PRE class=\"c\">  one line</PRE>", "" };
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		testSameTokens();
+		testStateInKey();
+		testEviction();
+		testShared();
+		Check.done("TokenCacheTest");
+	}
+
+	/**
+	 *	Random lines from the template tokenize the same with a cache as
+	 *	without one, both as spans and as Strings.
+	 */
+	private static void testSameTokens()
+	{
+		List<String> lines = randomLines(new Random(19), 2000);
+		TokenCache cache = new TokenCache(1 << 20);
+		Check.equal(tokens(lines, null), tokens(lines, cache), "tokens with a cache");
+		Check.that(cache.getHits() > cache.getMisses(), "repeated lines are hits: " + cache);
+
+		HTMLUtilities plain = new HTMLUtilities();
+		HTMLUtilities cached = new HTMLUtilities();
+		cached.setCache(cache);
+		boolean same = true;
+		for(String line : lines)
+			same &= Arrays.equals(plain.tokenizeHTMLString(line), cached.tokenizeHTMLString(line));
+		Check.that(same, "token Strings with a cache");
+	}
+
+	/**
+	 *	The same line after a line that opens a comment is not taken from
+	 *	the cache entry made outside the comment.
+	 */
+	private static void testStateInKey()
+	{
+		List<String> lines = Arrays.asList("x --> y", "<!-- open", "x --> y", "x --> y");
+		TokenCache cache = new TokenCache(1 << 20);
+		Check.equal(tokens(lines, null), tokens(lines, cache), "line in and out of a comment");
+		Check.equal(1L, cache.getHits(), "only the line after the comment ended is a hit");
+		Check.equal(3, cache.getEntries(), "a line in two states is two entries");
+	}
+
+	/**
+	 *	A small cache drops the lines used longest ago and keeps the
+	 *	newest, and a line larger than the whole cache is not kept.
+	 */
+	private static void testEviction()
+	{
+		long maxBytes = 8 * 1024;
+		TokenCache cache = new TokenCache(maxBytes);
+		HTMLUtilities util = new HTMLUtilities();
+		util.setCache(cache);
+		long most = 0;
+		for(int k = 0; k < 500; k++)
+		{
+			util.tokenizeHTMLString("<p>line number " + k + " of many</p>", new TokenBuffer());
+			most = Math.max(most, cache.getBytes());
+		}
+		Check.that(most <= maxBytes, "at most " + most + " bytes, the size is " + maxBytes);
+		Check.that(cache.getEvictions() > 0, "lines dropped");
+		long hits = cache.getHits();
+		util.tokenizeHTMLString("<p>line number 499 of many</p>", new TokenBuffer());
+		Check.equal(hits + 1, cache.getHits(), "newest line kept");
+		util.tokenizeHTMLString("<p>line number 0 of many</p>", new TokenBuffer());
+		Check.equal(hits + 1, cache.getHits(), "oldest line dropped");
+
+		TokenCache tiny = new TokenCache(100);
+		util.setCache(tiny);
+		util.tokenizeHTMLString("<p>a line that is larger than the whole cache</p>", new TokenBuffer());
+		Check.equal(0, tiny.getEntries(), "line too large for the cache");
+	}
+
+	/**
+	 *	Tokenizers on four threads that share a cache each get the tokens
+	 *	they would get alone.
+	 */
+	private static void testShared() throws InterruptedException
+	{
+		TokenCache cache = new TokenCache(16 * 1024);
+		String [] expected = new String[4];
+		String [] found = new String[4];
+		Thread [] threads = new Thread[4];
+		for(int t = 0; t < threads.length; t++)
+		{
+			List<String> lines = randomLines(new Random(t), 3000);
+			expected[t] = tokens(lines, null);
+			int index = t;
+			threads[t] = new Thread(() -> found[index] = tokens(lines, cache));
+			threads[t].start();
+		}
+		for(int t = 0; t < threads.length; t++)
+		{
+			threads[t].join();
+			Check.equal(expected[t], found[t], "thread " + t + " sharing the cache");
+		}
+	}
+
+	/**
+	 *	@return				random lines of the template
+	 */
+	private static List<String> randomLines(Random random, int count)
+	{
+		List<String> lines = new ArrayList<String>();
+		for(int k = 0; k < count; k++)
+			lines.add(LINES[random.nextInt(LINES.length)]);
+		return lines;
+	}
+
+	/**
+	 *	@return				the tokens of each line, tokenized one after
+	 *						another, with the state after each line
+	 */
+	private static String tokens(List<String> lines, TokenCache cache)
+	{
+		HTMLUtilities util = new HTMLUtilities();
+		util.setCache(cache);
+		TokenBuffer tokens = new TokenBuffer();
+		StringBuilder found = new StringBuilder();
+		for(String line : lines)
+		{
+			tokens.clear();
+			util.tokenizeHTMLString(line, tokens);
+			for(int i = 0; i < tokens.size(); i++)
+			{
+				found.append(tokens.getKind(i)).append(' ').append(tokens.getStart(i)).append('-')
+					 .append(tokens.getEnd(i)).append(' ').append(tokens.getTagId(i)).append(',');
+				if(tokens.getKind(i) == TokenBuffer.ENTITY)
+					found.append(tokens.getCodePoint(i)).append(',');
+			}
+			found.append(util.getState()).append('\n');
+		}
+		return found.toString();
+	}
+}
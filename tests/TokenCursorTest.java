@@ -0,0 +1,107 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *	TokenCursorTest
+ *	Regression tests for the token cursor: it pulls the same tokens as
+ *	tokenizing the whole document, and skipElement moves to the end tag
+ *	that matches the current start tag, past nested elements of the same
+ *	name and end tags inside comments and preformatted text, and leaves
+ *	the cursor where tokenizing goes on as if nothing had been skipped.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class TokenCursorTest {
+
+	public static void main(String[] args)
+	{
+		testTokens();
+		testSkip();
+		testNotSkipped();
+		Check.done("TokenCursorTest");
+	}
+
+	/**
+	 *	The cursor gives the tokens of the whole document at once.
+	 */
+	private static void testTokens()
+	{
+		String doc = "<p>Hello, -5 world&amp;!</p>\n<!-- c -->\n<pre>  a  b\n c </pre> <H2>end</H2>";
+		TokenBuffer tokens = new TokenBuffer();
+		new HTMLUtilities().tokenizeHTMLString(doc, tokens);
+		List<String> expected = new ArrayList<String>();
+		for(int i = 0; i < tokens.size(); i++)
+			expected.add(tokens.getKind(i) + " " + tokens.getText(i) + " " + tokens.getTagId(i));
+
+		List<String> found = new ArrayList<String>();
+		TokenCursor cursor = new TokenCursor(doc);
+		while(cursor.next())
+			found.add(cursor.kind() + " " + cursor.text() + " " + cursor.tagId());
+		Check.equal(expected, found, "tokens of the cursor");
+	}
+
+	/**
+	 *	Skipping an element leaves its end tag as the current token and
+	 *	the tokens after it as they are.
+	 */
+	private static void testSkip()
+	{
+		checkSkip("<div><p>a</p><div>nested</div>x</div> after", "<div>", "nested elements");
+		checkSkip("<DIV class=\"a\"><div id=\"b\"></Div></div> after", "<DIV class=\"a\">",
+				  "names in any case with attributes");
+		checkSkip("<div><!-- </div> --></div> after", "<div>", "end tag in a comment");
+		checkSkip("<div><pre></div>\n</pre></div> after", "<div>", "end tag in preformatted text");
+		checkSkip("<div><PRE class=\"c\"></div></Pre ></div> after", "<div>",
+				  "end tag in preformatted text with attributes");
+		checkSkip("<pre>  <b>kept</b> </pre> after", "<pre>", "a pre element");
+		checkSkip("<script>if (a < b) x = \"</p>\";</script> after", "<script>", "a script");
+		checkSkip("<p>one <div/> two</p> after", "<p>", "self-closing tag inside");
+		checkSkip("<b>words <br> more</b> after", "<b>", "void tag inside");
+
+		TokenCursor cursor = at("<div>never closed <p>x", "<div>");
+		Check.that(cursor.skipElement(), "element without an end tag");
+		Check.that(!cursor.next(), "no end tag skips to the end");
+	}
+
+	/**
+	 *	Tokens that do not start an element are not skipped.
+	 */
+	private static void testNotSkipped()
+	{
+		String [][] cases = { { "<br> x", "<br>" }, { "<hr> x", "<hr>" }, { "<div/> x", "<div/>" },
+							  { "</p> x", "</p>" }, { "word x", "word" } };
+		for(String [] c : cases)
+		{
+			TokenCursor cursor = at(c[0], c[1]);
+			int start = cursor.start();
+			Check.that(!cursor.skipElement() && cursor.start() == start, c[1] + " is not skipped");
+		}
+	}
+
+	/**
+	 *	Skips the element at a start tag, then checks the current token is
+	 *	its end tag, at the last end tag before " after", and the tokens
+	 *	after it are the tokens of the rest of the document.
+	 */
+	private static void checkSkip(String doc, String startTag, String what)
+	{
+		TokenCursor cursor = at(doc, startTag);
+		Check.that(cursor.skipElement(), what + ": skipped");
+		int end = doc.lastIndexOf('<', doc.indexOf(" after"));
+		Check.equal(end, cursor.start(), what + ": at the end tag");
+		Check.equal(doc.indexOf(" after"), cursor.end(), what + ": end of the end tag");
+		Check.that(cursor.next() && cursor.is("after") && !cursor.next(), what + ": tokens after it");
+	}
+
+	/**
+	 *	@return				a cursor at the first token with the text
+	 */
+	private static TokenCursor at(String doc, String text)
+	{
+		TokenCursor cursor = new TokenCursor(doc);
+		while(cursor.next() && !cursor.is(text))
+			;
+		return cursor;
+	}
+}
@@ -0,0 +1,178 @@
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *	TokenizerTest
+ *	Regression tests for the tokenizer: the kind and text of the tokens
+ *	of short inputs, signed numbers and hyphens, tags in any case, a
+ *	buffer that grows far past its first size, and that a document streamed in chunks of any size gives the same tokens
+ *	at the same places as the whole document at once. References are
+ *	checked in EntityTableTest.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+public class TokenizerTest {
+
+	// names of the TokenBuffer kinds, by kind
+	private static final String [] KINDS = { "tag", "word", "number", "punct", "pre", "entity" };
+
+	public static void main(String[] args) throws IOException
+	{
+		testTokens();
+		testNumbers();
+		testTags();
+		testPreTags();
+		testGrowth();
+		testChunks();
+		Check.done("TokenizerTest");
+	}
+
+	/**
+	 *	Tags, words, punctuation, comments and preformatted text.
+	 */
+	private static void testTokens()
+	{
+		Check.equal("tag <p>, word Hello, punct ,, word world, punct !, tag </p>",
+					tokens("<p>Hello, world!</p>"), "words and punctuation");
+		Check.equal("word well-known, word e-mail, punct -",
+					tokens("well-known e-mail -"), "hyphens inside and outside words");
+		Check.equal("word x, tag <pre>, pre   a  b, pre  c , tag </pre>, word y",
+					tokens("<!-- c --> x <pre>  a  b\n c </pre> y"), "comments and preformatted text");
+		Check.equal("word a, tag <br>, word b, tag <hr>", tokens("a<br>b<hr>"), "empty tags");
+		Check.equal("", tokens(""), "empty input");
+	}
+
+	/**
+	 *	A hyphen starts a number only when a digit follows it.
+	 */
+	private static void testNumbers()
+	{
+		Check.equal("number -5", tokens("-5"), "negative number");
+		Check.equal("punct -, number 5", tokens("- 5"), "hyphen then a number");
+		Check.equal("number 3-4", tokens("3-4"), "range of numbers");
+		Check.equal("punct -, word x", tokens("-x"), "hyphen then a word");
+		Check.equal("number 1.5e-3", tokens("1.5e-3"), "decimal with an exponent");
+		Check.equal("number -12, punct ,, number 7", tokens("-12, 7"), "numbers and a comma");
+	}
+
+	/**
+	 *	Tags are found whatever their case.
+	 */
+	private static void testTags()
+	{
+		TokenBuffer tokens = new TokenBuffer();
+		new HTMLUtilities().tokenizeHTMLString("<B>x</b><Q>q</q><H3>", tokens);
+		Check.equal(TagTable.B, tokens.getTagId(0), "<B>");
+		Check.equal(TagTable.B | TagTable.CLOSE, tokens.getTagId(2), "</b>");
+		Check.equal(TagTable.Q, tokens.getTagId(3), "<Q>");
+		Check.equal(TagTable.H3, tokens.getTagId(6), "<H3>");
+		Check.equal(TagTable.UNKNOWN, tokens.getTagId(1), "text has no tag");
+	}
+
+	/**
+	 *	Any tag TagTable gives TagTable.PRE starts preformatted text, and
+	 *	its end tag ends it whatever its case.
+	 */
+	private static void testPreTags()
+	{
+		Check.equal("tag <pre class=\"c\">, pre int  x = 1;, tag </pre>, word y",
+					tokens("<pre class=\"c\">int  x = 1;\n</pre> y"), "pre tag with attributes");
+		Check.equal("tag <PRE>, pre   a  b, tag </PRE>, word y",
+					tokens("<PRE>  a  b</PRE> y"), "pre tags in upper case");
+		Check.equal("tag <Pre>, pre  a, tag </pRe >, word y",
+					tokens("<Pre> a</pRe > y"), "pre tags in mixed case");
+		Check.equal("tag <pre>, pre a </prex> b, tag </pre>",
+					tokens("<pre>a </prex> b</pre>"), "other tags are preformatted text");
+		Check.equal("tag <p>, word x, tag </p>", tokens("<p>x</p>"), "<p> is not <pre>");
+	}
+
+	/**
+	 *	A string of far more tokens than a new buffer holds gives them
+	 *	all, an array of exactly that many, and a cleared buffer starts
+	 *	again from the first token.
+	 */
+	private static void testGrowth()
+	{
+		StringBuilder str = new StringBuilder();
+		for(int k = 0; k < 50000; k++)
+			str.append("<b>w").append(k).append("</b> ");
+		TokenBuffer tokens = new TokenBuffer();
+		HTMLUtilities util = new HTMLUtilities();
+		Check.equal(200000, util.tokenizeHTMLString(str, tokens), "tokens added");
+		Check.equal(200000, tokens.size(), "tokens held");
+		Check.equal("number 49999", describe(tokens, 199998), "last number");
+		Check.equal(TagTable.B | TagTable.CLOSE, tokens.getTagId(199999), "last tag");
+
+		String [] array = util.tokenizeHTMLString(str.toString());
+		Check.equal(200000, array.length, "array of every token");
+		Check.equal("</b>", array[array.length - 1], "last token in the array");
+
+		tokens.clear();
+		Check.equal(0, tokens.size(), "cleared buffer");
+		util.tokenizeHTMLString("<p>again</p>", tokens);
+		Check.equal("again", tokens.getText(1), "buffer reused");
+	}
+
+	/**
+	 *	Streaming a document in small chunks splits numbers, references,
+	 *	comments and preformatted text across chunks, which must not
+	 *	change the tokens or where they are.
+	 */
+	private static void testChunks() throws IOException
+	{
+		StringBuilder doc = new StringBuilder();
+		for(int k = 0; k < 40; k++)
+		{
+			doc.append("<p>Line ").append(k).append(" has -").append(k).append(".5e-2, ")
+			   .append("caf&eacute; &amp; &#8212; well-known <b>bold</b>!</p>\n")
+			   .append("<!-- a comment\nover lines -->\n<pre>  pre &lt;text&gt;\n  kept </pre>\n")
+			   .append("<PRE class=\"x\">  upper\n  case </Pre >\n");
+		}
+		String whole = positions(doc, 1 << 20);
+		for(int size = 8; size <= 4096; size *= 2)
+			Check.equal(whole, positions(doc, size), "chunks of " + size + " characters");
+	}
+
+	/**
+	 *	@return				every token of a document streamed in chunks,
+	 *						with where it is in the document
+	 */
+	private static String positions(CharSequence doc, int chunkSize) throws IOException
+	{
+		List<String> found = new ArrayList<String>();
+		new HTMLUtilities().tokenizeStream(new StringReader(doc.toString()), chunkSize,
+										   new TokenBuffer(), chunk -> {
+			for(int i = 0; i < chunk.size(); i++)
+				found.add(describe(chunk, i) + "@" + (chunk.getSourceOffset() + chunk.getStart(i)));
+		});
+		return String.join(", ", found);
+	}
+
+	/**
+	 *	@return				the tokens of a string, as each kind and text
+	 */
+	private static String tokens(String str)
+	{
+		TokenBuffer tokens = new TokenBuffer();
+		new HTMLUtilities().tokenizeHTMLString(str, tokens);
+		List<String> found = new ArrayList<String>();
+		for(int i = 0; i < tokens.size(); i++)
+			found.add(describe(tokens, i));
+		return String.join(", ", found);
+	}
+
+	/**
+	 *	@return				the kind and text of a token, and the code
+	 *						point in hex of a reference
+	 */
+	private static String describe(TokenBuffer tokens, int i)
+	{
+		String text = KINDS[tokens.getKind(i)] + " " + tokens.getText(i).replace("\n", "");
+		if(tokens.getKind(i) == TokenBuffer.ENTITY)
+			text += "=" + Integer.toHexString(tokens.getCodePoint(i));
+		return text;
+	}
+}
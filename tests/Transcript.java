@@ -0,0 +1,75 @@
+/**
+ *	Transcript
+ *	A sink that writes down every call made to it, so the tests can
+ *	compare what two sinks were given as plain text.
+ *
+ *	@author	 Joshua Cao
+ *	@since	 10/18/26
+ */
+final class Transcript implements RenderSink {
+
+	private final StringBuilder calls = new StringBuilder();	// the calls so far
+
+	/**
+	 *	@param list			a display list
+	 *	@return				the calls a replay of the list makes
+	 */
+	static String of(DisplayList list)
+	{
+		Transcript transcript = new Transcript();
+		list.replay(transcript);
+		return transcript.toString();
+	}
+
+	public void print(String text) { add("print", text); }
+
+	public void printBold(String text) { add("bold", text); }
+
+	public void printItalic(String text) { add("italic", text); }
+
+	public void printHeading1(String text) { add("h1", text); }
+
+	public void printHeading2(String text) { add("h2", text); }
+
+	public void printHeading3(String text) { add("h3", text); }
+
+	public void printHeading4(String text) { add("h4", text); }
+
+	public void printHeading5(String text) { add("h5", text); }
+
+	public void printHeading6(String text) { add("h6", text); }
+
+	public void printPreformattedText(String text) { add("pre", text); }
+
+	public void printBreak() { add("break", null); }
+
+	public void printHorizontalRule() { add("rule", null); }
+
+	public void println() { add("println", null); }
+
+	public void flush() { }
+
+	/**
+	 *	Forgets the calls so far.
+	 */
+	void clear()
+	{
+		calls.setLength(0);
+	}
+
+	/**
+	 *	Writes down a call, with its text if it has some.
+	 */
+	private void add(String call, String text)
+	{
+		calls.append(call);
+		if(text != null)
+			calls.append('[').append(text).append(']');
+		calls.append('\n');
+	}
+
+	public String toString()
+	{
+		return calls.toString();
+	}
+}